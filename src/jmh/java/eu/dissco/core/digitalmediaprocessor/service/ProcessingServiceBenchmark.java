@@ -0,0 +1,149 @@
+package eu.dissco.core.digitalmediaprocessor.service;
+
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.APP_HANDLE;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.APP_NAME;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.CREATED;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.DIGITAL_SPECIMEN_ID;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.DOI_PREFIX;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.FORMAT;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.FORMAT_2;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAPPER;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MEDIA_URL_1;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.TYPE;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.VERSION;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaWrapper;
+import static eu.dissco.core.digitalmediaprocessor.domain.AgentRoleType.PROCESSING_SERVICE;
+import static eu.dissco.core.digitalmediaprocessor.schema.Agent.Type.SCHEMA_SOFTWARE_APPLICATION;
+import static eu.dissco.core.digitalmediaprocessor.schema.Identifier.DctermsType.DOI;
+import static eu.dissco.core.digitalmediaprocessor.utils.AgentUtils.createMachineAgent;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaRecord;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaWrapper;
+import eu.dissco.core.digitalmediaprocessor.properties.ProcessingProperties;
+import eu.dissco.core.digitalmediaprocessor.repository.DigitalMediaRepository;
+import eu.dissco.core.digitalmediaprocessor.schema.Agent;
+import eu.dissco.core.digitalmediaprocessor.schema.DigitalMedia;
+import eu.dissco.core.digitalmediaprocessor.schema.EntityRelationship;
+import eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaUtils;
+import eu.dissco.core.digitalmediaprocessor.utils.JsonPatchGenerator;
+import eu.dissco.core.digitalmediaprocessor.utils.KeyLock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jooq.Query;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+Measures the per record cost of the operations on the processing hot path for digital media with
+a small, medium and large number of entity relationships and agents. Run with the jmh profile,
+see the README. The operations which update the received digital media in place reach a stable
+state after the first invocation, so the fixtures are only built once per trial.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessingServiceBenchmark {
+
+  @Param({"10", "100", "1000"})
+  private int relationships;
+
+  private ProcessingService processingService;
+  private JsonPatchGenerator jsonPatchGenerator;
+  private DigitalMediaRepository repository;
+  private DigitalMediaWrapper currentDigitalMediaWrapper;
+  private DigitalMediaWrapper digitalMediaWrapper;
+  private DigitalMedia changedDigitalMedia;
+  private DigitalMediaRecord digitalMediaRecord;
+
+  @Setup
+  public void setup() throws JsonProcessingException {
+    jsonPatchGenerator = new JsonPatchGenerator(MAPPER);
+    processingService = new ProcessingService(MAPPER, jsonPatchGenerator, null, null, null, null,
+        null, null, null, null, null, null, Runnable::run, new KeyLock<>(),
+        new ProcessingProperties(), new SimpleMeterRegistry());
+    repository = new DigitalMediaRepository(DSL.using(SQLDialect.POSTGRES), MAPPER);
+    currentDigitalMediaWrapper = givenLargeDigitalMediaWrapper(FORMAT, CREATED.toEpochMilli());
+    digitalMediaWrapper = givenLargeDigitalMediaWrapper(FORMAT, System.currentTimeMillis());
+    changedDigitalMedia = givenLargeDigitalMediaWrapper(FORMAT_2, CREATED.toEpochMilli())
+        .attributes();
+    digitalMediaRecord = new DigitalMediaRecord(HANDLE, VERSION, CREATED,
+        givenLargeDigitalMediaWrapper(FORMAT, CREATED.toEpochMilli()));
+  }
+
+  @Benchmark
+  public boolean isEqual() {
+    return processingService.isEqual(currentDigitalMediaWrapper, digitalMediaWrapper);
+  }
+
+  @Benchmark
+  public List<EntityRelationship> setTimestampsEntityRelationships() {
+    var entityRelationships = digitalMediaWrapper.attributes().getOdsHasEntityRelationships();
+    processingService.setTimestampsEntityRelationships(entityRelationships,
+        currentDigitalMediaWrapper.attributes().getOdsHasEntityRelationships());
+    return entityRelationships;
+  }
+
+  @Benchmark
+  public JsonNode createJsonPatch() {
+    return jsonPatchGenerator.createJsonPatch(currentDigitalMediaWrapper.attributes(),
+        changedDigitalMedia);
+  }
+
+  @Benchmark
+  public JsonNode createJsonPatchEntityRelationships() {
+    return jsonPatchGenerator.createJsonPatch(currentDigitalMediaWrapper.attributes(),
+        digitalMediaWrapper.attributes());
+  }
+
+  @Benchmark
+  public DigitalMedia flattenToDigitalMedia() {
+    return DigitalMediaUtils.flattenToDigitalMedia(MAPPER, digitalMediaRecord);
+  }
+
+  @Benchmark
+  public Query digitalMediaToQuery() {
+    return repository.digitalMediaToQuery(digitalMediaRecord);
+  }
+
+  private DigitalMediaWrapper givenLargeDigitalMediaWrapper(String format,
+      long relationshipEstablishedDate) throws JsonProcessingException {
+    var wrapper = givenDigitalMediaWrapper(DIGITAL_SPECIMEN_ID, format, MEDIA_URL_1, TYPE);
+    var entityRelationships = new ArrayList<EntityRelationship>();
+    var agents = new ArrayList<Agent>();
+    for (int i = 0; i < relationships; i++) {
+      var agent = createMachineAgent(APP_NAME + "-" + i, APP_HANDLE + i, PROCESSING_SERVICE, DOI,
+          SCHEMA_SOFTWARE_APPLICATION);
+      agents.add(agent);
+      entityRelationships.add(new EntityRelationship()
+          .withType("ods:EntityRelationship")
+          .withDwcRelationshipEstablishedDate(new Date(relationshipEstablishedDate))
+          .withDwcRelationshipOfResource("hasDigitalSpecimen")
+          .withOdsHasAgents(List.of(agent))
+          .withDwcRelatedResourceID(DOI_PREFIX + DIGITAL_SPECIMEN_ID + "-" + i));
+    }
+    wrapper.attributes().setOdsHasEntityRelationships(entityRelationships);
+    wrapper.attributes().setOdsHasAgents(agents);
+    return wrapper;
+  }
+
+}
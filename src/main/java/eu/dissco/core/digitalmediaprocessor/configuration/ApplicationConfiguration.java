@@ -3,6 +3,7 @@ package eu.dissco.core.digitalmediaprocessor.configuration;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import eu.dissco.core.digitalmediaprocessor.utils.JsonPatchGenerator;
 import java.time.Instant;
 import java.util.Date;
 import java.util.Random;
@@ -33,6 +34,11 @@ public class ApplicationConfiguration {
     return mapper;
   }
 
+  @Bean
+  public JsonPatchGenerator jsonPatchGenerator(ObjectMapper mapper) {
+    return new JsonPatchGenerator(mapper);
+  }
+
   @Bean
   public Random random() {
     return new Random();
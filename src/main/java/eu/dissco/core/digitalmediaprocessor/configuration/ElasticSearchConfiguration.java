@@ -1,17 +1,25 @@
 package eu.dissco.core.digitalmediaprocessor.configuration;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.ElasticsearchTransport;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.core.digitalmediaprocessor.properties.BulkIngesterProperties;
 import eu.dissco.core.digitalmediaprocessor.properties.ElasticSearchProperties;
+import eu.dissco.core.digitalmediaprocessor.repository.BulkIngesterListener;
+import eu.dissco.core.digitalmediaprocessor.utils.ConcurrencyLimiter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import lombok.RequiredArgsConstructor;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.elasticsearch.client.RestClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -36,4 +44,22 @@ public class ElasticSearchConfiguration {
     return new ElasticsearchClient(transport);
   }
 
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(value = "elasticsearch.bulk-ingester.enabled", havingValue = "true")
+  public BulkIngester<CompletableFuture<BulkResponseItem>> bulkIngester(
+      ElasticsearchClient elasticsearchClient, BulkIngesterProperties bulkProperties) {
+    return BulkIngester.of(builder -> builder
+        .client(elasticsearchClient)
+        .maxOperations(bulkProperties.getMaxOperations())
+        .maxSize(bulkProperties.getMaxSize().toBytes())
+        .maxConcurrentRequests(bulkProperties.getMaxConcurrentRequests())
+        .flushInterval(bulkProperties.getFlushInterval().toMillis(), TimeUnit.MILLISECONDS)
+        .listener(new BulkIngesterListener()));
+  }
+
+  @Bean(name = "elasticsearchLimiter")
+  public ConcurrencyLimiter elasticsearchLimiter() {
+    return new ConcurrencyLimiter(properties.getMaxConcurrentBulkCalls());
+  }
+
 }
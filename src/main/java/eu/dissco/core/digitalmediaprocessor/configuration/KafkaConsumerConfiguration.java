@@ -1,18 +1,29 @@
 package eu.dissco.core.digitalmediaprocessor.configuration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import eu.dissco.core.digitalmediaprocessor.Profiles;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaEvent;
 import eu.dissco.core.digitalmediaprocessor.properties.KafkaConsumerProperties;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import lombok.AllArgsConstructor;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties.AckMode;
 
 @Configuration
 @Profile(Profiles.KAFKA)
@@ -20,9 +31,10 @@ import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 public class KafkaConsumerConfiguration {
 
   private final KafkaConsumerProperties properties;
+  private final Environment environment;
 
   @Bean
-  public ConsumerFactory<String, String> consumerFactory() {
+  public ConsumerFactory<String, byte[]> consumerFactory() {
     Map<String, Object> props = new HashMap<>();
     props.put(
         ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG,
@@ -35,18 +47,41 @@ public class KafkaConsumerConfiguration {
         StringDeserializer.class);
     props.put(
         ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
-        StringDeserializer.class);
+        ByteArrayDeserializer.class);
     props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, properties.getBatchSize());
+    props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
     return new DefaultKafkaConsumerFactory<>(props);
   }
 
+  @Bean(name = "parseExecutor", destroyMethod = "shutdown")
+  public ExecutorService parseExecutor() {
+    return new ForkJoinPool(properties.getParseParallelism());
+  }
+
+  /*
+  The messages are parsed straight from the received bytes, so they are not first decoded into a
+  string. The reader is thread-safe and built once for all listener threads.
+  */
+  @Bean
+  public ObjectReader digitalMediaEventReader(ObjectMapper mapper) {
+    return mapper.readerFor(DigitalMediaEvent.class);
+  }
+
   @Bean
-  public ConcurrentKafkaListenerContainerFactory<String, String>
-  kafkaListenerContainerFactory() {
-    ConcurrentKafkaListenerContainerFactory<String, String> factory =
+  public ConcurrentKafkaListenerContainerFactory<String, byte[]>
+  kafkaListenerContainerFactory(ConsumerAwareRebalanceListener rebalanceListener) {
+    ConcurrentKafkaListenerContainerFactory<String, byte[]> factory =
         new ConcurrentKafkaListenerContainerFactory<>();
     factory.setConsumerFactory(consumerFactory());
     factory.setBatchListener(true);
+    factory.getContainerProperties().setAckMode(AckMode.MANUAL_IMMEDIATE);
+    factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+    factory.setConcurrency(properties.getConcurrency());
+    if (Threading.VIRTUAL.isActive(environment)) {
+      var executor = new SimpleAsyncTaskExecutor("kafka-listener-");
+      executor.setVirtualThreads(true);
+      factory.getContainerProperties().setListenerTaskExecutor(executor);
+    }
     return factory;
   }
 
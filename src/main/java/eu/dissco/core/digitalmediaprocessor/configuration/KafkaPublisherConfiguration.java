@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.Map;
 import lombok.AllArgsConstructor;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -20,13 +21,7 @@ public class KafkaPublisherConfiguration {
 
   @Bean
   public ProducerFactory<String, String> producerFactory() {
-    Map<String, Object> configProps = new HashMap<>();
-    configProps.put(
-        ProducerConfig.BOOTSTRAP_SERVERS_CONFIG,
-        properties.getHost());
-    configProps.put(
-        ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG,
-        StringSerializer.class);
+    var configProps = producerConfig();
     configProps.put(
         ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
         StringSerializer.class);
@@ -38,4 +33,40 @@ public class KafkaPublisherConfiguration {
     return new KafkaTemplate<>(producerFactory());
   }
 
+  /*
+  Used to dead letter messages which could not be parsed, with exactly the bytes we received.
+  */
+  @Bean
+  public ProducerFactory<String, byte[]> rawProducerFactory() {
+    var configProps = producerConfig();
+    configProps.put(
+        ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
+        ByteArraySerializer.class);
+    return new DefaultKafkaProducerFactory<>(configProps);
+  }
+
+  @Bean
+  public KafkaTemplate<String, byte[]> rawKafkaTemplate() {
+    return new KafkaTemplate<>(rawProducerFactory());
+  }
+
+  private Map<String, Object> producerConfig() {
+    Map<String, Object> configProps = new HashMap<>();
+    configProps.put(
+        ProducerConfig.BOOTSTRAP_SERVERS_CONFIG,
+        properties.getHost());
+    configProps.put(
+        ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG,
+        StringSerializer.class);
+    configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, properties.getCompressionType());
+    configProps.put(ProducerConfig.LINGER_MS_CONFIG, (int) properties.getLinger().toMillis());
+    configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, (int) properties.getBatchSize().toBytes());
+    configProps.put(ProducerConfig.BUFFER_MEMORY_CONFIG, properties.getBufferMemory().toBytes());
+    configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, properties.isIdempotence());
+    configProps.put(ProducerConfig.ACKS_CONFIG, properties.getAcks());
+    configProps.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION,
+        properties.getMaxInFlightRequests());
+    return configProps;
+  }
+
 }
@@ -0,0 +1,49 @@
+package eu.dissco.core.digitalmediaprocessor.configuration;
+
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaKey;
+import eu.dissco.core.digitalmediaprocessor.properties.ProcessingProperties;
+import eu.dissco.core.digitalmediaprocessor.utils.KeyLock;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+@Configuration
+@RequiredArgsConstructor
+public class ProcessingConfiguration {
+
+  private final ProcessingProperties properties;
+
+  @Bean(name = "processingExecutor", destroyMethod = "shutdown")
+  @ConditionalOnThreading(Threading.PLATFORM)
+  public ExecutorService processingExecutor() {
+    return new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 0L,
+        TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueSize()),
+        new CustomizableThreadFactory("processing-"), new CallerRunsPolicy());
+  }
+
+  /*
+  With virtual threads, every branch gets its own thread. The load on the downstream services is
+  bounded by their concurrency limiters instead of by the number of threads.
+  */
+  @Bean(name = "processingExecutor")
+  @ConditionalOnThreading(Threading.VIRTUAL)
+  public Executor virtualProcessingExecutor() {
+    return new VirtualThreadTaskExecutor("processing-");
+  }
+
+  @Bean
+  public KeyLock<DigitalMediaKey> digitalMediaLock() {
+    return new KeyLock<>();
+  }
+
+}
@@ -1,15 +1,37 @@
 package eu.dissco.core.digitalmediaprocessor.configuration;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import eu.dissco.core.digitalmediaprocessor.properties.CacheProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.CacheProperties.CacheSpec;
+import lombok.RequiredArgsConstructor;
 import org.springframework.cache.CacheManager;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@RequiredArgsConstructor
 public class SpringCacheConfiguration {
 
+  private final CacheProperties properties;
+
+  /*
+  Every configured cache gets its own size bound and expiry. All caches record statistics, which
+  the actuator exports as cache metrics.
+  */
   @Bean
   public CacheManager cacheManager() {
-    return new ConcurrentMapCacheManager("token-cache");
+    var cacheManager = new CaffeineCacheManager();
+    cacheManager.setCaffeine(caffeine(properties.getDefaults()));
+    properties.getCaches().forEach((cacheName, cacheSpec) ->
+        cacheManager.registerCustomCache(cacheName, caffeine(cacheSpec).build()));
+    return cacheManager;
+  }
+
+  private static Caffeine<Object, Object> caffeine(CacheSpec cacheSpec) {
+    return Caffeine.newBuilder()
+        .expireAfterWrite(cacheSpec.getExpireAfterWrite())
+        .maximumSize(cacheSpec.getMaximumSize())
+        .recordStats();
   }
 }
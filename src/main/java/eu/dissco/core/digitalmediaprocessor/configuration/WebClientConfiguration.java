@@ -1,5 +1,7 @@
 package eu.dissco.core.digitalmediaprocessor.configuration;
 
+import eu.dissco.core.digitalmediaprocessor.properties.HandleProperties;
+import eu.dissco.core.digitalmediaprocessor.utils.ConcurrencyLimiter;
 import jakarta.validation.constraints.NotBlank;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
@@ -47,4 +49,9 @@ public class WebClientConfiguration {
         .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
         .build();
   }
+
+  @Bean(name = "handleLimiter")
+  public ConcurrencyLimiter handleLimiter(HandleProperties handleProperties) {
+    return new ConcurrencyLimiter(handleProperties.getMaxConcurrentCalls());
+  }
 }
@@ -6,6 +6,7 @@ package eu.dissco.core.digitalmediaprocessor.database.jooq;
 
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.DigitalMediaObject;
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.DigitalSpecimen;
+import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.OutboxEvent;
 
 import org.jooq.Index;
 import org.jooq.OrderField;
@@ -23,9 +24,12 @@ public class Indexes {
     // INDEX definitions
     // -------------------------------------------------------------------------
 
+    public static final Index DIGITAL_MEDIA_OBJECT_CONTENT_HASH_IDX = Internal.createIndex(DSL.name("digital_media_object_content_hash_idx"), DigitalMediaObject.DIGITAL_MEDIA_OBJECT, new OrderField[] { DigitalMediaObject.DIGITAL_MEDIA_OBJECT.DIGITAL_SPECIMEN_ID, DigitalMediaObject.DIGITAL_MEDIA_OBJECT.MEDIA_URL }, false);
     public static final Index DIGITAL_MEDIA_OBJECT_DIGITAL_SPECIMEN_ID_URL = Internal.createIndex(DSL.name("digital_media_object_digital_specimen_id_url"), DigitalMediaObject.DIGITAL_MEDIA_OBJECT, new OrderField[] { DigitalMediaObject.DIGITAL_MEDIA_OBJECT.DIGITAL_SPECIMEN_ID, DigitalMediaObject.DIGITAL_MEDIA_OBJECT.MEDIA_URL }, false);
     public static final Index DIGITAL_MEDIA_OBJECT_ID_IDX = Internal.createIndex(DSL.name("digital_media_object_id_idx"), DigitalMediaObject.DIGITAL_MEDIA_OBJECT, new OrderField[] { DigitalMediaObject.DIGITAL_MEDIA_OBJECT.ID, DigitalMediaObject.DIGITAL_MEDIA_OBJECT.MEDIA_URL }, false);
     public static final Index DIGITAL_MEDIA_OBJECT_ID_VERSION_URL = Internal.createIndex(DSL.name("digital_media_object_id_version_url"), DigitalMediaObject.DIGITAL_MEDIA_OBJECT, new OrderField[] { DigitalMediaObject.DIGITAL_MEDIA_OBJECT.ID, DigitalMediaObject.DIGITAL_MEDIA_OBJECT.VERSION, DigitalMediaObject.DIGITAL_MEDIA_OBJECT.MEDIA_URL }, true);
     public static final Index DIGITAL_SPECIMEN_CREATED_IDX = Internal.createIndex(DSL.name("digital_specimen_created_idx"), DigitalSpecimen.DIGITAL_SPECIMEN, new OrderField[] { DigitalSpecimen.DIGITAL_SPECIMEN.CREATED }, false);
     public static final Index DIGITAL_SPECIMEN_PHYSICAL_SPECIMEN_ID_IDX = Internal.createIndex(DSL.name("digital_specimen_physical_specimen_id_idx"), DigitalSpecimen.DIGITAL_SPECIMEN, new OrderField[] { DigitalSpecimen.DIGITAL_SPECIMEN.PHYSICAL_SPECIMEN_ID }, false);
+    public static final Index OUTBOX_EVENT_MEDIA_ID_IDX = Internal.createIndex(DSL.name("outbox_event_media_id_idx"), OutboxEvent.OUTBOX_EVENT, new OrderField[] { OutboxEvent.OUTBOX_EVENT.MEDIA_ID }, false);
+    public static final Index OUTBOX_EVENT_RELEASED_IDX = Internal.createIndex(DSL.name("outbox_event_released_idx"), OutboxEvent.OUTBOX_EVENT, new OrderField[] { OutboxEvent.OUTBOX_EVENT.ID }, false);
 }
@@ -6,9 +6,11 @@ package eu.dissco.core.digitalmediaprocessor.database.jooq;
 
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.DigitalMediaObject;
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.DigitalSpecimen;
+import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.OutboxEvent;
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.SourceSystem;
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.records.DigitalMediaObjectRecord;
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.records.DigitalSpecimenRecord;
+import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.records.OutboxEventRecord;
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.records.SourceSystemRecord;
 
 import org.jooq.TableField;
@@ -30,5 +32,6 @@ public class Keys {
 
     public static final UniqueKey<DigitalMediaObjectRecord> DIGITAL_MEDIA_OBJECT_PK = Internal.createUniqueKey(DigitalMediaObject.DIGITAL_MEDIA_OBJECT, DSL.name("digital_media_object_pk"), new TableField[] { DigitalMediaObject.DIGITAL_MEDIA_OBJECT.ID }, true);
     public static final UniqueKey<DigitalSpecimenRecord> DIGITAL_SPECIMEN_PK = Internal.createUniqueKey(DigitalSpecimen.DIGITAL_SPECIMEN, DSL.name("digital_specimen_pk"), new TableField[] { DigitalSpecimen.DIGITAL_SPECIMEN.ID }, true);
+    public static final UniqueKey<OutboxEventRecord> OUTBOX_EVENT_PKEY = Internal.createUniqueKey(OutboxEvent.OUTBOX_EVENT, DSL.name("outbox_event_pkey"), new TableField[] { OutboxEvent.OUTBOX_EVENT.ID }, true);
     public static final UniqueKey<SourceSystemRecord> SOURCE_SYSTEM_PKEY = Internal.createUniqueKey(SourceSystem.SOURCE_SYSTEM, DSL.name("source_system_pkey"), new TableField[] { SourceSystem.SOURCE_SYSTEM.ID }, true);
 }
@@ -6,6 +6,7 @@ package eu.dissco.core.digitalmediaprocessor.database.jooq;
 
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.DigitalMediaObject;
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.DigitalSpecimen;
+import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.OutboxEvent;
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.SourceSystem;
 
 import java.util.Arrays;
@@ -39,6 +40,11 @@ public class Public extends SchemaImpl {
      */
     public final DigitalSpecimen DIGITAL_SPECIMEN = DigitalSpecimen.DIGITAL_SPECIMEN;
 
+    /**
+     * The table <code>public.outbox_event</code>.
+     */
+    public final OutboxEvent OUTBOX_EVENT = OutboxEvent.OUTBOX_EVENT;
+
     /**
      * The table <code>public.source_system</code>.
      */
@@ -62,6 +68,7 @@ public class Public extends SchemaImpl {
         return Arrays.asList(
             DigitalMediaObject.DIGITAL_MEDIA_OBJECT,
             DigitalSpecimen.DIGITAL_SPECIMEN,
+            OutboxEvent.OUTBOX_EVENT,
             SourceSystem.SOURCE_SYSTEM
         );
     }
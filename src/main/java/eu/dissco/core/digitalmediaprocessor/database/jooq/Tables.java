@@ -6,6 +6,7 @@ package eu.dissco.core.digitalmediaprocessor.database.jooq;
 
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.DigitalMediaObject;
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.DigitalSpecimen;
+import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.OutboxEvent;
 import eu.dissco.core.digitalmediaprocessor.database.jooq.tables.SourceSystem;
 
 
@@ -25,6 +26,11 @@ public class Tables {
      */
     public static final DigitalSpecimen DIGITAL_SPECIMEN = DigitalSpecimen.DIGITAL_SPECIMEN;
 
+    /**
+     * The table <code>public.outbox_event</code>.
+     */
+    public static final OutboxEvent OUTBOX_EVENT = OutboxEvent.OUTBOX_EVENT;
+
     /**
      * The table <code>public.source_system</code>.
      */
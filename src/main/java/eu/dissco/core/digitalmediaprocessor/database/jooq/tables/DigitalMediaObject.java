@@ -105,6 +105,11 @@ public class DigitalMediaObject extends TableImpl<DigitalMediaObjectRecord> {
      */
     public final TableField<DigitalMediaObjectRecord, JSONB> ORIGINAL_DATA = createField(DSL.name("original_data"), SQLDataType.JSONB.nullable(false), this, "");
 
+    /**
+     * The column <code>public.digital_media_object.content_hash</code>.
+     */
+    public final TableField<DigitalMediaObjectRecord, String> CONTENT_HASH = createField(DSL.name("content_hash"), SQLDataType.CLOB, this, "");
+
     private DigitalMediaObject(Name alias, Table<DigitalMediaObjectRecord> aliased) {
         this(alias, aliased, (Field<?>[]) null, null);
     }
@@ -143,7 +148,7 @@ public class DigitalMediaObject extends TableImpl<DigitalMediaObjectRecord> {
 
     @Override
     public List<Index> getIndexes() {
-        return Arrays.asList(Indexes.DIGITAL_MEDIA_OBJECT_DIGITAL_SPECIMEN_ID_URL, Indexes.DIGITAL_MEDIA_OBJECT_ID_IDX, Indexes.DIGITAL_MEDIA_OBJECT_ID_VERSION_URL);
+        return Arrays.asList(Indexes.DIGITAL_MEDIA_OBJECT_CONTENT_HASH_IDX, Indexes.DIGITAL_MEDIA_OBJECT_DIGITAL_SPECIMEN_ID_URL, Indexes.DIGITAL_MEDIA_OBJECT_ID_IDX, Indexes.DIGITAL_MEDIA_OBJECT_ID_VERSION_URL);
     }
 
     @Override
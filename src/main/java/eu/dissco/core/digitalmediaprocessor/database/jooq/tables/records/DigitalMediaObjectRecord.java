@@ -161,6 +161,20 @@ public class DigitalMediaObjectRecord extends UpdatableRecordImpl<DigitalMediaOb
         return (JSONB) get(9);
     }
 
+    /**
+     * Setter for <code>public.digital_media_object.content_hash</code>.
+     */
+    public void setContentHash(String value) {
+        set(10, value);
+    }
+
+    /**
+     * Getter for <code>public.digital_media_object.content_hash</code>.
+     */
+    public String getContentHash() {
+        return (String) get(10);
+    }
+
     // -------------------------------------------------------------------------
     // Primary key information
     // -------------------------------------------------------------------------
@@ -184,7 +198,7 @@ public class DigitalMediaObjectRecord extends UpdatableRecordImpl<DigitalMediaOb
     /**
      * Create a detached, initialised DigitalMediaObjectRecord
      */
-    public DigitalMediaObjectRecord(String id, Integer version, String type, String digitalSpecimenId, String mediaUrl, Instant created, Instant lastChecked, Instant deleted, JSONB data, JSONB originalData) {
+    public DigitalMediaObjectRecord(String id, Integer version, String type, String digitalSpecimenId, String mediaUrl, Instant created, Instant lastChecked, Instant deleted, JSONB data, JSONB originalData, String contentHash) {
         super(DigitalMediaObject.DIGITAL_MEDIA_OBJECT);
 
         setId(id);
@@ -197,6 +211,7 @@ public class DigitalMediaObjectRecord extends UpdatableRecordImpl<DigitalMediaOb
         setDeleted(deleted);
         setData(data);
         setOriginalData(originalData);
+        setContentHash(contentHash);
         resetChangedOnNotNull();
     }
 }
@@ -0,0 +1,10 @@
+package eu.dissco.core.digitalmediaprocessor.domain;
+
+public record DigitalMediaContentHash(
+    String id,
+    int version,
+    DigitalMediaKey digitalMediaKey,
+    String contentHash
+) {
+
+}
@@ -1,5 +1,21 @@
 package eu.dissco.core.digitalmediaprocessor.domain;
 
-public record DigitalMediaKey(String digitalSpecimenId, String mediaUrl) {
+import static java.util.Comparator.comparing;
+import static java.util.Comparator.naturalOrder;
+import static java.util.Comparator.nullsFirst;
+
+import java.util.Comparator;
+
+public record DigitalMediaKey(String digitalSpecimenId, String mediaUrl)
+    implements Comparable<DigitalMediaKey> {
+
+  private static final Comparator<DigitalMediaKey> ORDER = comparing(
+      DigitalMediaKey::digitalSpecimenId, nullsFirst(naturalOrder()))
+      .thenComparing(DigitalMediaKey::mediaUrl, nullsFirst(naturalOrder()));
+
+  @Override
+  public int compareTo(DigitalMediaKey other) {
+    return ORDER.compare(this, other);
+  }
 
 }
@@ -0,0 +1,12 @@
+package eu.dissco.core.digitalmediaprocessor.domain;
+
+public enum DuplicateStrategy {
+
+  // Process the first event and republish the other events to the retry topic
+  REPUBLISH,
+  // Process the events one after the other in the same batch, each creating a new version
+  SEQUENTIAL,
+  // Only process the last event, creating a single version with a single combined patch
+  COALESCE
+
+}
@@ -0,0 +1,5 @@
+package eu.dissco.core.digitalmediaprocessor.domain;
+
+public record OutboxEvent(String mediaId, String topic, String payload) {
+
+}
@@ -1,11 +1,13 @@
 package eu.dissco.core.digitalmediaprocessor.domain;
 
 import java.util.List;
+import java.util.Map;
 
 public record ProcessResult(
-    List<DigitalMediaRecord> equalDigitalMedia,
+    List<String> equalDigitalMedia,
     List<UpdatedDigitalMediaTuple> changedDigitalMedia,
-    List<DigitalMediaEvent> newDigitalMedia
+    List<DigitalMediaEvent> newDigitalMedia,
+    Map<String, String> missingContentHashes
 ) {
 
 }
\ No newline at end of file
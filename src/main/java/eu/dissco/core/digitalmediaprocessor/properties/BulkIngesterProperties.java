@@ -0,0 +1,39 @@
+package eu.dissco.core.digitalmediaprocessor.properties;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+@Data
+@Validated
+@ConfigurationProperties("elasticsearch.bulk-ingester")
+public class BulkIngesterProperties {
+
+  // When enabled, digital media are indexed through the bulk ingester instead of a single bulk request
+  private boolean enabled = false;
+
+  // Maximum number of operations in one bulk request
+  @Positive
+  private int maxOperations = 500;
+
+  // Maximum size of one bulk request
+  @NotNull
+  private DataSize maxSize = DataSize.ofMegabytes(5);
+
+  // Maximum time an operation waits in the ingester before the pending request is sent
+  @NotNull
+  private Duration flushInterval = Duration.ofSeconds(1);
+
+  // Maximum number of bulk requests which are in flight at the same time
+  @Positive
+  private int maxConcurrentRequests = 2;
+
+  // Maximum time to wait for the responses of a batch, items without a response are retried
+  @NotNull
+  private Duration responseTimeout = Duration.ofSeconds(30);
+
+}
@@ -0,0 +1,27 @@
+package eu.dissco.core.digitalmediaprocessor.properties;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Data
+@Validated
+@ConfigurationProperties("elasticsearch.bulk-retry")
+public class BulkRetryProperties {
+
+  // Number of times retryable failed items are resubmitted, 0 disables the retry
+  @PositiveOrZero
+  private int maxRetries = 3;
+
+  // Backoff before the first retry, doubled for every next retry
+  @NotNull
+  private Duration initialBackoff = Duration.ofMillis(500);
+
+  // Upper limit of the backoff between two retries
+  @NotNull
+  private Duration maxBackoff = Duration.ofSeconds(10);
+
+}
@@ -0,0 +1,46 @@
+package eu.dissco.core.digitalmediaprocessor.properties;
+
+import static eu.dissco.core.digitalmediaprocessor.repository.DigitalSpecimenRepository.EXISTING_SPECIMEN_CACHE;
+import static eu.dissco.core.digitalmediaprocessor.service.KafkaPublisherService.REPUBLISHED_CACHE;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Data
+@Validated
+@ConfigurationProperties("cache")
+public class CacheProperties {
+
+  // Settings for caches which are not configured explicitly
+  @Valid
+  @NotNull
+  private CacheSpec defaults = new CacheSpec();
+
+  // Settings per cache name, the caches used by the application are always registered so their
+  // statistics are exported from startup
+  @Valid
+  @NotNull
+  private Map<String, CacheSpec> caches = new HashMap<>(
+      Map.of(EXISTING_SPECIMEN_CACHE, new CacheSpec(), REPUBLISHED_CACHE, new CacheSpec()));
+
+  @Data
+  public static class CacheSpec {
+
+    // Time after which an entry is removed from the cache
+    @NotNull
+    private Duration expireAfterWrite = Duration.ofMinutes(30);
+
+    // Maximum number of entries in the cache
+    @Positive
+    private long maximumSize = 10_000;
+
+  }
+
+}
@@ -23,4 +23,8 @@ public class ElasticSearchProperties {
   private String username;
 
   private String password;
+
+  // Maximum number of bulk calls to Elasticsearch in flight at the same time, over all batches
+  @Positive
+  private int maxConcurrentBulkCalls = 8;
 }
@@ -0,0 +1,25 @@
+package eu.dissco.core.digitalmediaprocessor.properties;
+
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Data
+@Validated
+@ConfigurationProperties("handle")
+public class HandleProperties {
+
+  // Maximum number of records sent to the Handle API in one request
+  @Positive
+  private int chunkSize = 100;
+
+  // Maximum number of requests to the Handle API which one call has in flight at the same time
+  @Positive
+  private int maxConcurrentRequests = 4;
+
+  // Maximum number of requests to the Handle API in flight at the same time, over all batches
+  @Positive
+  private int maxConcurrentCalls = 8;
+
+}
@@ -2,7 +2,10 @@ package eu.dissco.core.digitalmediaprocessor.properties;
 
 import eu.dissco.core.digitalmediaprocessor.Profiles;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import java.time.Duration;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Profile;
@@ -27,4 +30,24 @@ public class KafkaConsumerProperties {
   @Positive
   private int batchSize = 500;
 
+  // Number of consumer threads, each thread is assigned its own partitions of the topic
+  @Positive
+  private int concurrency = 1;
+
+  // Pause before a batch which failed as a whole is redelivered
+  @NotNull
+  private Duration redeliveryPause = Duration.ofSeconds(10);
+
+  // Number of deliveries of a failing batch, after which its failing records are dead lettered
+  @Positive
+  private int maxDeliveryAttempts = 5;
+
+  // Number of threads used to parse the messages of a batch in parallel
+  @Positive
+  private int parseParallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+  // Batches with fewer messages are parsed on the listener thread, 0 always parses in parallel
+  @PositiveOrZero
+  private int parallelParseMinBatchSize = 50;
+
 }
@@ -1,8 +1,13 @@
 package eu.dissco.core.digitalmediaprocessor.properties;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Pattern;
+import java.time.Duration;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
 @Data
@@ -13,4 +18,40 @@ public class KafkaPublisherProperties {
   @NotBlank
   private String host;
 
+  // Compression applied to every batch of records, the JSON events compress well
+  @Pattern(regexp = "none|gzip|snappy|lz4|zstd")
+  private String compressionType = "zstd";
+
+  // Time the producer waits for more records before a batch is sent
+  @NotNull
+  private Duration linger = Duration.ofMillis(20);
+
+  // Maximum size of a batch of records for one partition
+  @NotNull
+  private DataSize batchSize = DataSize.ofKilobytes(64);
+
+  // Memory available for records which are waiting to be sent
+  @NotNull
+  private DataSize bufferMemory = DataSize.ofMegabytes(32);
+
+  // Prevents duplicates when the producer retries, requires acks=all and at most 5 in flight
+  private boolean idempotence = true;
+
+  // Number of acknowledgements the leader needs before a request is complete
+  @Pattern(regexp = "all|-1|0|1")
+  private String acks = "all";
+
+  // Maximum number of unacknowledged requests per connection
+  @Positive
+  private int maxInFlightRequests = 5;
+
+  // Maximum time to wait for all messages sent during a processing batch
+  @NotNull
+  private Duration sendTimeout = Duration.ofSeconds(30);
+
+  // Time after which a duplicate in a batch is processed again, should be longer than it takes to
+  // process a batch
+  @NotNull
+  private Duration republishDelay = Duration.ofSeconds(30);
+
 }
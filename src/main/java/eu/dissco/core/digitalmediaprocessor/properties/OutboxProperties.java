@@ -0,0 +1,23 @@
+package eu.dissco.core.digitalmediaprocessor.properties;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Data
+@Validated
+@ConfigurationProperties("outbox")
+public class OutboxProperties {
+
+  // Maximum number of outbox events which are sent to Kafka in one relay batch
+  @Positive
+  private int batchSize = 1000;
+
+  // Maximum time to wait for Kafka to acknowledge a relay batch
+  @NotNull
+  private Duration sendTimeout = Duration.ofSeconds(30);
+
+}
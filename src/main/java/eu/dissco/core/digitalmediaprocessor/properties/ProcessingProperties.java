@@ -0,0 +1,27 @@
+package eu.dissco.core.digitalmediaprocessor.properties;
+
+import eu.dissco.core.digitalmediaprocessor.domain.DuplicateStrategy;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Data
+@Validated
+@ConfigurationProperties("processing")
+public class ProcessingProperties {
+
+  // Number of threads available for running the new and changed media branches concurrently
+  @Positive
+  private int threads = 4;
+
+  // Maximum number of branches waiting for a thread, when full the calling thread runs the branch
+  @Positive
+  private int queueSize = 8;
+
+  // How events for the same media url within one batch are handled
+  @NotNull
+  private DuplicateStrategy duplicateStrategy = DuplicateStrategy.REPUBLISH;
+
+}
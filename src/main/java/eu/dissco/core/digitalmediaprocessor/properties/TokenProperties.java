@@ -2,6 +2,8 @@ package eu.dissco.core.digitalmediaprocessor.properties;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import java.time.Duration;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.util.LinkedMultiValueMap;
@@ -22,6 +24,10 @@ public class TokenProperties {
   @NotBlank
   private String grantType;
 
+  // How long before the token expires a new token is requested in the background
+  @NotNull
+  private Duration refreshBeforeExpiry = Duration.ofSeconds(60);
+
   private MultiValueMap<String, String> fromFormData;
 
   @PostConstruct
@@ -0,0 +1,63 @@
+package eu.dissco.core.digitalmediaprocessor.repository;
+
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkListener;
+import co.elastic.clients.elasticsearch._types.ErrorCause;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+Hands the result of every operation back to the caller which added it to the bulk ingester.
+The context of each operation is the future on which the caller is waiting.
+*/
+@Slf4j
+public class BulkIngesterListener implements BulkListener<CompletableFuture<BulkResponseItem>> {
+
+  private static final int SERVICE_UNAVAILABLE = 503;
+
+  @Override
+  public void beforeBulk(long executionId, BulkRequest request,
+      List<CompletableFuture<BulkResponseItem>> contexts) {
+    log.debug("Sending bulk request {} with {} operations", executionId, contexts.size());
+  }
+
+  @Override
+  public void afterBulk(long executionId, BulkRequest request,
+      List<CompletableFuture<BulkResponseItem>> contexts, BulkResponse response) {
+    for (int i = 0; i < contexts.size(); i++) {
+      contexts.get(i).complete(response.items().get(i));
+    }
+  }
+
+  /*
+  When the whole request fails, every operation in it is reported as a failed item, so that only
+  the digital media in this request are rolled back and not the rest of the batch.
+  */
+  @Override
+  public void afterBulk(long executionId, BulkRequest request,
+      List<CompletableFuture<BulkResponseItem>> contexts, Throwable failure) {
+    log.error("Bulk request {} with {} operations failed", executionId, contexts.size(),
+        failure);
+    for (int i = 0; i < contexts.size(); i++) {
+      contexts.get(i).complete(failedItem(request.operations().get(i), failure));
+    }
+  }
+
+  private static BulkResponseItem failedItem(BulkOperation operation, Throwable failure) {
+    var index = operation.index();
+    return BulkResponseItem.of(item -> item
+        .operationType(OperationType.Index)
+        .index(index.index())
+        .id(index.id())
+        .status(SERVICE_UNAVAILABLE)
+        .error(ErrorCause.of(error -> error
+            .type(failure.getClass().getSimpleName())
+            .reason(failure.getMessage()))));
+  }
+
+}
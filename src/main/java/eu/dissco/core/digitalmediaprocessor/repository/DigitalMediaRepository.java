@@ -1,21 +1,29 @@
 package eu.dissco.core.digitalmediaprocessor.repository;
 
 import static eu.dissco.core.digitalmediaprocessor.database.jooq.Tables.DIGITAL_MEDIA_OBJECT;
+import static eu.dissco.core.digitalmediaprocessor.database.jooq.Tables.OUTBOX_EVENT;
+import static eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaUtils.generateContentHash;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaContentHash;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaKey;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaRecord;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaWrapper;
+import eu.dissco.core.digitalmediaprocessor.domain.OutboxEvent;
 import eu.dissco.core.digitalmediaprocessor.schema.DigitalMedia;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jooq.Condition;
 import org.jooq.DSLContext;
 import org.jooq.JSONB;
 import org.jooq.Query;
 import org.jooq.Record;
+import org.jooq.impl.DSL;
 import org.springframework.stereotype.Repository;
 
 @Slf4j
@@ -26,15 +34,53 @@ public class DigitalMediaRepository {
   private final DSLContext context;
   private final ObjectMapper mapper;
 
-  public List<DigitalMediaRecord> getDigitalMedia(
-      List<String> digitalSpecimenIds, List<String> mediaUrls) {
+  /*
+  Looks up the exact (digital_specimen_id, media_url) pairs through a row value IN predicate.
+  This uses the digital_media_object_digital_specimen_id_url index and only returns rows for
+  the requested keys.
+  */
+  public List<DigitalMediaRecord> getDigitalMediaByKeys(
+      Collection<DigitalMediaKey> digitalMediaKeys) {
     return context.select(DIGITAL_MEDIA_OBJECT.asterisk())
         .from(DIGITAL_MEDIA_OBJECT)
-        .where(DIGITAL_MEDIA_OBJECT.DIGITAL_SPECIMEN_ID.in(digitalSpecimenIds))
-        .and(DIGITAL_MEDIA_OBJECT.MEDIA_URL.in(mediaUrls))
+        .where(keyCondition(digitalMediaKeys))
         .fetch(this::mapDigitalMedia);
   }
 
+  public List<DigitalMediaRecord> getDigitalMediaByIds(Collection<String> ids) {
+    return context.select(DIGITAL_MEDIA_OBJECT.asterisk())
+        .from(DIGITAL_MEDIA_OBJECT)
+        .where(DIGITAL_MEDIA_OBJECT.ID.in(ids))
+        .fetch(this::mapDigitalMedia);
+  }
+
+  /*
+  Only fetches the columns needed to decide if a received digital media is equal to the stored one.
+  No JSONB documents are loaded or deserialized.
+  */
+  public List<DigitalMediaContentHash> getDigitalMediaContentHashes(
+      Collection<DigitalMediaKey> digitalMediaKeys) {
+    return context.select(DIGITAL_MEDIA_OBJECT.ID, DIGITAL_MEDIA_OBJECT.VERSION,
+            DIGITAL_MEDIA_OBJECT.DIGITAL_SPECIMEN_ID, DIGITAL_MEDIA_OBJECT.MEDIA_URL,
+            DIGITAL_MEDIA_OBJECT.CONTENT_HASH)
+        .from(DIGITAL_MEDIA_OBJECT)
+        .where(keyCondition(digitalMediaKeys))
+        .fetch(dbRecord -> new DigitalMediaContentHash(
+            dbRecord.get(DIGITAL_MEDIA_OBJECT.ID),
+            dbRecord.get(DIGITAL_MEDIA_OBJECT.VERSION),
+            new DigitalMediaKey(dbRecord.get(DIGITAL_MEDIA_OBJECT.DIGITAL_SPECIMEN_ID),
+                dbRecord.get(DIGITAL_MEDIA_OBJECT.MEDIA_URL)),
+            dbRecord.get(DIGITAL_MEDIA_OBJECT.CONTENT_HASH)));
+  }
+
+  private static Condition keyCondition(Collection<DigitalMediaKey> digitalMediaKeys) {
+    var keys = digitalMediaKeys.stream()
+        .map(key -> DSL.row(key.digitalSpecimenId(), key.mediaUrl()))
+        .toList();
+    return DSL.row(DIGITAL_MEDIA_OBJECT.DIGITAL_SPECIMEN_ID, DIGITAL_MEDIA_OBJECT.MEDIA_URL)
+        .in(keys);
+  }
+
   private DigitalMediaRecord mapDigitalMedia(Record dbRecord) {
     DigitalMediaWrapper digitalMediaWrapper = null;
     try {
@@ -60,8 +106,39 @@ public class DigitalMediaRepository {
     return context.batch(queries).execute();
   }
 
+  /*
+  Persists the digital media together with their outbox events in a single transaction.
+  The outbox events are stored as not released, so they are only relayed to Kafka after the
+  digital media have also been indexed. Events which are still pending from an earlier,
+  unfinished attempt for the same digital media are removed first.
+  */
+  public void createDigitalMediaRecord(Collection<DigitalMediaRecord> digitalMediaRecords,
+      Collection<OutboxEvent> outboxEvents) {
+    var queries = digitalMediaRecords.stream().map(this::digitalMediaToQuery).toList();
+    var ids = digitalMediaRecords.stream().map(DigitalMediaRecord::id).toList();
+    var created = Instant.now();
+    context.transaction(configuration -> {
+      var transactionContext = DSL.using(configuration);
+      transactionContext.batch(queries).execute();
+      transactionContext.deleteFrom(OUTBOX_EVENT)
+          .where(OUTBOX_EVENT.MEDIA_ID.in(ids))
+          .and(OUTBOX_EVENT.RELEASED.isFalse())
+          .execute();
+      if (!outboxEvents.isEmpty()) {
+        var insert = transactionContext.insertInto(OUTBOX_EVENT, OUTBOX_EVENT.MEDIA_ID,
+            OUTBOX_EVENT.TOPIC, OUTBOX_EVENT.PAYLOAD, OUTBOX_EVENT.CREATED);
+        for (var outboxEvent : outboxEvents) {
+          insert = insert.values(outboxEvent.mediaId(), outboxEvent.topic(), outboxEvent.payload(),
+              created);
+        }
+        insert.execute();
+      }
+    });
+  }
+
 
   public Query digitalMediaToQuery(DigitalMediaRecord digitalMediaRecord) {
+    var contentHash = generateContentHash(mapper, digitalMediaRecord.digitalMediaWrapper());
     return context.insertInto(DIGITAL_MEDIA_OBJECT)
         .set(DIGITAL_MEDIA_OBJECT.ID, digitalMediaRecord.id())
         .set(DIGITAL_MEDIA_OBJECT.TYPE, digitalMediaRecord.digitalMediaWrapper().type())
@@ -79,6 +156,7 @@ public class DigitalMediaRepository {
         .set(DIGITAL_MEDIA_OBJECT.ORIGINAL_DATA,
             JSONB.jsonb(
                 digitalMediaRecord.digitalMediaWrapper().originalAttributes().toString()))
+        .set(DIGITAL_MEDIA_OBJECT.CONTENT_HASH, contentHash)
         .onConflict(DIGITAL_MEDIA_OBJECT.ID).doUpdate()
         .set(DIGITAL_MEDIA_OBJECT.TYPE, digitalMediaRecord.digitalMediaWrapper().type())
         .set(DIGITAL_MEDIA_OBJECT.VERSION, digitalMediaRecord.version())
@@ -91,7 +169,8 @@ public class DigitalMediaRepository {
         .set(DIGITAL_MEDIA_OBJECT.DATA,
             JSONB.jsonb(
                 mapper.valueToTree(digitalMediaRecord.digitalMediaWrapper().attributes())
-                    .toString()));
+                    .toString()))
+        .set(DIGITAL_MEDIA_OBJECT.CONTENT_HASH, contentHash);
   }
 
   public void updateLastChecked(List<String> currentDigitalMedia) {
@@ -101,6 +180,20 @@ public class DigitalMediaRepository {
         .execute();
   }
 
+  /*
+  Stores the content hash of digital media which were found equal through the full comparison,
+  because no hash was stored yet or the stored hash is outdated. This fills the hash of rows
+  created before the content hash was introduced as they are received again.
+  */
+  public void updateContentHashes(Map<String, String> contentHashes) {
+    var queries = contentHashes.entrySet().stream()
+        .map(entry -> context.update(DIGITAL_MEDIA_OBJECT)
+            .set(DIGITAL_MEDIA_OBJECT.CONTENT_HASH, entry.getValue())
+            .where(DIGITAL_MEDIA_OBJECT.ID.eq(entry.getKey())))
+        .toList();
+    context.batch(queries).execute();
+  }
+
   public void rollBackDigitalMedia(String id) {
     context.delete(DIGITAL_MEDIA_OBJECT).where(DIGITAL_MEDIA_OBJECT.ID.eq(id)).execute();
   }
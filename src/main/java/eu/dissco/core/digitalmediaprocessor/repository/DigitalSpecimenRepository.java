@@ -5,19 +5,51 @@ import static eu.dissco.core.digitalmediaprocessor.database.jooq.Tables.DIGITAL_
 import java.util.HashSet;
 import java.util.Set;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.jooq.DSLContext;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Repository;
 
+@Slf4j
 @Repository
 @RequiredArgsConstructor
 public class DigitalSpecimenRepository {
 
+  public static final String EXISTING_SPECIMEN_CACHE = "existingDigitalSpecimenIds";
+
   private final DSLContext context;
+  private final CacheManager cacheManager;
 
+  /*
+  Only ids which are confirmed to exist are cached, as a specimen which does not exist yet might be
+  created at any moment. Ids which are not in the cache are always checked against the database,
+  so a cache miss only costs the query which would have run anyway.
+  */
   public Set<String> getExistingSpecimen(Set<String> digitalSpecimenIds) {
-    return new HashSet<>(context.select(DIGITAL_SPECIMEN.ID)
+    var cache = cacheManager.getCache(EXISTING_SPECIMEN_CACHE);
+    var existingIds = new HashSet<String>();
+    var uncachedIds = new HashSet<String>();
+    for (var digitalSpecimenId : digitalSpecimenIds) {
+      if (cache != null && cache.get(digitalSpecimenId) != null) {
+        existingIds.add(digitalSpecimenId);
+      } else {
+        uncachedIds.add(digitalSpecimenId);
+      }
+    }
+    if (uncachedIds.isEmpty()) {
+      log.debug("All {} digital specimen ids found in cache", digitalSpecimenIds.size());
+      return existingIds;
+    }
+    var currentIds = context.select(DIGITAL_SPECIMEN.ID)
         .from(DIGITAL_SPECIMEN)
-        .where(DIGITAL_SPECIMEN.ID.in(digitalSpecimenIds))
-        .fetch(DIGITAL_SPECIMEN.ID));
+        .where(DIGITAL_SPECIMEN.ID.in(uncachedIds))
+        .fetch(DIGITAL_SPECIMEN.ID);
+    for (var currentId : currentIds) {
+      if (cache != null) {
+        cache.put(currentId, Boolean.TRUE);
+      }
+      existingIds.add(currentId);
+    }
+    return existingIds;
   }
 }
@@ -2,51 +2,281 @@ package eu.dissco.core.digitalmediaprocessor.repository;
 
 import static eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaUtils.DOI_PREFIX;
 import static eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaUtils.flattenToDigitalMedia;
+import static java.util.stream.Collectors.toMap;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
 import co.elastic.clients.elasticsearch.core.BulkRequest;
 import co.elastic.clients.elasticsearch.core.BulkResponse;
 import co.elastic.clients.elasticsearch.core.DeleteResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaRecord;
+import eu.dissco.core.digitalmediaprocessor.properties.BulkIngesterProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.BulkRetryProperties;
 import eu.dissco.core.digitalmediaprocessor.properties.ElasticSearchProperties;
-import eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaUtils;
+import eu.dissco.core.digitalmediaprocessor.utils.ConcurrencyLimiter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 
+@Slf4j
 @Repository
 @RequiredArgsConstructor
 public class ElasticSearchRepository {
 
+  private static final int GATEWAY_TIMEOUT = 504;
+  private static final Set<Integer> RETRYABLE_STATUSES = Set.of(429, 502, 503, GATEWAY_TIMEOUT);
+  private static final Set<String> RETRYABLE_ERROR_TYPES = Set.of(
+      "es_rejected_execution_exception", "circuit_breaking_exception",
+      "unavailable_shards_exception", "process_cluster_event_timeout_exception");
+
   private final ElasticsearchClient client;
+  private final ObjectMapper mapper;
   private final ElasticSearchProperties properties;
+  private final BulkRetryProperties retryProperties;
+  private final BulkIngesterProperties ingesterProperties;
+  private final Optional<BulkIngester<CompletableFuture<BulkResponseItem>>> bulkIngester;
+  @Qualifier("elasticsearchLimiter")
+  private final ConcurrencyLimiter elasticsearchLimiter;
+  // Operations of the bulk ingester which had no response within the response timeout
+  private final Map<CompletableFuture<BulkResponseItem>, String> pendingWrites =
+      new ConcurrentHashMap<>();
 
   public BulkResponse indexDigitalMedia(
       Collection<DigitalMediaRecord> digitalMediaRecords) throws IOException {
+    var start = System.currentTimeMillis();
+    var bulkResponse = bulkIndex(digitalMediaRecords);
+    if (!bulkResponse.errors() || retryProperties.getMaxRetries() == 0) {
+      return bulkResponse;
+    }
+    return retryFailedItems(digitalMediaRecords, bulkResponse, start);
+  }
+
+  /*
+  Resubmits only the items which failed with a retryable error, such as a rejected execution
+  when the write queue of Elasticsearch is full. Between the attempts we back off exponentially
+  with full jitter, so multiple instances don't retry at the same moment. Items which failed with
+  a non-retryable error, or which are still failing after the last retry, are returned as failed
+  so they will be rolled back.
+  */
+  private BulkResponse retryFailedItems(Collection<DigitalMediaRecord> digitalMediaRecords,
+      BulkResponse bulkResponse, long start) {
+    var recordMap = digitalMediaRecords.stream()
+        .collect(toMap(digitalMediaRecord -> DOI_PREFIX + digitalMediaRecord.id(),
+            Function.identity(), (first, second) -> first));
+    var items = new LinkedHashMap<String, BulkResponseItem>();
+    bulkResponse.items().forEach(item -> items.put(item.id(), item));
+    for (int retry = 1; retry <= retryProperties.getMaxRetries(); retry++) {
+      var retryRecords = items.values().stream()
+          .filter(ElasticSearchRepository::isRetryable)
+          .map(item -> recordMap.get(item.id()))
+          .filter(Objects::nonNull)
+          .toList();
+      if (retryRecords.isEmpty()) {
+        break;
+      }
+      log.warn("Retrying {} failed items in Elasticsearch, attempt {} of {}", retryRecords.size(),
+          retry, retryProperties.getMaxRetries());
+      try {
+        Thread.sleep(backoff(retry));
+        bulkIndex(retryRecords).items().forEach(item -> items.put(item.id(), item));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.error("Interrupted while retrying failed items in Elasticsearch", e);
+        break;
+      } catch (IOException e) {
+        log.error("Failed to retry failed items in Elasticsearch", e);
+        break;
+      }
+    }
+    var resultItems = List.copyOf(items.values());
+    return BulkResponse.of(response -> response
+        .items(resultItems)
+        .errors(resultItems.stream().anyMatch(item -> item.error() != null))
+        .took(System.currentTimeMillis() - start));
+  }
+
+  private long backoff(int retry) {
+    var maxBackoff = retryProperties.getMaxBackoff().toMillis();
+    var backoff = Math.min(maxBackoff,
+        retryProperties.getInitialBackoff().toMillis() << Math.min(retry - 1, 30));
+    return ThreadLocalRandom.current().nextLong(backoff + 1);
+  }
+
+  private static boolean isRetryable(BulkResponseItem item) {
+    if (item.error() == null) {
+      return false;
+    }
+    return RETRYABLE_STATUSES.contains(item.status())
+        || RETRYABLE_ERROR_TYPES.contains(item.error().type());
+  }
+
+  private BulkResponse bulkIndex(Collection<DigitalMediaRecord> digitalMediaRecords)
+      throws IOException {
+    return elasticsearchLimiter.call(() -> sendBulk(digitalMediaRecords));
+  }
+
+  private BulkResponse sendBulk(Collection<DigitalMediaRecord> digitalMediaRecords)
+      throws IOException {
+    if (bulkIngester.isPresent()) {
+      return ingestDigitalMedia(bulkIngester.get(), digitalMediaRecords);
+    }
     var bulkRequest = new BulkRequest.Builder();
     for (var digitalMediaRecord : digitalMediaRecords) {
-      var digitalMedia = DigitalMediaUtils.flattenToDigitalMedia(digitalMediaRecord);
-      bulkRequest.operations(op ->
-          op.index(idx ->
-              idx.index(properties.getIndexName())
-                  .id(digitalMedia.getId())
-                  .document(digitalMedia))
-      );
+      bulkRequest.operations(indexOperation(digitalMediaRecord));
     }
     return client.bulk(bulkRequest.build());
   }
 
+  /*
+  Adds the operations to the shared bulk ingester, which splits them over requests based on the
+  configured number of operations and size, and sends up to the configured number of requests
+  concurrently. The remaining operations are flushed directly, so we don't wait for the flush
+  interval. The per-item results are combined into a single response, in the same order as the
+  operations were added. We wait at most the response timeout, items which have no response by
+  then are marked as timed out, so they are retried as any other retryable failure. Their
+  operations are still in flight, so they are tracked until they complete.
+  */
+  private BulkResponse ingestDigitalMedia(
+      BulkIngester<CompletableFuture<BulkResponseItem>> ingester,
+      Collection<DigitalMediaRecord> digitalMediaRecords) throws IOException {
+    var start = System.currentTimeMillis();
+    var futures = new ArrayList<CompletableFuture<BulkResponseItem>>(digitalMediaRecords.size());
+    for (var digitalMediaRecord : digitalMediaRecords) {
+      var future = new CompletableFuture<BulkResponseItem>();
+      ingester.add(indexOperation(digitalMediaRecord), future);
+      futures.add(future);
+    }
+    ingester.flush();
+    try {
+      CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+          .get(ingesterProperties.getResponseTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      log.warn("Not all items were indexed by the bulk ingester within {}",
+          ingesterProperties.getResponseTimeout());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while indexing digital media with the bulk ingester", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to index digital media with the bulk ingester", e.getCause());
+    }
+    var items = new ArrayList<BulkResponseItem>(futures.size());
+    var recordIterator = digitalMediaRecords.iterator();
+    for (var future : futures) {
+      var digitalMediaRecord = recordIterator.next();
+      if (future.isDone()) {
+        items.add(future.join());
+      } else {
+        pendingWrites.put(future, DOI_PREFIX + digitalMediaRecord.id());
+        future.whenComplete((item, failure) -> pendingWrites.remove(future));
+        items.add(timedOutItem(digitalMediaRecord));
+      }
+    }
+    var errors = items.stream().anyMatch(item -> item.error() != null);
+    return BulkResponse.of(response -> response
+        .items(items)
+        .errors(errors)
+        .took(System.currentTimeMillis() - start));
+  }
+
+  private BulkResponseItem timedOutItem(DigitalMediaRecord digitalMediaRecord) {
+    return BulkResponseItem.of(item -> item
+        .operationType(OperationType.Index)
+        .index(properties.getIndexName())
+        .id(DOI_PREFIX + digitalMediaRecord.id())
+        .status(GATEWAY_TIMEOUT)
+        .error(error -> error.type("timeout_exception")
+            .reason("No response from the bulk ingester within "
+                + ingesterProperties.getResponseTimeout())));
+  }
+
+  private BulkOperation indexOperation(DigitalMediaRecord digitalMediaRecord) {
+    var digitalMedia = flattenToDigitalMedia(mapper, digitalMediaRecord);
+    return BulkOperation.of(op ->
+        op.index(idx ->
+            idx.index(properties.getIndexName())
+                .id(digitalMedia.getId())
+                .document(digitalMedia))
+    );
+  }
+
   public DeleteResponse rollbackDigitalMedia(DigitalMediaRecord digitalMediaRecord)
       throws IOException {
-    return client.delete(
-        d -> d.index(properties.getIndexName()).id(DOI_PREFIX + digitalMediaRecord.id()));
+    var id = DOI_PREFIX + digitalMediaRecord.id();
+    return rollbackAfterPendingWrites(id,
+        () -> client.delete(d -> d.index(properties.getIndexName()).id(id)));
   }
 
   public void rollbackVersion(DigitalMediaRecord currentDigitalMediaRecord)
       throws IOException {
-    var digitalMedia = flattenToDigitalMedia(currentDigitalMediaRecord);
-    client.index(i -> i.index(properties.getIndexName()).id(digitalMedia.getId())
-        .document(digitalMedia));
+    var digitalMedia = flattenToDigitalMedia(mapper, currentDigitalMediaRecord);
+    rollbackAfterPendingWrites(digitalMedia.getId(),
+        () -> client.index(i -> i.index(properties.getIndexName()).id(digitalMedia.getId())
+            .document(digitalMedia)));
+  }
+
+  /*
+  A timed out operation of the bulk ingester can still be written after the digital media was
+  reported as failed. Before a rollback we wait up to the response timeout for the pending writes
+  of the digital media, so a late write can't overwrite the rollback. When a write is still
+  pending after that, the rollback is repeated once the write has completed.
+  */
+  private <T> T rollbackAfterPendingWrites(String id, RollbackCall<T> rollback)
+      throws IOException {
+    var writes = pendingWrites.entrySet().stream()
+        .filter(pendingWrite -> pendingWrite.getValue().equals(id))
+        .map(Entry::getKey)
+        .toArray(CompletableFuture[]::new);
+    if (writes.length > 0) {
+      var allWrites = CompletableFuture.allOf(writes);
+      try {
+        allWrites.get(ingesterProperties.getResponseTimeout().toMillis(), TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        log.warn("Write of digital media {} is still pending, repeating the rollback once it "
+            + "completes", id);
+        allWrites.whenCompleteAsync((result, failure) -> repeatRollback(id, rollback));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for pending writes of " + id, e);
+      } catch (ExecutionException e) {
+        log.warn("Pending write of digital media {} failed", id, e.getCause());
+      }
+    }
+    return rollback.call();
+  }
+
+  private static void repeatRollback(String id, RollbackCall<?> rollback) {
+    try {
+      rollback.call();
+    } catch (IOException | RuntimeException e) {
+      log.error("Failed to repeat the rollback of digital media {} after its late write", id, e);
+    }
+  }
+
+  @FunctionalInterface
+  private interface RollbackCall<T> {
+
+    T call() throws IOException;
   }
 }
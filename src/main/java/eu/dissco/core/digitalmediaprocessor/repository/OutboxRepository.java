@@ -0,0 +1,66 @@
+package eu.dissco.core.digitalmediaprocessor.repository;
+
+import static eu.dissco.core.digitalmediaprocessor.database.jooq.Tables.OUTBOX_EVENT;
+
+import eu.dissco.core.digitalmediaprocessor.domain.OutboxEvent;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.jooq.DSLContext;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@RequiredArgsConstructor
+public class OutboxRepository {
+
+  private final DSLContext context;
+
+  public void releaseEvents(Collection<String> mediaIds) {
+    context.update(OUTBOX_EVENT)
+        .set(OUTBOX_EVENT.RELEASED, true)
+        .where(OUTBOX_EVENT.MEDIA_ID.in(mediaIds))
+        .and(OUTBOX_EVENT.RELEASED.isFalse())
+        .execute();
+  }
+
+  public Set<String> getPendingMediaIds(Collection<String> mediaIds) {
+    return context.selectDistinct(OUTBOX_EVENT.MEDIA_ID)
+        .from(OUTBOX_EVENT)
+        .where(OUTBOX_EVENT.MEDIA_ID.in(mediaIds))
+        .and(OUTBOX_EVENT.RELEASED.isFalse())
+        .fetchSet(OUTBOX_EVENT.MEDIA_ID);
+  }
+
+  public void deletePendingEvents(Collection<String> mediaIds) {
+    context.deleteFrom(OUTBOX_EVENT)
+        .where(OUTBOX_EVENT.MEDIA_ID.in(mediaIds))
+        .and(OUTBOX_EVENT.RELEASED.isFalse())
+        .execute();
+  }
+
+  /*
+  Locks the oldest released events. Rows locked by another instance are skipped, so multiple
+  instances can relay the outbox concurrently without sending the same event twice.
+  Needs to be called within a transaction, the locks are released on commit.
+  */
+  public Map<Long, OutboxEvent> getReleasedEvents(int limit) {
+    return context.select(OUTBOX_EVENT.ID, OUTBOX_EVENT.MEDIA_ID, OUTBOX_EVENT.TOPIC,
+            OUTBOX_EVENT.PAYLOAD)
+        .from(OUTBOX_EVENT)
+        .where(OUTBOX_EVENT.RELEASED.isTrue())
+        .orderBy(OUTBOX_EVENT.ID)
+        .limit(limit)
+        .forUpdate()
+        .skipLocked()
+        .fetchMap(OUTBOX_EVENT.ID, dbRecord -> new OutboxEvent(
+            dbRecord.get(OUTBOX_EVENT.MEDIA_ID),
+            dbRecord.get(OUTBOX_EVENT.TOPIC),
+            dbRecord.get(OUTBOX_EVENT.PAYLOAD)));
+  }
+
+  public void deleteEvents(Collection<Long> ids) {
+    context.deleteFrom(OUTBOX_EVENT).where(OUTBOX_EVENT.ID.in(ids)).execute();
+  }
+
+}
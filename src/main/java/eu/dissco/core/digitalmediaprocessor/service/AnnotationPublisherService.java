@@ -13,6 +13,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import eu.dissco.core.digitalmediaprocessor.domain.AutoAcceptedAnnotation;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaRecord;
+import eu.dissco.core.digitalmediaprocessor.domain.OutboxEvent;
 import eu.dissco.core.digitalmediaprocessor.domain.UpdatedDigitalMediaRecord;
 import eu.dissco.core.digitalmediaprocessor.properties.ApplicationProperties;
 import eu.dissco.core.digitalmediaprocessor.schema.AnnotationBody;
@@ -43,7 +44,7 @@ public class AnnotationPublisherService {
   private static final String TYPE = "@type";
   private final Pattern numericPattern = Pattern.compile("\\d+");
 
-  private final KafkaPublisherService kafkaPublisherService;
+  private final OutboxEventService outboxEventService;
   private final ApplicationProperties applicationProperties;
   private final ObjectMapper mapper;
 
@@ -53,20 +54,23 @@ public class AnnotationPublisherService {
         .withAdditionalProperty("ods:class", "$");
   }
 
-  public void publishAnnotationNewMedia(Set<DigitalMediaRecord> digitalMediaRecords) {
+  public List<OutboxEvent> createAnnotationEventsNewMedia(
+      Set<DigitalMediaRecord> digitalMediaRecords) {
+    var outboxEvents = new ArrayList<OutboxEvent>();
     for (DigitalMediaRecord digitalMediaRecord : digitalMediaRecords) {
       try {
         var annotationProcessingRequest = mapNewMediaToAnnotation(digitalMediaRecord);
-        kafkaPublisherService.publishAcceptedAnnotation(
+        outboxEvents.add(outboxEventService.acceptedAnnotationEvent(digitalMediaRecord.id(),
             new AutoAcceptedAnnotation(
                 createMachineAgent(applicationProperties.getName(), applicationProperties.getPid(),
                     PROCESSING_SERVICE, DOI, SCHEMA_SOFTWARE_APPLICATION),
-                annotationProcessingRequest));
+                annotationProcessingRequest)));
       } catch (JsonProcessingException e) {
         log.error("Unable to send auto-accepted annotation for new media: {}",
             digitalMediaRecord.id(), e);
       }
     }
+    return outboxEvents;
   }
 
   private AnnotationProcessingRequest mapNewMediaToAnnotation(
@@ -80,7 +84,8 @@ public class AnnotationPublisherService {
         .withOaMotivatedBy("New information received from Source System with id: "
             + sourceSystemID)
         .withOaHasBody(buildBody(mapper.writeValueAsString(
-            DigitalMediaUtils.flattenToDigitalMedia(digitalMediaRecord)), sourceSystemID))
+                DigitalMediaUtils.flattenToDigitalMedia(mapper, digitalMediaRecord)),
+            sourceSystemID))
         .withOaHasTarget(buildTarget(digitalMediaRecord, buildNewMediaSelector()))
         .withDctermsCreated(Date.from(Instant.now()))
         .withDctermsCreator(
@@ -106,24 +111,28 @@ public class AnnotationPublisherService {
         .withOaHasSelector(selector);
   }
 
-  public void publishAnnotationUpdatedMedia(
+  public List<OutboxEvent> createAnnotationEventsUpdatedMedia(
       Set<UpdatedDigitalMediaRecord> updatedDigitalMediaRecords) {
+    var outboxEvents = new ArrayList<OutboxEvent>();
     for (var updatedDigitalMediaRecord : updatedDigitalMediaRecords) {
+      var mediaId = updatedDigitalMediaRecord.digitalMediaRecord().id();
       try {
         var annotations = convertJsonPatchToAnnotations(
             updatedDigitalMediaRecord.digitalMediaRecord(),
             updatedDigitalMediaRecord.jsonPatch());
         for (var annotationProcessingRequest : annotations) {
-          kafkaPublisherService.publishAcceptedAnnotation(new AutoAcceptedAnnotation(
-              createMachineAgent(applicationProperties.getName(), applicationProperties.getPid(),
-                  PROCESSING_SERVICE, DOI, SCHEMA_SOFTWARE_APPLICATION),
-              annotationProcessingRequest));
+          outboxEvents.add(outboxEventService.acceptedAnnotationEvent(mediaId,
+              new AutoAcceptedAnnotation(
+                  createMachineAgent(applicationProperties.getName(),
+                      applicationProperties.getPid(), PROCESSING_SERVICE, DOI,
+                      SCHEMA_SOFTWARE_APPLICATION),
+                  annotationProcessingRequest)));
         }
       } catch (JsonProcessingException e) {
-        log.error("Unable to send auto-accepted annotation for updated media: {}",
-            updatedDigitalMediaRecord.digitalMediaRecord().id(), e);
+        log.error("Unable to send auto-accepted annotation for updated media: {}", mediaId, e);
       }
     }
+    return outboxEvents;
   }
 
   private List<AnnotationProcessingRequest> convertJsonPatchToAnnotations(
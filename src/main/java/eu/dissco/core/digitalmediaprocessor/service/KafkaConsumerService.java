@@ -1,49 +1,225 @@
 package eu.dissco.core.digitalmediaprocessor.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import eu.dissco.core.digitalmediaprocessor.Profiles;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaEvent;
 import eu.dissco.core.digitalmediaprocessor.exceptions.DigitalSpecimenNotFoundException;
+import eu.dissco.core.digitalmediaprocessor.properties.KafkaConsumerProperties;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.stream.IntStream;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
 @Service
 @Slf4j
 @Profile(Profiles.KAFKA)
 @AllArgsConstructor
-public class KafkaConsumerService {
+public class KafkaConsumerService implements ConsumerAwareRebalanceListener {
 
-  private final ObjectMapper mapper;
+  private final ObjectReader digitalMediaEventReader;
   private final ProcessingService processingService;
   private final KafkaPublisherService publisherService;
+  private final KafkaConsumerProperties properties;
+  @Qualifier("parseExecutor")
+  private final Executor parseExecutor;
+  private final Map<TopicPartition, FailedBatch> failedAttempts = new ConcurrentHashMap<>();
 
+  /*
+  The offsets of the batch are only committed after all records have been processed. Records
+  which fail in processing are sent to the dead letter queue by the processing service, so they
+  don't hold back the commit. When processing fails as a whole, the batch is not committed and
+  is redelivered after a pause, so no message is lost.
+  */
   @KafkaListener(topics = "${kafka.consumer.topic}")
-  public void getMessages(@Payload List<String> messages) {
-    var events = messages.stream().map(message -> {
-      try {
-        return mapper.readValue(message, DigitalMediaEvent.class);
-      } catch (JsonProcessingException e) {
-        log.error("Moving message to DLQ, failed to parse event message", e);
-        publisherService.deadLetterRaw(message);
-        return null;
-      }
-    }).filter(Objects::nonNull).toList();
-    if (!events.isEmpty()) {
-      try {
+  public void getMessages(List<ConsumerRecord<String, byte[]>> consumerRecords,
+      Acknowledgment acknowledgment) {
+    if (processRecords(consumerRecords)) {
+      acknowledgment.acknowledge();
+    } else {
+      acknowledgment.nack(0, properties.getRedeliveryPause());
+    }
+  }
+
+  /*
+  Duplicates which were republished to the retry topic are only processed once their not-before
+  time has passed. The records which are due are processed, the remainder of the batch is
+  redelivered when the first record which is not yet due becomes due.
+  */
+  @KafkaListener(topics = KafkaPublisherService.RETRY_TOPIC)
+  public void getRetryMessages(List<ConsumerRecord<String, byte[]>> consumerRecords,
+      Acknowledgment acknowledgment) {
+    var now = Instant.now();
+    var dueRecords = consumerRecords.stream()
+        .takeWhile(consumerRecord -> !notBefore(consumerRecord).isAfter(now))
+        .toList();
+    if (!dueRecords.isEmpty() && !processRecords(dueRecords)) {
+      acknowledgment.nack(0, properties.getRedeliveryPause());
+    } else if (dueRecords.size() < consumerRecords.size()) {
+      var wait = Duration.between(now, notBefore(consumerRecords.get(dueRecords.size())));
+      log.debug("Pausing retry topic for {}, {} records are not yet due", wait,
+          consumerRecords.size() - dueRecords.size());
+      acknowledgment.nack(dueRecords.size(), wait);
+    } else {
+      acknowledgment.acknowledge();
+    }
+  }
+
+  /*
+  A batch which fails as a whole is redelivered at most the configured number of attempts. The
+  attempts are counted per partition on the offset of the first record, as a redelivered batch
+  starts at the same offset. After the last attempt the records are processed one by one, so a
+  record which keeps failing is dead lettered and no longer blocks the partition, while the other
+  records of the batch are still processed.
+  */
+  private boolean processRecords(List<ConsumerRecord<String, byte[]>> consumerRecords) {
+    var firstRecord = consumerRecords.get(0);
+    var partition = new TopicPartition(firstRecord.topic(), firstRecord.partition());
+    if (processMessages(consumerRecords)) {
+      failedAttempts.remove(partition);
+      return true;
+    }
+    var attempts = failedAttempts.merge(partition, new FailedBatch(firstRecord.offset(), 1),
+        (previous, failed) -> previous.offset() == failed.offset()
+            ? new FailedBatch(failed.offset(), previous.attempts() + 1) : failed).attempts();
+    if (attempts < properties.getMaxDeliveryAttempts()) {
+      log.warn("Batch starting at {}-{} will be redelivered after {}, attempt {} of {}",
+          partition, firstRecord.offset(), properties.getRedeliveryPause(), attempts,
+          properties.getMaxDeliveryAttempts());
+      return false;
+    }
+    log.warn("Batch starting at {}-{} failed {} times, processing its {} records one by one",
+        partition, firstRecord.offset(), attempts, consumerRecords.size());
+    var failedRecords = consumerRecords.stream()
+        .filter(consumerRecord -> !processMessages(List.of(consumerRecord)))
+        .toList();
+    failedRecords.forEach(consumerRecord -> log.error(
+        "Moving message to DLQ, failed to process record at offset {}", consumerRecord.offset()));
+    if (!deadLetter(failedRecords)) {
+      log.error("Batch will be redelivered after {}", properties.getRedeliveryPause());
+      return false;
+    }
+    failedAttempts.remove(partition);
+    return true;
+  }
+
+  /*
+  The delivery attempts of a partition are forgotten when it is revoked or lost, another consumer
+  which is assigned the partition counts its own attempts.
+  */
+  @Override
+  public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+    partitions.forEach(failedAttempts::remove);
+  }
+
+  private static Instant notBefore(ConsumerRecord<String, byte[]> consumerRecord) {
+    var header = consumerRecord.headers().lastHeader(KafkaPublisherService.NOT_BEFORE_HEADER);
+    if (header == null) {
+      return Instant.MIN;
+    }
+    return Instant.ofEpochMilli(Long.parseLong(new String(header.value(), StandardCharsets.UTF_8)));
+  }
+
+  private boolean processMessages(List<ConsumerRecord<String, byte[]>> consumerRecords) {
+    var unparsableRecords = new ArrayList<ConsumerRecord<String, byte[]>>();
+    try {
+      var events = parseMessages(consumerRecords, unparsableRecords);
+      if (!events.isEmpty()) {
         processingService.handleMessage(events);
-      } catch (DigitalSpecimenNotFoundException e) {
-        log.error("Throw an exception which should only be thrown in the web profile", e);
+      } else {
+        log.info("No more message to process in batch");
       }
+    } catch (DigitalSpecimenNotFoundException e) {
+      log.error("Throw an exception which should only be thrown in the web profile", e);
+    } catch (RuntimeException e) {
+      log.error("Failed to process batch of {} messages", consumerRecords.size(), e);
+      return false;
+    }
+    return deadLetter(unparsableRecords);
+  }
+
+  /*
+  Records are only dead lettered once their batch has been processed or given up, so the
+  unparsable records of a batch which is redelivered are not dead lettered on every attempt.
+  */
+  private boolean deadLetter(List<ConsumerRecord<String, byte[]>> consumerRecords) {
+    if (consumerRecords.isEmpty()) {
+      return true;
+    }
+    try {
+      var publishBatch = new PublishBatch();
+      publishBatch.callInBatch(() -> {
+        consumerRecords.forEach(consumerRecord -> publisherService.deadLetterRaw(
+            consumerRecord.key(), consumerRecord.value()));
+        return null;
+      });
+      var failedSends = publisherService.awaitBatch(publishBatch);
+      if (!failedSends.isEmpty()) {
+        log.error("Failed to dead letter {} messages: {}", failedSends.size(), failedSends);
+        return false;
+      }
+    } catch (RuntimeException e) {
+      log.error("Failed to dead letter {} messages", consumerRecords.size(), e);
+      return false;
+    }
+    return true;
+  }
+
+  /*
+  Large batches are parsed in parallel on a dedicated pool, so parsing is not bound to the
+  listener thread and does not compete with other users of the common pool. The events keep the
+  order of the messages in the batch. The records which can't be parsed are collected, so they
+  can be dead lettered with the key they were received with.
+  */
+  private List<DigitalMediaEvent> parseMessages(
+      List<ConsumerRecord<String, byte[]>> consumerRecords,
+      List<ConsumerRecord<String, byte[]>> unparsableRecords) {
+    List<DigitalMediaEvent> events;
+    if (consumerRecords.size() < properties.getParallelParseMinBatchSize()) {
+      events = consumerRecords.stream().map(this::parseMessage).toList();
     } else {
-      log.info("No more message to process in batch");
+      var futures = consumerRecords.stream()
+          .map(consumerRecord -> CompletableFuture.supplyAsync(
+              () -> parseMessage(consumerRecord), parseExecutor))
+          .toList();
+      events = futures.stream().map(CompletableFuture::join).toList();
+    }
+    IntStream.range(0, events.size())
+        .filter(i -> events.get(i) == null)
+        .forEach(i -> unparsableRecords.add(consumerRecords.get(i)));
+    return events.stream().filter(Objects::nonNull).toList();
+  }
+
+  private DigitalMediaEvent parseMessage(ConsumerRecord<String, byte[]> consumerRecord) {
+    try {
+      return digitalMediaEventReader.readValue(consumerRecord.value());
+    } catch (IOException e) {
+      log.error("Moving message to DLQ, failed to parse event message at offset {}",
+          consumerRecord.offset(), e);
+      return null;
     }
   }
 
+  private record FailedBatch(long offset, int attempts) {
+
+  }
+
 }
@@ -1,56 +1,153 @@
 package eu.dissco.core.digitalmediaprocessor.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import eu.dissco.core.digitalmediaprocessor.domain.AutoAcceptedAnnotation;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaEvent;
-import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaRecord;
+import eu.dissco.core.digitalmediaprocessor.properties.KafkaPublisherProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.cache.CacheManager;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class KafkaPublisherService {
 
+  public static final String RETRY_TOPIC = "digital-media-object-retry";
+  public static final String NOT_BEFORE_HEADER = "not-before";
+  public static final String REPUBLISHED_CACHE = "republishedDigitalMedia";
+  private static final String DLQ_TOPIC = "digital-media-object-dlq";
+
   private final ObjectMapper mapper;
   private final KafkaTemplate<String, String> kafkaTemplate;
-  private final ProvenanceService provenanceService;
+  private final KafkaTemplate<String, byte[]> rawKafkaTemplate;
+  private final KafkaPublisherProperties properties;
+  private final MeterRegistry meterRegistry;
+  private final CacheManager cacheManager;
 
-  public void publishCreateEvent(DigitalMediaRecord digitalMediaRecord)
+  /*
+  Duplicates are republished to the retry topic with a not-before timestamp, so they are only
+  processed again after the first version has been committed. When the same digital media is
+  republished again while it is still remembered as republished, it is counted as a loop.
+  */
+  public void republishDigitalMedia(DigitalMediaEvent event)
       throws JsonProcessingException {
-    var event = provenanceService.generateCreateEvent(digitalMediaRecord);
-    kafkaTemplate.send("createUpdateDeleteTopic", mapper.writeValueAsString(event));
+    var key = messageKey(event);
+    var message = mapper.writeValueAsString(event);
+    var producerRecord = new ProducerRecord<>(RETRY_TOPIC, key, message);
+    var notBefore = Instant.now().plus(properties.getRepublishDelay()).toEpochMilli();
+    producerRecord.headers()
+        .add(NOT_BEFORE_HEADER, Long.toString(notBefore).getBytes(StandardCharsets.UTF_8));
+    countRepublish(key);
+    track("republished event " + describe(event), kafkaTemplate.send(producerRecord),
+        () -> kafkaTemplate.send(DLQ_TOPIC, key, message));
   }
 
-  public void publishAnnotationRequestEvent(String enrichment,
-      DigitalMediaRecord digitalMediaRecord) throws JsonProcessingException {
-    kafkaTemplate.send(enrichment, mapper.writeValueAsString(digitalMediaRecord));
+  private void countRepublish(String key) {
+    meterRegistry.counter("digital.media.republished").increment();
+    var republished = cacheManager.getCache(REPUBLISHED_CACHE);
+    if (key == null || republished == null) {
+      return;
+    }
+    if (republished.putIfAbsent(key, Boolean.TRUE) != null) {
+      log.warn("Digital media {} was republished as duplicate again", key);
+      meterRegistry.counter("digital.media.republish.loops").increment();
+    }
   }
 
-  public void publishUpdateEvent(DigitalMediaRecord digitalMediaRecord, JsonNode jsonPatch)
-      throws JsonProcessingException {
-    var event = provenanceService.generateUpdateEvent(digitalMediaRecord, jsonPatch);
-    kafkaTemplate.send("createUpdateDeleteTopic", mapper.writeValueAsString(event));
+  /*
+  Forgets the digital media once they have been processed, so a republished digital media is only
+  counted as a loop when it is republished again before it was processed.
+  */
+  public void forgetRepublished(Collection<DigitalMediaEvent> events) {
+    var republished = cacheManager.getCache(REPUBLISHED_CACHE);
+    if (republished == null) {
+      return;
+    }
+    events.stream()
+        .map(KafkaPublisherService::messageKey)
+        .filter(Objects::nonNull)
+        .forEach(republished::evict);
   }
 
-  public void republishDigitalMedia(DigitalMediaEvent event)
+  public void deadLetterRaw(String key, byte[] message) {
+    track("raw dead letter message", rawKafkaTemplate.send(DLQ_TOPIC, key, message),
+        () -> rawKafkaTemplate.send(DLQ_TOPIC, key, message));
+  }
+
+  public void deadLetterEvent(DigitalMediaEvent event)
       throws JsonProcessingException {
-    kafkaTemplate.send("digital-media-object", mapper.writeValueAsString(event));
+    var key = messageKey(event);
+    var message = mapper.writeValueAsString(event);
+    track("dead letter event " + describe(event), kafkaTemplate.send(DLQ_TOPIC, key, message),
+        () -> kafkaTemplate.send(DLQ_TOPIC, key, message));
   }
 
-  public void deadLetterRaw(String message) {
-    kafkaTemplate.send("digital-media-object-dlq", message);
+  /*
+  Events for the same digital media get the same key, so they end up on the same partition and
+  are never consumed by two consumers at the same time.
+  */
+  static String messageKey(DigitalMediaEvent event) {
+    var digitalMediaWrapper = event.digitalMediaWrapper();
+    if (digitalMediaWrapper == null || digitalMediaWrapper.attributes() == null) {
+      return null;
+    }
+    return digitalMediaWrapper.digitalSpecimenID() + " "
+        + digitalMediaWrapper.attributes().getAcAccessURI();
   }
 
-  public void deadLetterEvent(DigitalMediaEvent event)
-      throws JsonProcessingException {
-    kafkaTemplate.send("digital-media-object-dlq", mapper.writeValueAsString(event));
+  /*
+  Waits for all messages sent in the batch. Only the messages which could not be sent are
+  recovered: a republished event is dead lettered instead, a dead letter is sent once more.
+  Returns the descriptions of the messages which could not be recovered either, so the caller
+  can decide what to do with them, without having to process the whole batch again.
+  */
+  public List<String> awaitBatch(PublishBatch publishBatch) {
+    var failedSends = publishBatch.await(properties.getSendTimeout());
+    if (failedSends.isEmpty()) {
+      return List.of();
+    }
+    log.warn("Recovering {} messages which could not be sent to Kafka", failedSends.size());
+    var recoveryBatch = new PublishBatch();
+    var unrecoverable = new ArrayList<String>();
+    for (var failedSend : failedSends) {
+      try {
+        recoveryBatch.add(failedSend.description(), failedSend.recovery().get(), null);
+      } catch (RuntimeException e) {
+        log.error("Failed to recover {}", failedSend.description(), e);
+        unrecoverable.add(failedSend.description());
+      }
+    }
+    recoveryBatch.await(properties.getSendTimeout())
+        .forEach(failedSend -> unrecoverable.add(failedSend.description()));
+    return unrecoverable;
   }
 
-  public void publishAcceptedAnnotation(AutoAcceptedAnnotation annotation)
-      throws JsonProcessingException {
-    kafkaTemplate.send("auto-accepted-annotation", mapper.writeValueAsString(annotation));
+  private static void track(String description, CompletableFuture<?> future,
+      Supplier<CompletableFuture<?>> recovery) {
+    PublishBatch.current()
+        .ifPresent(publishBatch -> publishBatch.add(description, future, recovery));
   }
+
+  private static String describe(DigitalMediaEvent event) {
+    var digitalMediaWrapper = event.digitalMediaWrapper();
+    if (digitalMediaWrapper == null || digitalMediaWrapper.attributes() == null) {
+      return "without digital media";
+    }
+    return "for digital specimen " + digitalMediaWrapper.digitalSpecimenID() + " and media "
+        + digitalMediaWrapper.attributes().getAcAccessURI();
+  }
+
 }
@@ -0,0 +1,45 @@
+package eu.dissco.core.digitalmediaprocessor.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.dissco.core.digitalmediaprocessor.domain.AutoAcceptedAnnotation;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaRecord;
+import eu.dissco.core.digitalmediaprocessor.domain.OutboxEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+public class OutboxEventService {
+
+  private final ObjectMapper mapper;
+  private final ProvenanceService provenanceService;
+
+  public OutboxEvent createEvent(DigitalMediaRecord digitalMediaRecord)
+      throws JsonProcessingException {
+    var event = provenanceService.generateCreateEvent(digitalMediaRecord);
+    return new OutboxEvent(digitalMediaRecord.id(), "createUpdateDeleteTopic",
+        mapper.writeValueAsString(event));
+  }
+
+  public OutboxEvent annotationRequestEvent(String enrichment,
+      DigitalMediaRecord digitalMediaRecord) throws JsonProcessingException {
+    return new OutboxEvent(digitalMediaRecord.id(), enrichment,
+        mapper.writeValueAsString(digitalMediaRecord));
+  }
+
+  public OutboxEvent updateEvent(DigitalMediaRecord digitalMediaRecord, JsonNode jsonPatch)
+      throws JsonProcessingException {
+    var event = provenanceService.generateUpdateEvent(digitalMediaRecord, jsonPatch);
+    return new OutboxEvent(digitalMediaRecord.id(), "createUpdateDeleteTopic",
+        mapper.writeValueAsString(event));
+  }
+
+  public OutboxEvent acceptedAnnotationEvent(String mediaId, AutoAcceptedAnnotation annotation)
+      throws JsonProcessingException {
+    return new OutboxEvent(mediaId, "auto-accepted-annotation",
+        mapper.writeValueAsString(annotation));
+  }
+
+}
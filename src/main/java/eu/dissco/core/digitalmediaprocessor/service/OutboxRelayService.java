@@ -0,0 +1,67 @@
+package eu.dissco.core.digitalmediaprocessor.service;
+
+import eu.dissco.core.digitalmediaprocessor.properties.OutboxProperties;
+import eu.dissco.core.digitalmediaprocessor.repository.OutboxRepository;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OutboxRelayService {
+
+  private final OutboxRepository repository;
+  private final KafkaTemplate<String, String> kafkaTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final OutboxProperties properties;
+
+  @Scheduled(fixedDelayString = "PT1S")
+  public void relayEvents() {
+    try {
+      Integer relayed;
+      do {
+        relayed = transactionTemplate.execute(status -> relayBatch());
+      } while (relayed != null && relayed == properties.getBatchSize());
+    } catch (IllegalStateException e) {
+      log.error("Unable to relay outbox events, retrying in the next run", e);
+    }
+  }
+
+  /*
+  Sends a batch of released events without waiting for the individual sends and only waits for
+  the acknowledgement of the whole batch. The events are deleted in the same transaction in which
+  they were locked, if any send fails the transaction rolls back and the batch is retried.
+  This gives at-least-once delivery. Events are keyed by the media id, so the events of the same
+  media keep their order on a single partition.
+  */
+  private int relayBatch() {
+    var events = repository.getReleasedEvents(properties.getBatchSize());
+    if (events.isEmpty()) {
+      return 0;
+    }
+    var futures = events.values().stream()
+        .map(event -> kafkaTemplate.send(event.topic(), event.mediaId(), event.payload()))
+        .toArray(CompletableFuture[]::new);
+    try {
+      CompletableFuture.allOf(futures)
+          .get(properties.getSendTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while relaying outbox events", e);
+    } catch (ExecutionException | TimeoutException e) {
+      throw new IllegalStateException("Failed to send outbox events to Kafka", e);
+    }
+    repository.deleteEvents(events.keySet());
+    log.debug("Relayed {} outbox events", events.size());
+    return events.size();
+  }
+
+}
@@ -1,50 +1,70 @@
 package eu.dissco.core.digitalmediaprocessor.service;
 
 import static eu.dissco.core.digitalmediaprocessor.configuration.ApplicationConfiguration.DATE_STRING;
+import static eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaComparator.isEqualIgnoringTimestamps;
+import static eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaUtils.DOI_PREFIX;
+import static eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaUtils.generateContentHash;
 import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
 
 import co.elastic.clients.elasticsearch._types.ElasticsearchException;
 import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.github.fge.jsonpatch.diff.JsonDiff;
 import eu.dissco.core.digitalmediaprocessor.Profiles;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaContentHash;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaEvent;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaKey;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaRecord;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaWrapper;
+import eu.dissco.core.digitalmediaprocessor.domain.DuplicateStrategy;
+import eu.dissco.core.digitalmediaprocessor.domain.OutboxEvent;
 import eu.dissco.core.digitalmediaprocessor.domain.ProcessResult;
 import eu.dissco.core.digitalmediaprocessor.domain.UpdatedDigitalMediaRecord;
 import eu.dissco.core.digitalmediaprocessor.domain.UpdatedDigitalMediaTuple;
 import eu.dissco.core.digitalmediaprocessor.exceptions.DigitalSpecimenNotFoundException;
 import eu.dissco.core.digitalmediaprocessor.exceptions.PidCreationException;
+import eu.dissco.core.digitalmediaprocessor.properties.ProcessingProperties;
 import eu.dissco.core.digitalmediaprocessor.repository.DigitalMediaRepository;
 import eu.dissco.core.digitalmediaprocessor.repository.DigitalSpecimenRepository;
 import eu.dissco.core.digitalmediaprocessor.repository.ElasticSearchRepository;
-import eu.dissco.core.digitalmediaprocessor.schema.DigitalMedia;
+import eu.dissco.core.digitalmediaprocessor.repository.OutboxRepository;
+import eu.dissco.core.digitalmediaprocessor.schema.Agent;
 import eu.dissco.core.digitalmediaprocessor.schema.EntityRelationship;
+import eu.dissco.core.digitalmediaprocessor.utils.JsonPatchGenerator;
+import eu.dissco.core.digitalmediaprocessor.utils.KeyLock;
 import eu.dissco.core.digitalmediaprocessor.web.HandleComponent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
+import java.net.URI;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jooq.exception.DataAccessException;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
@@ -53,10 +73,13 @@ import org.springframework.stereotype.Service;
 @RequiredArgsConstructor
 public class ProcessingService {
 
+  public static final String STAGE_TIMER = "digital.media.processing.stage";
+
   private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(DATE_STRING)
       .withZone(ZoneOffset.UTC);
 
   private final ObjectMapper mapper;
+  private final JsonPatchGenerator jsonPatchGenerator;
   private final DigitalMediaRepository repository;
   private final FdoRecordService fdoRecordService;
   private final HandleComponent handleComponent;
@@ -65,6 +88,13 @@ public class ProcessingService {
   private final DigitalSpecimenRepository digitalSpecimenRepository;
   private final Environment environment;
   private final AnnotationPublisherService annotationPublisherService;
+  private final OutboxEventService outboxEventService;
+  private final OutboxRepository outboxRepository;
+  @Qualifier("processingExecutor")
+  private final Executor processingExecutor;
+  private final KeyLock<DigitalMediaKey> digitalMediaLock;
+  private final ProcessingProperties processingProperties;
+  private final MeterRegistry meterRegistry;
 
   private static DigitalMediaEvent mapUpdatedRecordToEvent(UpdatedDigitalMediaRecord media) {
     return new DigitalMediaEvent(media.automatedAnnotations(),
@@ -84,17 +114,90 @@ public class ProcessingService {
       checkIfDigitalSpecimenIdExists(events);
     }
     log.info("Processing {} digital media", events.size());
-    var uniqueBatch = removeDuplicatesInBatch(events);
-    var processResult = processDigitalMedia(uniqueBatch);
+    var digitalMediaKeys = events.stream()
+        .map(event -> getDigitalMediaKey(event.digitalMediaWrapper())).collect(toSet());
+    try (var ignored = digitalMediaLock.lockAll(digitalMediaKeys)) {
+      var publishBatch = new PublishBatch();
+      var results = timed("batch",
+          () -> publishBatch.callInBatch(() -> processBatch(events, publishBatch)));
+      var failedSends = kafkaService.awaitBatch(publishBatch);
+      if (!failedSends.isEmpty()) {
+        throw new IllegalStateException("Failed to send or dead letter " + failedSends.size()
+            + " messages to Kafka: " + failedSends);
+      }
+      kafkaService.forgetRepublished(getNotRepublishedEvents(events));
+      return results;
+    }
+  }
+
+  /*
+  Messages sent to Kafka while processing the batch are collected in the publish batch, also by
+  the branches, and awaited together once the whole batch has been processed.
+  The unique batches are processed one after the other, so a later version of a digital media is
+  compared against the version stored by the previous unique batch.
+  */
+  private List<DigitalMediaRecord> processBatch(List<DigitalMediaEvent> events,
+      PublishBatch publishBatch) {
     var results = new ArrayList<DigitalMediaRecord>();
-    if (!processResult.equalDigitalMedia().isEmpty()) {
-      processEqualDigitalMedia(processResult.equalDigitalMedia());
+    for (var uniqueBatch : removeDuplicatesInBatch(events)) {
+      results.addAll(processUniqueBatch(uniqueBatch, publishBatch));
     }
+    return results;
+  }
+
+  private List<DigitalMediaRecord> processUniqueBatch(Set<DigitalMediaEvent> uniqueBatch,
+      PublishBatch publishBatch) {
+    var processResult = timed("compare", () -> processDigitalMedia(uniqueBatch));
+    var branches = new ArrayList<CompletableFuture<Set<DigitalMediaRecord>>>();
     if (!processResult.newDigitalMedia().isEmpty()) {
-      results.addAll(persistNewDigitalMedia(processResult.newDigitalMedia()));
+      branches.add(CompletableFuture.supplyAsync(() -> publishBatch.callInBatch(
+          () -> timed("new", () -> persistNewDigitalMedia(processResult.newDigitalMedia()))),
+          processingExecutor));
     }
     if (!processResult.changedDigitalMedia().isEmpty()) {
-      results.addAll(updateExistingDigitalMedia(processResult.changedDigitalMedia()));
+      branches.add(CompletableFuture.supplyAsync(() -> publishBatch.callInBatch(
+              () -> timed("update",
+                  () -> updateExistingDigitalMedia(processResult.changedDigitalMedia()))),
+          processingExecutor));
+    }
+    if (!processResult.equalDigitalMedia().isEmpty()) {
+      timed("equal", () -> {
+        processEqualDigitalMedia(processResult.equalDigitalMedia(),
+            processResult.missingContentHashes());
+        return null;
+      });
+    }
+    return awaitBranches(branches);
+  }
+
+  /*
+  Records the duration of a processing stage, the percentiles can be enabled through the
+  distribution settings of the meter registry.
+  */
+  private <T> T timed(String stage, Supplier<T> work) {
+    return Timer.builder(STAGE_TIMER).tag("stage", stage).register(meterRegistry).record(work);
+  }
+
+  /*
+  The new and changed digital media branches work on disjoint sets of media, so they can run
+  concurrently. Each branch keeps its own rollback handling. We wait for all branches to finish
+  before returning, so a failing branch does not leave the other one running in the background.
+  Unexpected exceptions are unwrapped and rethrown, just as when the branches ran sequentially.
+  */
+  private List<DigitalMediaRecord> awaitBranches(
+      List<CompletableFuture<Set<DigitalMediaRecord>>> branches) {
+    CompletableFuture.allOf(branches.toArray(CompletableFuture[]::new))
+        .exceptionally(throwable -> null).join();
+    var results = new ArrayList<DigitalMediaRecord>();
+    for (var branch : branches) {
+      try {
+        results.addAll(branch.join());
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException runtimeException) {
+          throw runtimeException;
+        }
+        throw e;
+      }
     }
     return results;
   }
@@ -114,28 +217,77 @@ public class ProcessingService {
     }
   }
 
-  private Set<DigitalMediaEvent> removeDuplicatesInBatch(
+  /*
+  Splits the batch into batches which contain each digital media, identified by its specimen id
+  and media url, only once, keeping the order of the batch. Depending on the duplicate strategy,
+  duplicates are republished to the retry topic, processed as successive versions in later unique
+  batches, or coalesced into the last event of the batch.
+  */
+  private List<Set<DigitalMediaEvent>> removeDuplicatesInBatch(
       List<DigitalMediaEvent> events) {
-    var uniqueSet = new LinkedHashSet<DigitalMediaEvent>();
+    var uniqueBatches = new ArrayList<Set<DigitalMediaEvent>>();
+    uniqueBatches.add(new LinkedHashSet<>());
     var map = events.stream()
         .collect(
             Collectors.groupingBy(
-                event -> event.digitalMediaWrapper().attributes().getAcAccessURI()));
-    for (Entry<String, List<DigitalMediaEvent>> entry : map.entrySet()) {
-      if (entry.getValue().size() > 1) {
-        log.warn("Found {} duplicates in batch for id {}", entry.getValue().size(), entry.getKey());
-        for (int i = 0; i < entry.getValue().size(); i++) {
-          if (i == 0) {
-            uniqueSet.add(entry.getValue().get(i));
-          } else {
-            republishEvent(entry.getValue().get(i));
+                event -> getDigitalMediaKey(event.digitalMediaWrapper()), LinkedHashMap::new,
+                Collectors.toList()));
+    for (Entry<DigitalMediaKey, List<DigitalMediaEvent>> entry : map.entrySet()) {
+      var duplicates = entry.getValue();
+      if (duplicates.size() == 1) {
+        uniqueBatches.get(0).add(duplicates.get(0));
+        continue;
+      }
+      log.warn("Found {} duplicates in batch for id {}, handling them with strategy {}",
+          duplicates.size(), entry.getKey(), processingProperties.getDuplicateStrategy());
+      switch (processingProperties.getDuplicateStrategy()) {
+        case REPUBLISH -> {
+          uniqueBatches.get(0).add(duplicates.get(0));
+          duplicates.subList(1, duplicates.size()).forEach(this::republishEvent);
+        }
+        case SEQUENTIAL -> {
+          for (int i = 0; i < duplicates.size(); i++) {
+            if (uniqueBatches.size() == i) {
+              uniqueBatches.add(new LinkedHashSet<>());
+            }
+            uniqueBatches.get(i).add(duplicates.get(i));
           }
         }
-      } else {
-        uniqueSet.add(entry.getValue().get(0));
+        case COALESCE -> uniqueBatches.get(0).add(coalesce(duplicates));
       }
     }
-    return uniqueSet;
+    return uniqueBatches;
+  }
+
+  /*
+  The last event wins, but the enrichments requested by the earlier events are kept, so no
+  requested enrichment is lost by coalescing.
+  */
+  private static DigitalMediaEvent coalesce(List<DigitalMediaEvent> duplicates) {
+    var lastEvent = duplicates.get(duplicates.size() - 1);
+    var enrichmentList = duplicates.stream()
+        .map(DigitalMediaEvent::enrichmentList)
+        .filter(Objects::nonNull)
+        .flatMap(List::stream)
+        .distinct()
+        .toList();
+    return new DigitalMediaEvent(enrichmentList, lastEvent.digitalMediaWrapper());
+  }
+
+  /*
+  With the republish strategy, the digital media which occur more than once in the batch have been
+  republished, so they need to be remembered to detect republish loops. All other digital media
+  have been processed and are forgotten.
+  */
+  private List<DigitalMediaEvent> getNotRepublishedEvents(List<DigitalMediaEvent> events) {
+    if (processingProperties.getDuplicateStrategy() != DuplicateStrategy.REPUBLISH) {
+      return events;
+    }
+    var occurrences = events.stream().collect(Collectors.groupingBy(
+        event -> getDigitalMediaKey(event.digitalMediaWrapper()), Collectors.counting()));
+    return events.stream()
+        .filter(event -> occurrences.get(getDigitalMediaKey(event.digitalMediaWrapper())) == 1)
+        .toList();
   }
 
   private void republishEvent(DigitalMediaEvent event) {
@@ -146,18 +298,54 @@ public class ProcessingService {
     }
   }
 
+  /*
+  We first compare the content hash of the received digital media with the stored content hash.
+  This only requires the id, version and hash of the current digital media.
+  Only when the hashes differ (or no hash has been stored yet) we load the full current digital
+  media and run the equality check on the deserialized objects. When these turn out to be equal,
+  the hash of the received digital media is stored, so the next check can use the hash.
+  */
   private ProcessResult processDigitalMedia(Set<DigitalMediaEvent> events) {
-    var currentDigitalMedias = getCurrentDigitalMedia(
+    var currentContentHashes = getCurrentContentHashes(
         events.stream().map(DigitalMediaEvent::digitalMediaWrapper).toList());
-    var equalDigitalMedia = new ArrayList<DigitalMediaRecord>();
+    var equalDigitalMedia = new ArrayList<String>();
     var changedDigitalMedia = new ArrayList<UpdatedDigitalMediaTuple>();
     var newDigitalMedia = new ArrayList<DigitalMediaEvent>();
+    var missingContentHashes = new HashMap<String, String>();
+    var possiblyChangedDigitalMedia = new ArrayList<DigitalMediaEvent>();
     for (var digitalMedia : events) {
       var digitalMediaWrapper = digitalMedia.digitalMediaWrapper();
-      var digitalMediaKey = new DigitalMediaKey(
-          digitalMediaWrapper.digitalSpecimenID(),
-          digitalMediaWrapper.attributes().getAcAccessURI());
+      var digitalMediaKey = getDigitalMediaKey(digitalMediaWrapper);
       log.debug("Processing digitalMediaWrapper: {}", digitalMediaWrapper);
+      var currentContentHash = currentContentHashes.get(digitalMediaKey);
+      if (currentContentHash == null) {
+        log.debug("DigitalMedia with key: {} is completely new", digitalMediaKey);
+        newDigitalMedia.add(digitalMedia);
+      } else if (currentContentHash.contentHash() != null && currentContentHash.contentHash()
+          .equals(generateContentHash(mapper, digitalMediaWrapper))) {
+        log.debug("Received digital media has the same content hash as digital media: {}",
+            currentContentHash.id());
+        equalDigitalMedia.add(currentContentHash.id());
+      } else {
+        possiblyChangedDigitalMedia.add(digitalMedia);
+      }
+    }
+    if (!possiblyChangedDigitalMedia.isEmpty()) {
+      compareCurrentDigitalMedia(possiblyChangedDigitalMedia, equalDigitalMedia,
+          changedDigitalMedia, newDigitalMedia, missingContentHashes);
+    }
+    return new ProcessResult(equalDigitalMedia, changedDigitalMedia, newDigitalMedia,
+        missingContentHashes);
+  }
+
+  private void compareCurrentDigitalMedia(List<DigitalMediaEvent> events,
+      List<String> equalDigitalMedia, List<UpdatedDigitalMediaTuple> changedDigitalMedia,
+      List<DigitalMediaEvent> newDigitalMedia, Map<String, String> missingContentHashes) {
+    var currentDigitalMedias = getCurrentDigitalMedia(
+        events.stream().map(DigitalMediaEvent::digitalMediaWrapper).toList());
+    for (var digitalMedia : events) {
+      var digitalMediaWrapper = digitalMedia.digitalMediaWrapper();
+      var digitalMediaKey = getDigitalMediaKey(digitalMediaWrapper);
       if (!currentDigitalMedias.containsKey(digitalMediaKey)) {
         log.debug("DigitalMedia with key: {} is completely new", digitalMediaKey);
         newDigitalMedia.add(digitalMedia);
@@ -166,7 +354,9 @@ public class ProcessingService {
         if (isEqual(currentDigitalMedia.digitalMediaWrapper(), digitalMediaWrapper)) {
           log.debug("Received digital media is equal to digital media: {}",
               currentDigitalMedia.id());
-          equalDigitalMedia.add(currentDigitalMedia);
+          equalDigitalMedia.add(currentDigitalMedia.id());
+          missingContentHashes.put(currentDigitalMedia.id(),
+              generateContentHash(mapper, digitalMediaWrapper));
         } else {
           log.debug("Digital Media Object with id: {} has received an update",
               currentDigitalMedia.id());
@@ -175,55 +365,58 @@ public class ProcessingService {
         }
       }
     }
-    return new ProcessResult(equalDigitalMedia, changedDigitalMedia, newDigitalMedia);
+  }
+
+  private static DigitalMediaKey getDigitalMediaKey(DigitalMediaWrapper digitalMediaWrapper) {
+    return new DigitalMediaKey(
+        digitalMediaWrapper.digitalSpecimenID(),
+        digitalMediaWrapper.attributes().getAcAccessURI());
   }
 
   /*
-  We need to remove the Modified and EntityRelationshipDate from the comparison.
-  We take over the ERDate from the current entity relationship if the ER is equal.
+  We need to ignore the Modified, Created and EntityRelationshipDate in the comparison.
+  The timestamps are skipped by the comparator, so the current digital media is not modified.
+  When the digital media is equal, the entity relationships are equal by position and take over
+  the ERDate of the current ones. Only when it has changed are the current entity relationships
+  indexed to take over the ERDate of the relationships which did not change.
+  The received digital media takes over the created timestamp of the current one, and its modified
+  timestamp when nothing has changed.
 
   To establish equality, we only compare type and attributes, not original data or
   physical specimen id. We ignore original data because original data is not updated
   if it does change, and we ignore physical specimen id because that's how the specimens
   were identified to be the same in the first place.
   */
-  private boolean isEqual(DigitalMediaWrapper currentDigitalMediaWrapper,
+  boolean isEqual(DigitalMediaWrapper currentDigitalMediaWrapper,
       DigitalMediaWrapper digitalMediaWrapper) {
     if (currentDigitalMediaWrapper.attributes() == null) {
       return false;
     }
-    var currentModified = currentDigitalMediaWrapper.attributes().getDctermsModified();
-    var currentCreated = currentDigitalMediaWrapper.attributes().getDctermsCreated();
-    setGeneratedTimestampToNull(currentDigitalMediaWrapper, digitalMediaWrapper);
     var entityRelationships = digitalMediaWrapper.attributes().getOdsHasEntityRelationships();
-    setTimestampsEntityRelationships(entityRelationships,
-        currentDigitalMediaWrapper.attributes().getOdsHasEntityRelationships());
+    var currentEntityRelationships = currentDigitalMediaWrapper.attributes()
+        .getOdsHasEntityRelationships();
     checkOriginalData(currentDigitalMediaWrapper, digitalMediaWrapper);
-    if (currentDigitalMediaWrapper.attributes().equals(digitalMediaWrapper.attributes())
+    var isEqual = currentDigitalMediaWrapper.type().equals(digitalMediaWrapper.type())
         && currentDigitalMediaWrapper.digitalSpecimenID()
         .equals(digitalMediaWrapper.digitalSpecimenID())
-        && currentDigitalMediaWrapper.type().equals(digitalMediaWrapper.type())
-    ) {
-      digitalMediaWrapper.attributes().setDctermsModified(currentModified);
-      currentDigitalMediaWrapper.attributes().setDctermsModified(currentModified);
-      digitalMediaWrapper.attributes().setDctermsCreated(currentCreated);
-      currentDigitalMediaWrapper.attributes().setDctermsCreated(currentCreated);
-      return true;
+        && isEqualIgnoringTimestamps(currentDigitalMediaWrapper.attributes(),
+        digitalMediaWrapper.attributes());
+    if (isEqual) {
+      if (entityRelationships != currentEntityRelationships) {
+        for (int i = 0; i < entityRelationships.size(); i++) {
+          entityRelationships.get(i).setDwcRelationshipEstablishedDate(
+              currentEntityRelationships.get(i).getDwcRelationshipEstablishedDate());
+        }
+      }
+      digitalMediaWrapper.attributes()
+          .setDctermsModified(currentDigitalMediaWrapper.attributes().getDctermsModified());
     } else {
+      setTimestampsEntityRelationships(entityRelationships, currentEntityRelationships);
       digitalMediaWrapper.attributes().setDctermsModified(formatter.format(Instant.now()));
-      currentDigitalMediaWrapper.attributes().setDctermsModified(currentModified);
-      digitalMediaWrapper.attributes().setDctermsCreated(currentCreated);
-      digitalMediaWrapper.attributes().setDctermsCreated(currentCreated);
-      return false;
     }
-  }
-
-  private static void setGeneratedTimestampToNull(DigitalMediaWrapper currentDigitalMediaWrapper,
-      DigitalMediaWrapper digitalMediaWrapper) {
-    currentDigitalMediaWrapper.attributes().setDctermsModified(null);
-    digitalMediaWrapper.attributes().setDctermsModified(null);
-    currentDigitalMediaWrapper.attributes().setDctermsCreated(null);
-    digitalMediaWrapper.attributes().setDctermsCreated(null);
+    digitalMediaWrapper.attributes()
+        .setDctermsCreated(currentDigitalMediaWrapper.attributes().getDctermsCreated());
+    return isEqual;
   }
 
   private void checkOriginalData(DigitalMediaWrapper currentDigitalMediaWrapper,
@@ -241,41 +434,43 @@ public class ProcessingService {
   When all fields are equal except the timestamp we assume tha relationships are equal and the
   timestamp can be taken over from the current entity relationship.
   This will reduce the amount of updates and will only update the ER timestamp when there was an
-  actual change
+  actual change.
+  The current relationships are indexed on all fields except the timestamp, so matching is linear
+  in the number of relationships. When several current relationships are equal, the timestamp of
+  the last one is taken over.
   */
-  private void setTimestampsEntityRelationships(List<EntityRelationship> entityRelationships,
+  void setTimestampsEntityRelationships(List<EntityRelationship> entityRelationships,
       List<EntityRelationship> currentEntityRelationships) {
+    var currentTimestamps = new HashMap<EntityRelationshipKey, Date>();
+    for (var currentEntityRelationship : currentEntityRelationships) {
+      currentTimestamps.put(EntityRelationshipKey.of(currentEntityRelationship),
+          currentEntityRelationship.getDwcRelationshipEstablishedDate());
+    }
     for (var entityRelationship : entityRelationships) {
-      for (var currentEntityrelationship : currentEntityRelationships) {
-        if (Objects.equals(entityRelationship.getId(), currentEntityrelationship.getId()) &&
-            Objects.equals(entityRelationship.getType(), currentEntityrelationship.getType()) &&
-            Objects.equals(entityRelationship.getDwcRelationshipOfResource(),
-                currentEntityrelationship.getDwcRelationshipOfResource()) &&
-            Objects.equals(entityRelationship.getDwcRelationshipOfResourceID(),
-                currentEntityrelationship.getDwcRelationshipOfResourceID()) &&
-            Objects.equals(entityRelationship.getDwcRelatedResourceID(),
-                currentEntityrelationship.getDwcRelatedResourceID()) &&
-            Objects.equals(entityRelationship.getOdsRelatedResourceURI(),
-                currentEntityrelationship.getOdsRelatedResourceURI()) &&
-            Objects.equals(entityRelationship.getOdsHasAgents(),
-                currentEntityrelationship.getOdsHasAgents()) &&
-            Objects.equals(entityRelationship.getDwcRelationshipRemarks(),
-                currentEntityrelationship.getDwcRelationshipRemarks())
-        ) {
-          entityRelationship.setDwcRelationshipEstablishedDate(
-              currentEntityrelationship.getDwcRelationshipEstablishedDate());
-        }
+      var key = EntityRelationshipKey.of(entityRelationship);
+      if (currentTimestamps.containsKey(key)) {
+        entityRelationship.setDwcRelationshipEstablishedDate(currentTimestamps.get(key));
       }
     }
   }
 
+  private Map<DigitalMediaKey, DigitalMediaContentHash> getCurrentContentHashes(
+      List<DigitalMediaWrapper> digitalMediaWrappers) {
+    return repository.getDigitalMediaContentHashes(
+            digitalMediaWrappers.stream().map(ProcessingService::getDigitalMediaKey).toList())
+        .stream().collect(
+            toMap(DigitalMediaContentHash::digitalMediaKey,
+                Function.identity(),
+                (dm1, dm2) -> {
+                  log.warn("Duplicate keys found: {} and {}", dm1, dm2);
+                  return dm1;
+                }));
+  }
+
   private Map<DigitalMediaKey, DigitalMediaRecord> getCurrentDigitalMedia(
       List<DigitalMediaWrapper> digitalMediaWrappers) {
-    return repository.getDigitalMedia(
-            digitalMediaWrappers.stream().map(DigitalMediaWrapper::digitalSpecimenID).toList(),
-            digitalMediaWrappers.stream()
-                .map(digitalMedia -> digitalMedia.attributes().getAcAccessURI())
-                .toList())
+    return repository.getDigitalMediaByKeys(
+            digitalMediaWrappers.stream().map(ProcessingService::getDigitalMediaKey).toList())
         .stream().collect(
             toMap(digitalMediaRecord ->
                     new DigitalMediaKey(
@@ -299,11 +494,15 @@ public class ProcessingService {
       dlqBatchUpdate(digitalMediaRecords);
       return Set.of();
     }
+    var outboxEvents = createOutboxEventsUpdatedMedia(digitalMediaRecords);
+    if (digitalMediaRecords.isEmpty()) {
+      return Set.of();
+    }
     log.info("Persisting to db");
     try {
       repository.createDigitalMediaRecord(
           digitalMediaRecords.stream().map(UpdatedDigitalMediaRecord::digitalMediaRecord)
-              .toList());
+              .toList(), outboxEvents);
     } catch (DataAccessException e) {
       log.error("Database exception: unable to post updates to db", e);
       rollbackHandleUpdate(new ArrayList<>(digitalMediaRecords));
@@ -321,28 +520,81 @@ public class ProcessingService {
       var bulkResponse = elasticRepository.indexDigitalMedia(
           digitalMediaRecords.stream().map(UpdatedDigitalMediaRecord::digitalMediaRecord)
               .toList());
-      if (!bulkResponse.errors()) {
-        handleSuccessfulElasticUpdate(digitalMediaRecords);
-      } else {
+      if (bulkResponse.errors()) {
         handlePartiallyElasticUpdate(digitalMediaRecords, bulkResponse);
       }
       var successfullyProcessedRecords = digitalMediaRecords.stream()
           .map(UpdatedDigitalMediaRecord::digitalMediaRecord).collect(
               toSet());
+      releaseOutboxEvents(successfullyProcessedRecords);
       log.info("Successfully updated {} digital media object", successfullyProcessedRecords.size());
-      annotationPublisherService.publishAnnotationUpdatedMedia(digitalMediaRecords);
       return successfullyProcessedRecords;
     } catch (IOException | ElasticsearchException e) {
       log.error("Rolling back, failed to insert records in elastic", e);
-      digitalMediaRecords.forEach(
-          updatedDigitalMediaRecord -> rollbackUpdatedDigitalMedia(
-              updatedDigitalMediaRecord,
-              false));
+      digitalMediaRecords.forEach(this::rollbackUpdatedDigitalMedia);
+      deletePendingOutboxEvents(digitalMediaRecords.stream()
+          .map(UpdatedDigitalMediaRecord::digitalMediaRecord).toList());
       filterUpdatesAndRollbackHandles(new ArrayList<>(digitalMediaRecords));
       return Set.of();
     }
   }
 
+  /*
+  Creates the update, annotation request and auto-accepted annotation events, which are stored in
+  the outbox together with the digital media. When the update event cannot be created the record
+  is not persisted, we roll back its handle update and dead letter it.
+  */
+  private List<OutboxEvent> createOutboxEventsUpdatedMedia(
+      Set<UpdatedDigitalMediaRecord> digitalMediaRecords) {
+    var outboxEvents = new ArrayList<OutboxEvent>();
+    var failedRecords = new ArrayList<UpdatedDigitalMediaRecord>();
+    for (var digitalMediaRecord : digitalMediaRecords) {
+      try {
+        outboxEvents.add(outboxEventService.updateEvent(digitalMediaRecord.digitalMediaRecord(),
+            digitalMediaRecord.jsonPatch()));
+      } catch (JsonProcessingException e) {
+        log.error("Failed to create update event for digital media: {}",
+            digitalMediaRecord.digitalMediaRecord().id(), e);
+        failedRecords.add(digitalMediaRecord);
+      }
+    }
+    if (!failedRecords.isEmpty()) {
+      failedRecords.forEach(digitalMediaRecords::remove);
+      dlqBatchUpdate(new HashSet<>(failedRecords));
+      filterUpdatesAndRollbackHandles(failedRecords);
+    }
+    outboxEvents.addAll(
+        annotationPublisherService.createAnnotationEventsUpdatedMedia(digitalMediaRecords));
+    return outboxEvents;
+  }
+
+  private void releaseOutboxEvents(Collection<DigitalMediaRecord> digitalMediaRecords) {
+    if (digitalMediaRecords.isEmpty()) {
+      return;
+    }
+    var ids = digitalMediaRecords.stream().map(DigitalMediaRecord::id).toList();
+    try {
+      outboxRepository.releaseEvents(ids);
+    } catch (DataAccessException e) {
+      log.error("Database exception: unable to release outbox events for digital media: {}, "
+          + "they are recovered when the batch is redelivered", ids, e);
+      throw e;
+    }
+  }
+
+  private void deletePendingOutboxEvents(Collection<DigitalMediaRecord> digitalMediaRecords) {
+    if (digitalMediaRecords.isEmpty()) {
+      return;
+    }
+    var ids = digitalMediaRecords.stream().map(DigitalMediaRecord::id).toList();
+    try {
+      outboxRepository.deletePendingEvents(ids);
+    } catch (DataAccessException e) {
+      log.error("Database exception: unable to delete pending outbox events for digital media: {}",
+          ids, e);
+    }
+  }
+
   private void dlqBatchUpdate(Set<UpdatedDigitalMediaRecord> recordsToDlq) {
     for (var media : recordsToDlq) {
       try {
@@ -390,18 +642,14 @@ public class ProcessingService {
           if (item.error() != null) {
             log.error("Failed item to insert into elastic search: {} with errors {}",
                 digitalMediaRecord.digitalMediaRecord().id(), item.error().reason());
-            rollbackUpdatedDigitalMedia(digitalMediaRecord, false);
+            rollbackUpdatedDigitalMedia(digitalMediaRecord);
             handlesToRollback.add(digitalMediaRecord);
             digitalMediaRecords.remove(digitalMediaRecord);
-          } else {
-            var successfullyPublished = publishUpdateEvent(digitalMediaRecord);
-            if (!successfullyPublished) {
-              handlesToRollback.add(digitalMediaRecord);
-              digitalMediaRecords.remove(digitalMediaRecord);
-            }
           }
         }
     );
+    deletePendingOutboxEvents(handlesToRollback.stream()
+        .map(UpdatedDigitalMediaRecord::digitalMediaRecord).toList());
     filterUpdatesAndRollbackHandles(handlesToRollback);
   }
 
@@ -443,43 +691,7 @@ public class ProcessingService {
     }
   }
 
-  private void handleSuccessfulElasticUpdate(Set<UpdatedDigitalMediaRecord> digitalMediaRecords) {
-    log.debug("Successfully indexed {} digital media", digitalMediaRecords);
-    var failedRecords = new HashSet<UpdatedDigitalMediaRecord>();
-    for (var digitalMediaRecord : digitalMediaRecords) {
-      var successfullyPublished = publishUpdateEvent(digitalMediaRecord);
-      if (!successfullyPublished) {
-        failedRecords.add(digitalMediaRecord);
-      }
-    }
-    if (!failedRecords.isEmpty()) {
-      filterUpdatesAndRollbackHandles(new ArrayList<>(failedRecords));
-      digitalMediaRecords.removeAll(failedRecords);
-    }
-  }
-
-  private boolean publishUpdateEvent(UpdatedDigitalMediaRecord digitalMediaRecord) {
-    try {
-      kafkaService.publishUpdateEvent(digitalMediaRecord.digitalMediaRecord(),
-          digitalMediaRecord.jsonPatch());
-      return true;
-    } catch (JsonProcessingException e) {
-      log.error("Rolling back, failed to publish update event", e);
-      rollbackUpdatedDigitalMedia(digitalMediaRecord, true);
-      return false;
-    }
-  }
-
-  private void rollbackUpdatedDigitalMedia(UpdatedDigitalMediaRecord updatedDigitalMediaRecord,
-      boolean elasticRollback) {
-    if (elasticRollback) {
-      try {
-        elasticRepository.rollbackVersion(updatedDigitalMediaRecord.currentDigitalMediaRecord());
-      } catch (IOException | ElasticsearchException e) {
-        log.error("Fatal exception, unable to roll back update for: "
-            + updatedDigitalMediaRecord.currentDigitalMediaRecord(), e);
-      }
-    }
+  private void rollbackUpdatedDigitalMedia(UpdatedDigitalMediaRecord updatedDigitalMediaRecord) {
     rollBackToEarlierVersion(updatedDigitalMediaRecord.currentDigitalMediaRecord());
     try {
       kafkaService.deadLetterEvent(
@@ -519,11 +731,16 @@ public class ProcessingService {
             tuple.digitalMediaEvent().digitalMediaWrapper()),
         tuple.digitalMediaEvent().enrichmentList(),
         tuple.currentDigitalMediaRecord(),
-        createJsonPatch(tuple.currentDigitalMediaRecord().digitalMediaWrapper().attributes(),
+        jsonPatchGenerator.createJsonPatch(
+            tuple.currentDigitalMediaRecord().digitalMediaWrapper().attributes(),
             tuple.digitalMediaEvent().digitalMediaWrapper().attributes())
     )).collect(toSet());
   }
 
+  /*
+  Updates the handles which need an update. When some chunks of the handle update fail, the
+  records in these chunks are removed from the given set and dead lettered.
+  */
   public void updateHandles(Set<UpdatedDigitalMediaRecord> updatedDigitalMediaRecords)
       throws PidCreationException {
     var handleUpdates = updatedDigitalMediaRecords.stream().filter(
@@ -534,15 +751,55 @@ public class ProcessingService {
         .toList();
     if (!handleUpdates.isEmpty()) {
       var request = fdoRecordService.buildPatchDeleteRequest(handleUpdates);
-      handleComponent.updateHandle(request);
+      var failedHandles = handleComponent.updateHandle(request);
+      if (!failedHandles.isEmpty()) {
+        var failedRecords = updatedDigitalMediaRecords.stream()
+            .filter(media -> failedHandles.contains(media.digitalMediaRecord().id()))
+            .collect(toSet());
+        updatedDigitalMediaRecords.removeAll(failedRecords);
+        dlqBatchUpdate(failedRecords);
+      }
     }
   }
 
-  private void processEqualDigitalMedia(List<DigitalMediaRecord> currentDigitalMedia) {
-    var currentIds = currentDigitalMedia.stream().map(DigitalMediaRecord::id).toList();
+  private void processEqualDigitalMedia(List<String> currentIds,
+      Map<String, String> missingContentHashes) {
     repository.updateLastChecked(currentIds);
+    if (!missingContentHashes.isEmpty()) {
+      repository.updateContentHashes(missingContentHashes);
+    }
     log.info("Successfully updated lastChecked for {} existing digital media",
         currentIds.size());
+    recoverPendingOutboxEvents(currentIds);
+  }
+
+  /*
+  The outbox events of a digital media stay pending when the process stopped, or the release
+  failed, after the digital media was committed. The batch is then redelivered, and the digital
+  media is equal to the stored one. As it may not have reached Elasticsearch, the stored digital
+  media is indexed again before its pending events are released. When indexing fails the events
+  stay pending, and are recovered on the next delivery.
+  */
+  private void recoverPendingOutboxEvents(List<String> currentIds) {
+    var pendingIds = outboxRepository.getPendingMediaIds(currentIds);
+    if (pendingIds.isEmpty()) {
+      return;
+    }
+    log.warn("Found pending outbox events for {} unchanged digital media, recovering them",
+        pendingIds.size());
+    var digitalMediaRecords = repository.getDigitalMediaByIds(pendingIds);
+    try {
+      var bulkResponse = elasticRepository.indexDigitalMedia(digitalMediaRecords);
+      var failedIds = bulkResponse.items().stream()
+          .filter(item -> item.error() != null)
+          .map(BulkResponseItem::id)
+          .collect(toSet());
+      releaseOutboxEvents(digitalMediaRecords.stream()
+          .filter(digitalMediaRecord -> !failedIds.contains(DOI_PREFIX + digitalMediaRecord.id()))
+          .toList());
+    } catch (IOException | ElasticsearchException e) {
+      log.error("Failed to index digital media with pending outbox events: {}", pendingIds, e);
+    }
   }
 
   private Set<DigitalMediaRecord> persistNewDigitalMedia(
@@ -571,15 +828,25 @@ public class ProcessingService {
       dlqBatchCreate(newRecords);
       return Collections.emptySet();
     }
-    var digitalMediaRecords = newRecords.stream()
-        .collect(toMap(event -> mapToDigitalMediaRecord(event, pidMap),
-            DigitalMediaEvent::enrichmentList));
-    digitalMediaRecords.remove(null);
+    var digitalMediaRecords = new HashMap<DigitalMediaRecord, List<String>>();
+    var failedRecords = new ArrayList<DigitalMediaEvent>();
+    for (var event : newRecords) {
+      var digitalMediaRecord = mapToDigitalMediaRecord(event, pidMap);
+      if (digitalMediaRecord != null) {
+        digitalMediaRecords.put(digitalMediaRecord, event.enrichmentList());
+      } else {
+        failedRecords.add(event);
+      }
+    }
+    if (!failedRecords.isEmpty()) {
+      dlqBatchCreate(failedRecords);
+    }
+    var outboxEvents = createOutboxEventsNewMedia(digitalMediaRecords);
     if (digitalMediaRecords.isEmpty()) {
       return Collections.emptySet();
     }
     try {
-      repository.createDigitalMediaRecord(digitalMediaRecords.keySet());
+      repository.createDigitalMediaRecord(digitalMediaRecords.keySet(), outboxEvents);
     } catch (DataAccessException e) {
       log.error("Database exception, unable to post new digital media to database", e);
       rollbackHandleCreation(new ArrayList<>(digitalMediaRecords.keySet()));
@@ -596,24 +863,61 @@ public class ProcessingService {
         newRecords.size());
     try {
       var bulkResponse = elasticRepository.indexDigitalMedia(digitalMediaRecords.keySet());
-      if (!bulkResponse.errors()) {
-        handleSuccessfulElasticInsert(digitalMediaRecords);
-      } else {
+      if (bulkResponse.errors()) {
         handlePartiallyFailedElasticInsert(digitalMediaRecords, bulkResponse);
       }
-      log.info("Successfully created {} new digital media", digitalMediaRecords.size());
-      annotationPublisherService.publishAnnotationNewMedia(digitalMediaRecords.keySet());
       handleComponent.activatePids(activateTheseHandles);
+      releaseOutboxEvents(digitalMediaRecords.keySet());
+      log.info("Successfully created {} new digital media", digitalMediaRecords.size());
       return digitalMediaRecords.keySet();
     } catch (IOException | ElasticsearchException e) {
       log.error("Rolling back, failed to insert records in elastic", e);
       digitalMediaRecords.forEach(this::rollbackNewDigitalMedia);
       var mediaRecords = digitalMediaRecords.keySet().stream().toList();
+      deletePendingOutboxEvents(mediaRecords);
       rollbackHandleCreation(mediaRecords);
       return Collections.emptySet();
     }
   }
 
+  /*
+  Creates the create, annotation request and auto-accepted annotation events, which are stored in
+  the outbox together with the digital media. When the create event cannot be created the record
+  is not persisted, we roll back its handle and dead letter it.
+  */
+  private List<OutboxEvent> createOutboxEventsNewMedia(
+      Map<DigitalMediaRecord, List<String>> digitalMediaRecords) {
+    var outboxEvents = new ArrayList<OutboxEvent>();
+    var failedRecords = new ArrayList<DigitalMediaRecord>();
+    for (var entry : digitalMediaRecords.entrySet()) {
+      try {
+        outboxEvents.add(outboxEventService.createEvent(entry.getKey()));
+      } catch (JsonProcessingException e) {
+        log.error("Failed to create Create event for digital media: {}", entry.getKey().id(), e);
+        failedRecords.add(entry.getKey());
+        continue;
+      }
+      entry.getValue().forEach(mas -> {
+        try {
+          outboxEvents.add(outboxEventService.annotationRequestEvent(mas, entry.getKey()));
+        } catch (JsonProcessingException e) {
+          log.error(
+              "No action taken, failed to create annotation request event for aas: {} digital media: {}",
+              mas, entry.getKey().id(), e);
+        }
+      });
+    }
+    if (!failedRecords.isEmpty()) {
+      failedRecords.forEach(
+          failedRecord -> deadLetterNewDigitalMedia(failedRecord,
+              digitalMediaRecords.remove(failedRecord)));
+      rollbackHandleCreation(failedRecords);
+    }
+    outboxEvents.addAll(
+        annotationPublisherService.createAnnotationEventsNewMedia(digitalMediaRecords.keySet()));
+    return outboxEvents;
+  }
+
   private void handlePartiallyFailedElasticInsert(
       Map<DigitalMediaRecord, List<String>> digitalMediaRecords, BulkResponse bulkResponse) {
     var digitalMediaMap = digitalMediaRecords.keySet().stream()
@@ -629,73 +933,23 @@ public class ProcessingService {
                 digitalMediaRecords.get(digitalMediaRecord));
             digitalMediaRecords.remove(digitalMediaRecord);
             recordsToRollback.add(digitalMediaRecord);
-          } else {
-            var successfullyPublished = publishEvents(digitalMediaRecord,
-                digitalMediaRecords.get(digitalMediaRecord));
-            if (!successfullyPublished) {
-              digitalMediaRecords.remove(digitalMediaRecord);
-              recordsToRollback.add(digitalMediaRecord);
-            }
           }
         }
     );
     if (!recordsToRollback.isEmpty()) {
+      deletePendingOutboxEvents(recordsToRollback);
       rollbackHandleCreation(recordsToRollback);
     }
   }
 
-  private void handleSuccessfulElasticInsert(
-      Map<DigitalMediaRecord, List<String>> digitalMediaRecords) {
-    log.debug("Successfully indexed {} digital media", digitalMediaRecords);
-    var recordsToRollback = new ArrayList<DigitalMediaRecord>();
-    for (var entry : digitalMediaRecords.entrySet()) {
-      var successfullyPublished = publishEvents(entry.getKey(), entry.getValue());
-      if (!successfullyPublished) {
-        recordsToRollback.add(entry.getKey());
-        digitalMediaRecords.remove(entry.getKey());
-      }
-    }
-    if (!recordsToRollback.isEmpty()) {
-      rollbackHandleCreation(recordsToRollback);
-    }
-  }
-
-  private boolean publishEvents(DigitalMediaRecord key, List<String> value) {
-    try {
-      kafkaService.publishCreateEvent(key);
-    } catch (JsonProcessingException e) {
-      log.error("Rolling back, failed to publish Create event", e);
-      rollbackNewDigitalMedia(key, value, true);
-      return false;
-    }
-    value.forEach(mas -> {
-      try {
-        kafkaService.publishAnnotationRequestEvent(mas, key);
-      } catch (JsonProcessingException e) {
-        log.error(
-            "No action taken, failed to publish annotation request event for aas: {} digital media: {}",
-            mas, key.id(), e);
-      }
-    });
-    return true;
-  }
-
   private void rollbackNewDigitalMedia(DigitalMediaRecord digitalMediaRecord,
       List<String> automatedAnnotations) {
-    rollbackNewDigitalMedia(digitalMediaRecord, automatedAnnotations, false);
+    repository.rollBackDigitalMedia(digitalMediaRecord.id());
+    deadLetterNewDigitalMedia(digitalMediaRecord, automatedAnnotations);
   }
 
-  private void rollbackNewDigitalMedia(DigitalMediaRecord digitalMediaRecord,
-      List<String> automatedAnnotations, boolean elasticRollback) {
-
-    if (elasticRollback) {
-      try {
-        elasticRepository.rollbackDigitalMedia(digitalMediaRecord);
-      } catch (IOException | ElasticsearchException e) {
-        log.error("Fatal exception, unable to roll back: " + digitalMediaRecord.id(), e);
-      }
-    }
-    repository.rollBackDigitalMedia(digitalMediaRecord.id());
+  private void deadLetterNewDigitalMedia(DigitalMediaRecord digitalMediaRecord,
+      List<String> automatedAnnotations) {
     try {
       kafkaService.deadLetterEvent(
           new DigitalMediaEvent(automatedAnnotations,
@@ -738,11 +992,29 @@ public class ProcessingService {
   }
 
 
-  private JsonNode createJsonPatch(DigitalMedia currentDigitalMedia, DigitalMedia digitalMedia) {
-    var jsonCurrentMedia = (ObjectNode) mapper.valueToTree(currentDigitalMedia);
-    var jsonMedia = (ObjectNode) mapper.valueToTree(digitalMedia);
-    jsonCurrentMedia.set("dcterms:modified", null);
-    jsonMedia.set("dcterms:modified", null);
-    return JsonDiff.asJson(jsonCurrentMedia, jsonMedia);
+  /*
+  All fields of an entity relationship except the established date, used to match the received
+  relationships to the current relationships in one pass. The agents are left out of the hash
+  code, as hashing them means walking all their nested objects, they are still compared in equals.
+  */
+  private record EntityRelationshipKey(String id, String type, String relationshipOfResource,
+                                       String relationshipOfResourceID, String relatedResourceID,
+                                       URI relatedResourceURI, List<Agent> agents,
+                                       String relationshipRemarks) {
+
+    static EntityRelationshipKey of(EntityRelationship entityRelationship) {
+      return new EntityRelationshipKey(entityRelationship.getId(), entityRelationship.getType(),
+          entityRelationship.getDwcRelationshipOfResource(),
+          entityRelationship.getDwcRelationshipOfResourceID(),
+          entityRelationship.getDwcRelatedResourceID(),
+          entityRelationship.getOdsRelatedResourceURI(), entityRelationship.getOdsHasAgents(),
+          entityRelationship.getDwcRelationshipRemarks());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(id, type, relationshipOfResource, relationshipOfResourceID,
+          relatedResourceID, relatedResourceURI, relationshipRemarks);
+    }
   }
 }
@@ -38,7 +38,7 @@ public class ProvenanceService {
 
   public CreateUpdateTombstoneEvent generateCreateEvent(
       DigitalMediaRecord digitalMediaRecord) {
-    var digitalMedia = DigitalMediaUtils.flattenToDigitalMedia(digitalMediaRecord);
+    var digitalMedia = DigitalMediaUtils.flattenToDigitalMedia(mapper, digitalMediaRecord);
     return generateCreateUpdateTombStoneEvent(digitalMedia, ProvActivity.Type.ODS_CREATE,
         null);
   }
@@ -94,7 +94,7 @@ public class ProvenanceService {
 
   public CreateUpdateTombstoneEvent generateUpdateEvent(DigitalMediaRecord digitalMediaRecord,
       JsonNode jsonPatch) {
-    var digitalMedia = DigitalMediaUtils.flattenToDigitalMedia(digitalMediaRecord);
+    var digitalMedia = DigitalMediaUtils.flattenToDigitalMedia(mapper, digitalMediaRecord);
     return generateCreateUpdateTombStoneEvent(digitalMedia, ProvActivity.Type.ODS_UPDATE,
         jsonPatch);
   }
@@ -0,0 +1,80 @@
+package eu.dissco.core.digitalmediaprocessor.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+Collects the Kafka sends of one processing batch, so they can be awaited together at the end of
+the batch instead of one by one. A batch is bound to the thread which runs a piece of work with
+callInBatch, work which is handed over to another thread has to be bound to the batch again.
+*/
+@Slf4j
+public class PublishBatch {
+
+  private static final ThreadLocal<PublishBatch> CURRENT = new ThreadLocal<>();
+
+  private final Queue<PendingSend> pendingSends = new ConcurrentLinkedQueue<>();
+
+  static Optional<PublishBatch> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  public <T> T callInBatch(Supplier<T> work) {
+    var previous = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      return work.get();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+
+  void add(String description, CompletableFuture<?> future,
+      Supplier<CompletableFuture<?>> recovery) {
+    pendingSends.add(new PendingSend(description, future, recovery));
+  }
+
+  /*
+  Waits for all sends until the timeout has passed and returns the sends which failed.
+  */
+  List<PendingSend> await(Duration timeout) {
+    var deadline = System.nanoTime() + timeout.toNanos();
+    var failedSends = new ArrayList<PendingSend>();
+    for (var pendingSend : pendingSends) {
+      try {
+        pendingSend.future().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for messages to be sent", e);
+      } catch (ExecutionException | TimeoutException e) {
+        log.error("Failed to send {} to Kafka", pendingSend.description(), e);
+        failedSends.add(pendingSend);
+      }
+    }
+    return failedSends;
+  }
+
+  /*
+  The recovery is sent once in place of a send which failed, it either sends the same message
+  again or dead letters the digital media the message was about.
+  */
+  record PendingSend(String description, CompletableFuture<?> future,
+                     Supplier<CompletableFuture<?>> recovery) {
+
+  }
+
+}
@@ -0,0 +1,53 @@
+package eu.dissco.core.digitalmediaprocessor.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/*
+Limits the number of calls to a downstream service which are in flight at the same time. With
+virtual threads the number of threads no longer bounds the load on a downstream service, so
+each service gets a fixed number of permits instead. Callers wait for a permit in fair order.
+An interrupt while waiting is kept, so the call itself can handle it as it normally would.
+*/
+public class ConcurrencyLimiter {
+
+  private final Semaphore permits;
+
+  public ConcurrencyLimiter(int maxConcurrentCalls) {
+    permits = new Semaphore(maxConcurrentCalls, true);
+  }
+
+  public <T, E extends Exception> T call(LimitedCall<T, E> limitedCall) throws E {
+    permits.acquireUninterruptibly();
+    try {
+      return limitedCall.call();
+    } finally {
+      permits.release();
+    }
+  }
+
+  /*
+  Starts an asynchronous call once a permit is available. The permit is held until the returned
+  future completes, so the caller can start several calls and wait for them together.
+  */
+  public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> asyncCall) {
+    permits.acquireUninterruptibly();
+    try {
+      return asyncCall.get().whenComplete((result, failure) -> permits.release());
+    } catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  public int availablePermits() {
+    return permits.availablePermits();
+  }
+
+  @FunctionalInterface
+  public interface LimitedCall<T, E extends Exception> {
+
+    T call() throws E;
+  }
+}
@@ -0,0 +1,135 @@
+package eu.dissco.core.digitalmediaprocessor.utils;
+
+import eu.dissco.core.digitalmediaprocessor.schema.DigitalMedia;
+import eu.dissco.core.digitalmediaprocessor.schema.EntityRelationship;
+import java.util.List;
+import java.util.Objects;
+
+/*
+Compares digital media on all fields except the generated timestamps dcterms:modified,
+dcterms:created and the dwc:relationshipEstablishedDate of the entity relationships, which are
+compared by position. Neither object is modified, so the attributes can be shared between threads while
+they are compared. The fields which are most likely to change and cheapest to compare are checked
+first, the lists are only compared when all scalar fields are equal.
+When a field is added to the schema it needs to be added here as well, the unit test fails on
+fields which are not compared.
+*/
+public class DigitalMediaComparator {
+
+  private DigitalMediaComparator() {
+    // This is a utility class, so it should not be instantiated
+  }
+
+  public static boolean isEqualIgnoringTimestamps(DigitalMedia current, DigitalMedia received) {
+    if (current == received) {
+      return true;
+    }
+    if (current == null || received == null) {
+      return false;
+    }
+    return isScalarEqual(current, received) && isNestedEqual(current, received);
+  }
+
+  private static boolean isScalarEqual(DigitalMedia current, DigitalMedia received) {
+    return Objects.equals(current.getAcAccessURI(), received.getAcAccessURI())
+        && Objects.equals(current.getDctermsFormat(), received.getDctermsFormat())
+        && Objects.equals(current.getDctermsRights(), received.getDctermsRights())
+        && Objects.equals(current.getId(), received.getId())
+        && Objects.equals(current.getType(), received.getType())
+        && Objects.equals(current.getDctermsIdentifier(), received.getDctermsIdentifier())
+        && Objects.equals(current.getOdsFdoType(), received.getOdsFdoType())
+        && Objects.equals(current.getOdsVersion(), received.getOdsVersion())
+        && current.getOdsStatus() == received.getOdsStatus()
+        && current.getDctermsType() == received.getDctermsType()
+        && Objects.equals(current.getOdsSourceSystemID(), received.getOdsSourceSystemID())
+        && Objects.equals(current.getOdsSourceSystemName(), received.getOdsSourceSystemName())
+        && Objects.equals(current.getOdsOrganisationID(), received.getOdsOrganisationID())
+        && Objects.equals(current.getOdsOrganisationName(), received.getOdsOrganisationName())
+        && Objects.equals(current.getAcMetadataLanguage(), received.getAcMetadataLanguage())
+        && Objects.equals(current.getAcMetadataLanguageLiteral(),
+        received.getAcMetadataLanguageLiteral())
+        && Objects.equals(current.getAcSubtype(), received.getAcSubtype())
+        && Objects.equals(current.getAcSubtypeLiteral(), received.getAcSubtypeLiteral())
+        && Objects.equals(current.getDctermsTitle(), received.getDctermsTitle())
+        && Objects.equals(current.getDctermsLanguage(), received.getDctermsLanguage())
+        && Objects.equals(current.getDctermsDescription(), received.getDctermsDescription())
+        && Objects.equals(current.getXmpRightsUsageTerms(), received.getXmpRightsUsageTerms())
+        && Objects.equals(current.getXmpRightsWebStatement(),
+        received.getXmpRightsWebStatement())
+        && Objects.equals(current.getXmpRightsOwner(), received.getXmpRightsOwner())
+        && Objects.equals(current.getDctermsAvailable(), received.getDctermsAvailable())
+        && Objects.equals(current.getAcComments(), received.getAcComments())
+        && Objects.equals(current.getDctermsSource(), received.getDctermsSource())
+        && Objects.equals(current.getIptc4xmpExtCVterm(), received.getIptc4xmpExtCVterm())
+        && Objects.equals(current.getAcSubjectCategoryVocabulary(),
+        received.getAcSubjectCategoryVocabulary())
+        && Objects.equals(current.getAcVariant(), received.getAcVariant())
+        && Objects.equals(current.getAcVariantLiteral(), received.getAcVariantLiteral())
+        && Objects.equals(current.getAcVariantDescription(), received.getAcVariantDescription())
+        && Objects.equals(current.getExifPixelYDimension(), received.getExifPixelYDimension())
+        && Objects.equals(current.getExifPixelXDimension(), received.getExifPixelXDimension())
+        && Objects.equals(current.getXmpCreateDate(), received.getXmpCreateDate())
+        && Objects.equals(current.getAcTimeOfDay(), received.getAcTimeOfDay())
+        && Objects.equals(current.getAcSubjectOrientation(), received.getAcSubjectOrientation())
+        && Objects.equals(current.getAcSubjectOrientationLiteral(),
+        received.getAcSubjectOrientationLiteral())
+        && Objects.equals(current.getAcSubjectPart(), received.getAcSubjectPart())
+        && Objects.equals(current.getAcSubjectPartLiteral(), received.getAcSubjectPartLiteral())
+        && Objects.equals(current.getAcCaptureDevice(), received.getAcCaptureDevice())
+        && Objects.equals(current.getAcDigitizationDate(), received.getAcDigitizationDate())
+        && Objects.equals(current.getAcFrameRate(), received.getAcFrameRate())
+        && Objects.equals(current.getAcResourceCreationTechnique(),
+        received.getAcResourceCreationTechnique());
+  }
+
+  private static boolean isNestedEqual(DigitalMedia current, DigitalMedia received) {
+    return Objects.equals(current.getAcTag(), received.getAcTag())
+        && Objects.equals(current.getOdsHasIdentifiers(), received.getOdsHasIdentifiers())
+        && Objects.equals(current.getOdsHasTombstoneMetadata(),
+        received.getOdsHasTombstoneMetadata())
+        && Objects.equals(current.getAdditionalProperties(), received.getAdditionalProperties())
+        && Objects.equals(current.getOdsHasAssertions(), received.getOdsHasAssertions())
+        && Objects.equals(current.getOdsHasCitations(), received.getOdsHasCitations())
+        && Objects.equals(current.getOdsHasAgents(), received.getOdsHasAgents())
+        && isEntityRelationshipsEqual(current.getOdsHasEntityRelationships(),
+        received.getOdsHasEntityRelationships());
+  }
+
+  private static boolean isEntityRelationshipsEqual(List<EntityRelationship> current,
+      List<EntityRelationship> received) {
+    if (current == received) {
+      return true;
+    }
+    if (current == null || received == null || current.size() != received.size()) {
+      return false;
+    }
+    for (int i = 0; i < current.size(); i++) {
+      if (!isEntityRelationshipEqual(current.get(i), received.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isEntityRelationshipEqual(EntityRelationship current,
+      EntityRelationship received) {
+    if (current == received) {
+      return true;
+    }
+    if (current == null || received == null) {
+      return false;
+    }
+    return Objects.equals(current.getDwcRelatedResourceID(), received.getDwcRelatedResourceID())
+        && Objects.equals(current.getDwcRelationshipOfResource(),
+        received.getDwcRelationshipOfResource())
+        && Objects.equals(current.getId(), received.getId())
+        && Objects.equals(current.getType(), received.getType())
+        && Objects.equals(current.getDwcRelationshipOfResourceID(),
+        received.getDwcRelationshipOfResourceID())
+        && Objects.equals(current.getOdsRelatedResourceURI(), received.getOdsRelatedResourceURI())
+        && Objects.equals(current.getDwcRelationshipRemarks(),
+        received.getDwcRelationshipRemarks())
+        && Objects.equals(current.getOdsHasAgents(), received.getOdsHasAgents());
+  }
+
+}
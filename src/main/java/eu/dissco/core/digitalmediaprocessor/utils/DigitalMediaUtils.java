@@ -1,23 +1,116 @@
 package eu.dissco.core.digitalmediaprocessor.utils;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaRecord;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaWrapper;
 import eu.dissco.core.digitalmediaprocessor.schema.DigitalMedia;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HexFormat;
 
 public class DigitalMediaUtils {
 
   public static final String DOI_PREFIX = "https://doi.org/";
+  private static final String MODIFIED = "dcterms:modified";
+  private static final String CREATED = "dcterms:created";
+  private static final String ENTITY_RELATIONSHIPS = "ods:hasEntityRelationships";
+  private static final String RELATIONSHIP_ESTABLISHED_DATE = "dwc:relationshipEstablishedDate";
 
   private DigitalMediaUtils() {
     // This is a utility class, so it should not be instantiated
   }
 
-  public static DigitalMedia flattenToDigitalMedia(DigitalMediaRecord digitalMediaRecord) {
-    var digitalMedia = digitalMediaRecord.digitalMediaWrapper().attributes();
+  /*
+  Returns a copy of the digital media with the identifiers, version and created date of the
+  record. The attributes of the record itself are left as received, as these are persisted and
+  compared against the next version the source system sends.
+  */
+  public static DigitalMedia flattenToDigitalMedia(ObjectMapper mapper,
+      DigitalMediaRecord digitalMediaRecord) {
+    var digitalMedia = mapper.convertValue(digitalMediaRecord.digitalMediaWrapper().attributes(),
+        DigitalMedia.class);
     digitalMedia.setId(DOI_PREFIX + digitalMediaRecord.id());
     digitalMedia.setDctermsIdentifier(DOI_PREFIX + digitalMediaRecord.id());
     digitalMedia.setOdsVersion(digitalMediaRecord.version());
     digitalMedia.setDctermsCreated(Date.from(digitalMediaRecord.created()));
     return digitalMedia;
   }
+
+  /*
+  Generates a SHA-256 hash over the fields which are used to establish equality between the
+  current and the received digital media. Just like the equality check in the ProcessingService,
+  this ignores the modified and created timestamps and the entity relationship established dates.
+  Object fields are hashed in alphabetical order, so the hash does not depend on field order.
+  */
+  public static String generateContentHash(ObjectMapper mapper,
+      DigitalMediaWrapper digitalMediaWrapper) {
+    if (digitalMediaWrapper.attributes() == null) {
+      return null;
+    }
+    var attributes = (ObjectNode) mapper.valueToTree(digitalMediaWrapper.attributes());
+    attributes.remove(MODIFIED);
+    attributes.remove(CREATED);
+    var entityRelationships = attributes.get(ENTITY_RELATIONSHIPS);
+    if (entityRelationships != null && entityRelationships.isArray()) {
+      entityRelationships.forEach(entityRelationship -> {
+        if (entityRelationship.isObject()) {
+          ((ObjectNode) entityRelationship).remove(RELATIONSHIP_ESTABLISHED_DATE);
+        }
+      });
+    }
+    var digest = getDigest();
+    updateDigest(digest, digitalMediaWrapper.type());
+    updateDigest(digest, digitalMediaWrapper.digitalSpecimenID());
+    updateDigest(digest, attributes);
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static MessageDigest getDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available on this platform", e);
+    }
+  }
+
+  private static void updateDigest(MessageDigest digest, JsonNode node) {
+    if (node.isObject()) {
+      var fieldNames = new ArrayList<String>();
+      node.fieldNames().forEachRemaining(fieldNames::add);
+      Collections.sort(fieldNames);
+      digest.update((byte) '{');
+      for (var fieldName : fieldNames) {
+        var value = node.get(fieldName);
+        if (!value.isNull()) {
+          updateDigest(digest, fieldName);
+          updateDigest(digest, value);
+        }
+      }
+      digest.update((byte) '}');
+    } else if (node.isArray()) {
+      digest.update((byte) '[');
+      node.forEach(element -> updateDigest(digest, element));
+      digest.update((byte) ']');
+    } else {
+      digest.update((byte) node.getNodeType().ordinal());
+      updateDigest(digest, node.asText());
+    }
+  }
+
+  private static void updateDigest(MessageDigest digest, String value) {
+    if (value == null) {
+      digest.update((byte) 0);
+      return;
+    }
+    var bytes = value.getBytes(StandardCharsets.UTF_8);
+    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+    digest.update(bytes);
+  }
 }
@@ -0,0 +1,227 @@
+package eu.dissco.core.digitalmediaprocessor.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import eu.dissco.core.digitalmediaprocessor.schema.DigitalMedia;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+
+/*
+Creates the JSON Patch between the current and the received digital media in a single pass.
+The properties of the digital media are compared on the objects themselves, only the properties
+which differ are converted to JSON and diffed, so an update of a single field does not convert
+all entity relationships and agents. The modified timestamp is always ignored.
+Arrays are diffed by the identity of their elements instead of with a longest common subsequence,
+which is quadratic in the size of the arrays. Elements are identified by their @id, or by their
+value for plain values. When not all elements have a unique identity, or when the identified
+elements were reordered, the arrays are diffed by position.
+The patch only contains add, remove and replace operations. Elements added at the end of an
+array use the "-" index, like the JSON Patch of the earlier diff library, so they are annotated
+with a class selector.
+*/
+public class JsonPatchGenerator {
+
+  private static final String MODIFIED = "dcterms:modified";
+  private static final String ID = "@id";
+  private static final String APPEND = "/-";
+  private static final String OP = "op";
+  private static final String PATH = "path";
+  private static final String VALUE = "value";
+
+  private final ObjectMapper mapper;
+  private final List<Property> properties;
+  private final AnnotatedMember additionalProperties;
+
+  public JsonPatchGenerator(ObjectMapper mapper) {
+    this.mapper = mapper;
+    var description = mapper.getSerializationConfig()
+        .introspect(mapper.constructType(DigitalMedia.class));
+    this.properties = description.findProperties().stream()
+        .filter(BeanPropertyDefinition::couldSerialize)
+        .filter(property -> !property.getName().equals(MODIFIED))
+        .map(property -> new Property("/" + escape(property.getName()),
+            property.getAccessor()))
+        .toList();
+    this.additionalProperties = description.findAnyGetter();
+  }
+
+  public JsonNode createJsonPatch(DigitalMedia currentDigitalMedia, DigitalMedia digitalMedia) {
+    var patch = mapper.createArrayNode();
+    for (var property : properties) {
+      diffValues(property.path(), property.accessor().getValue(currentDigitalMedia),
+          property.accessor().getValue(digitalMedia), patch);
+    }
+    if (additionalProperties != null) {
+      var currentValue = additionalProperties.getValue(currentDigitalMedia);
+      var value = additionalProperties.getValue(digitalMedia);
+      if (!Objects.equals(currentValue, value)) {
+        diffObjects("", toObjectNode(currentValue), toObjectNode(value), patch);
+      }
+    }
+    return patch;
+  }
+
+  private void diffValues(String path, Object currentValue, Object value, ArrayNode patch) {
+    if (Objects.equals(currentValue, value)) {
+      return;
+    }
+    if (currentValue == null) {
+      addOperation(patch, "add", path, mapper.valueToTree(value));
+    } else if (value == null) {
+      addOperation(patch, "remove", path, null);
+    } else {
+      diff(path, mapper.valueToTree(currentValue), mapper.valueToTree(value), patch);
+    }
+  }
+
+  private void diff(String path, JsonNode source, JsonNode target, ArrayNode patch) {
+    if (source.equals(target)) {
+      return;
+    }
+    if (source.isObject() && target.isObject()) {
+      diffObjects(path, (ObjectNode) source, (ObjectNode) target, patch);
+    } else if (source.isArray() && target.isArray()) {
+      diffArrays(path, (ArrayNode) source, (ArrayNode) target, patch);
+    } else {
+      addOperation(patch, "replace", path, target);
+    }
+  }
+
+  private void diffObjects(String path, ObjectNode source, ObjectNode target, ArrayNode patch) {
+    var sourceFields = source.fields();
+    while (sourceFields.hasNext()) {
+      var field = sourceFields.next();
+      var fieldPath = path + "/" + escape(field.getKey());
+      var targetValue = target.get(field.getKey());
+      if (targetValue == null) {
+        addOperation(patch, "remove", fieldPath, null);
+      } else {
+        diff(fieldPath, field.getValue(), targetValue, patch);
+      }
+    }
+    var targetFields = target.fields();
+    while (targetFields.hasNext()) {
+      var field = targetFields.next();
+      if (!source.has(field.getKey())) {
+        addOperation(patch, "add", path + "/" + escape(field.getKey()), field.getValue());
+      }
+    }
+  }
+
+  private void diffArrays(String path, ArrayNode source, ArrayNode target, ArrayNode patch) {
+    var sourceIdentities = getIdentities(source);
+    var targetIdentities = getIdentities(target);
+    if (sourceIdentities == null || targetIdentities == null
+        || !diffArraysByIdentity(path, source, target, sourceIdentities, targetIdentities,
+        patch)) {
+      diffArraysByPosition(path, source, target, patch);
+    }
+  }
+
+  /*
+  Removes the source elements which are not in the target, from the back so the indexes of the
+  remaining elements stay valid. Then walks the target, diffing the elements which are in both
+  arrays and adding the others at their target index, or at the end once all retained elements
+  have been passed. Returns false without adding any operation when the elements in both arrays
+  are not in the same order.
+  */
+  private boolean diffArraysByIdentity(String path, ArrayNode source, ArrayNode target,
+      List<JsonNode> sourceIdentities, List<JsonNode> targetIdentities, ArrayNode patch) {
+    var targetIndexes = new HashMap<JsonNode, Integer>();
+    for (int i = 0; i < targetIdentities.size(); i++) {
+      targetIndexes.put(targetIdentities.get(i), i);
+    }
+    var retainedIndexes = new ArrayList<Integer>();
+    var previousTargetIndex = -1;
+    for (int i = 0; i < sourceIdentities.size(); i++) {
+      var targetIndex = targetIndexes.get(sourceIdentities.get(i));
+      if (targetIndex != null) {
+        if (targetIndex < previousTargetIndex) {
+          return false;
+        }
+        previousTargetIndex = targetIndex;
+        retainedIndexes.add(i);
+      }
+    }
+    for (int i = source.size() - 1, last = retainedIndexes.size() - 1; i >= 0; i--) {
+      if (last >= 0 && retainedIndexes.get(last) == i) {
+        last--;
+      } else {
+        addOperation(patch, "remove", path + "/" + i, null);
+      }
+    }
+    var retained = 0;
+    for (int i = 0; i < target.size(); i++) {
+      if (retained < retainedIndexes.size() && targetIdentities.get(i)
+          .equals(sourceIdentities.get(retainedIndexes.get(retained)))) {
+        diff(path + "/" + i, source.get(retainedIndexes.get(retained)), target.get(i), patch);
+        retained++;
+      } else if (retained < retainedIndexes.size()) {
+        addOperation(patch, "add", path + "/" + i, target.get(i));
+      } else {
+        addOperation(patch, "add", path + APPEND, target.get(i));
+      }
+    }
+    return true;
+  }
+
+  private void diffArraysByPosition(String path, ArrayNode source, ArrayNode target,
+      ArrayNode patch) {
+    var common = Math.min(source.size(), target.size());
+    for (int i = 0; i < common; i++) {
+      diff(path + "/" + i, source.get(i), target.get(i), patch);
+    }
+    for (int i = source.size() - 1; i >= common; i--) {
+      addOperation(patch, "remove", path + "/" + i, null);
+    }
+    for (int i = common; i < target.size(); i++) {
+      addOperation(patch, "add", path + APPEND, target.get(i));
+    }
+  }
+
+  /*
+  Returns the identity of each element, or null when an element has no identity or when two
+  elements have the same identity.
+  */
+  private static List<JsonNode> getIdentities(ArrayNode array) {
+    var identities = new ArrayList<JsonNode>(array.size());
+    var uniqueIdentities = new HashSet<JsonNode>();
+    for (var element : array) {
+      var identity = element.isObject() ? element.get(ID) : element;
+      if (identity == null || identity.isContainerNode() || !uniqueIdentities.add(identity)) {
+        return null;
+      }
+      identities.add(identity);
+    }
+    return identities;
+  }
+
+  private ObjectNode toObjectNode(Object value) {
+    return value == null ? mapper.createObjectNode() : mapper.valueToTree(value);
+  }
+
+  private void addOperation(ArrayNode patch, String op, String path, JsonNode value) {
+    var operation = patch.addObject()
+        .put(OP, op)
+        .put(PATH, path);
+    if (value != null) {
+      operation.set(VALUE, value);
+    }
+  }
+
+  private static String escape(String name) {
+    return name.replace("~", "~0").replace("/", "~1");
+  }
+
+  private record Property(String path, AnnotatedMember accessor) {
+
+  }
+
+}
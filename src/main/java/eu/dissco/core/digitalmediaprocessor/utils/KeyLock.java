@@ -0,0 +1,82 @@
+package eu.dissco.core.digitalmediaprocessor.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+A lock per key, so only callers which lock the same keys wait for each other. A lock is created
+when its key is locked and removed again when the last caller holding or waiting for it is done,
+so only the keys which are in use take up memory. Locking a set of keys takes their locks in
+ascending order of the keys, so two callers locking overlapping sets of keys can never deadlock.
+*/
+public class KeyLock<K extends Comparable<? super K>> {
+
+  private final ConcurrentHashMap<K, CountedLock> locks = new ConcurrentHashMap<>();
+
+  public Unlocker lockAll(Collection<K> keys) {
+    var acquired = new ArrayList<K>(keys.size());
+    try {
+      for (var key : new TreeSet<>(keys)) {
+        var lock = reference(key);
+        try {
+          lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+          release(key);
+          throw e;
+        }
+        acquired.add(key);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      unlock(acquired);
+      throw new IllegalStateException("Interrupted while waiting for the lock of a key", e);
+    }
+    return () -> unlock(acquired);
+  }
+
+  int lockedKeys() {
+    return locks.size();
+  }
+
+  /*
+  The references are only changed within compute, which is atomic per key, so a lock is never
+  removed while another caller is about to take it.
+  */
+  private ReentrantLock reference(K key) {
+    return locks.compute(key, (k, countedLock) -> {
+      var referencedLock = countedLock == null ? new CountedLock() : countedLock;
+      referencedLock.references++;
+      return referencedLock;
+    }).lock;
+  }
+
+  private void release(K key) {
+    locks.computeIfPresent(key,
+        (k, countedLock) -> --countedLock.references == 0 ? null : countedLock);
+  }
+
+  private void unlock(List<K> acquired) {
+    for (int i = acquired.size() - 1; i >= 0; i--) {
+      var key = acquired.get(i);
+      locks.get(key).lock.unlock();
+      release(key);
+    }
+  }
+
+  private static final class CountedLock {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private int references;
+  }
+
+  @FunctionalInterface
+  public interface Unlocker extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+}
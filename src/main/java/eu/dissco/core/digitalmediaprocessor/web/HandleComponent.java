@@ -5,12 +5,19 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaKey;
 import eu.dissco.core.digitalmediaprocessor.exceptions.PidCreationException;
+import eu.dissco.core.digitalmediaprocessor.properties.HandleProperties;
+import eu.dissco.core.digitalmediaprocessor.utils.ConcurrencyLimiter;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -34,17 +41,38 @@ public class HandleComponent {
   private final WebClient handleClient;
   private final TokenAuthenticator tokenAuthenticator;
   private final ObjectMapper mapper;
+  private final HandleProperties properties;
+  @Qualifier("handleLimiter")
+  private final ConcurrencyLimiter handleLimiter;
 
   private static final String UNEXPECTED_MSG = "Unexpected response from handle API";
   private static final String UNEXPECTED_LOG = "Unexpected response from Handle API. Missing id and/or primarySpecimenObjectId. Response: {}";
 
+  /*
+  Posts the request in chunks, of which a bounded number is in flight at the same time.
+  The created handles of all successful chunks are merged into one map. If a chunk fails, the
+  records in that chunk will be missing from the map. Only when all chunks fail, an exception is
+  thrown.
+  */
   public Map<DigitalMediaKey, String> postHandle(List<JsonNode> request)
       throws PidCreationException {
     log.info("Posting {} Digital Media Objects to Handle API", request.size());
-    var requestBody = BodyInserters.fromValue(request);
-    var response = sendRequest(HttpMethod.POST, requestBody, "batch");
-    var responseJson = validateResponse(response);
-    return parseResponse(responseJson);
+    var chunkResults = sendChunks(HttpMethod.POST, request, "batch");
+    var handleNames = new HashMap<DigitalMediaKey, String>();
+    var failedChunks = new ArrayList<PidCreationException>();
+    for (var chunkResult : chunkResults) {
+      try {
+        handleNames.putAll(parseResponse(chunkResult.getResponse()));
+      } catch (PidCreationException e) {
+        log.error("Unable to create handles for chunk of {} records",
+            chunkResult.chunk().size(), e);
+        failedChunks.add(e);
+      }
+    }
+    if (!failedChunks.isEmpty() && failedChunks.size() == chunkResults.size()) {
+      throw failedChunks.get(0);
+    }
+    return handleNames;
   }
 
   public void activatePids(List<String> handles) {
@@ -60,11 +88,31 @@ public class HandleComponent {
     }
   }
 
-  public void updateHandle(List<JsonNode> request) throws PidCreationException {
+  /*
+  Updates the handles in chunks, of which a bounded number is in flight at the same time.
+  Returns the handles of the records in the chunks which failed, so only these can be dead
+  lettered. Only when all chunks fail, an exception is thrown.
+  */
+  public Set<String> updateHandle(List<JsonNode> request) throws PidCreationException {
     log.info("Updating {} Digital Media Object Handles", request.size());
-    var requestBody = BodyInserters.fromValue(request);
-    var response = sendRequest(HttpMethod.PATCH, requestBody, "");
-    validateResponse(response);
+    var chunkResults = sendChunks(HttpMethod.PATCH, request, "");
+    var failedHandles = new HashSet<String>();
+    var failedChunks = new ArrayList<PidCreationException>();
+    for (var chunkResult : chunkResults) {
+      try {
+        chunkResult.getResponse();
+      } catch (PidCreationException e) {
+        log.error("Unable to update handles for chunk of {} records",
+            chunkResult.chunk().size(), e);
+        chunkResult.chunk().forEach(
+            node -> failedHandles.add(node.get("data").get("id").asText()));
+        failedChunks.add(e);
+      }
+    }
+    if (!failedChunks.isEmpty() && failedChunks.size() == chunkResults.size()) {
+      throw failedChunks.get(0);
+    }
+    return failedHandles;
   }
 
   public void rollbackHandleCreation(List<String> request)
@@ -83,10 +131,43 @@ public class HandleComponent {
     validateResponse(response);
   }
 
+  /*
+  Sends the chunks from the calling thread. Each request first takes a permit of this call, which
+  bounds the requests of one call, and then a permit of the handle limiter, which bounds the
+  requests over all batches. Both permits are held until the response is received.
+  */
+  private List<ChunkResult> sendChunks(HttpMethod httpMethod, List<JsonNode> request,
+      String endpoint) throws PidCreationException {
+    var token = getAuthorization();
+    var requestPermits = new Semaphore(properties.getMaxConcurrentRequests());
+    var chunkResults = new ArrayList<CompletableFuture<ChunkResult>>();
+    for (int i = 0; i < request.size(); i += properties.getChunkSize()) {
+      var chunk = request.subList(i, Math.min(i + properties.getChunkSize(), request.size()));
+      requestPermits.acquireUninterruptibly();
+      chunkResults.add(handleLimiter.callAsync(() ->
+              sendRequest(httpMethod, BodyInserters.fromValue(chunk), endpoint, token)
+                  .map(response -> new ChunkResult(chunk, response, null))
+                  .defaultIfEmpty(new ChunkResult(chunk, null, null))
+                  .onErrorResume(e -> Mono.just(new ChunkResult(chunk, null, e)))
+                  .toFuture())
+          .whenComplete((chunkResult, failure) -> requestPermits.release()));
+    }
+    return awaitResponse(CompletableFuture.allOf(chunkResults.toArray(CompletableFuture[]::new))
+        .thenApply(completed -> chunkResults.stream().map(CompletableFuture::join).toList()));
+  }
+
   private <T> Mono<JsonNode> sendRequest(HttpMethod httpMethod,
       BodyInserter<T, ReactiveHttpOutputMessage> requestBody, String endpoint)
       throws PidCreationException {
-    var token = "Bearer " + tokenAuthenticator.getToken();
+    return sendRequest(httpMethod, requestBody, endpoint, getAuthorization());
+  }
+
+  private String getAuthorization() throws PidCreationException {
+    return "Bearer " + tokenAuthenticator.getToken();
+  }
+
+  private <T> Mono<JsonNode> sendRequest(HttpMethod httpMethod,
+      BodyInserter<T, ReactiveHttpOutputMessage> requestBody, String endpoint, String token) {
     return handleClient
         .method(httpMethod)
         .uri(uriBuilder -> uriBuilder.path(endpoint).build())
@@ -105,9 +186,20 @@ public class HandleComponent {
                     "External Service failed to process after max retries")));
   }
 
-  private JsonNode validateResponse(Mono<JsonNode> response) throws PidCreationException {
+  private <T> T validateResponse(Mono<T> response) throws PidCreationException {
+    return awaitResponse(handleLimiter.callAsync(response::toFuture));
+  }
+
+  /*
+  A future which is already complete does not check the interrupt flag, so an interrupt is
+  checked explicitly. The requests have been sent by then, so no response is left unread.
+  */
+  private <T> T awaitResponse(CompletableFuture<T> response) throws PidCreationException {
     try {
-      return response.toFuture().get();
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      return response.get();
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       log.error("Interrupted exception has occurred.");
@@ -140,4 +232,16 @@ public class HandleComponent {
     }
   }
 
+  private record ChunkResult(List<JsonNode> chunk, JsonNode response, Throwable failure) {
+
+    JsonNode getResponse() throws PidCreationException {
+      if (failure instanceof PidCreationException pidCreationException) {
+        throw pidCreationException;
+      } else if (failure != null) {
+        throw new PidCreationException(failure.getMessage());
+      }
+      return response;
+    }
+  }
+
 }
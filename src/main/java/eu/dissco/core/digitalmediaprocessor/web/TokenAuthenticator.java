@@ -5,11 +5,13 @@ import eu.dissco.core.digitalmediaprocessor.exceptions.PidCreationException;
 import eu.dissco.core.digitalmediaprocessor.properties.TokenProperties;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.BodyInserters;
@@ -22,15 +24,76 @@ import reactor.util.retry.Retry;
 @Slf4j
 public class TokenAuthenticator {
 
+  // Used when keycloak does not tell us when the token expires
+  private static final Duration DEFAULT_EXPIRES_IN = Duration.ofMinutes(30);
+
   private final TokenProperties properties;
 
   @Qualifier("tokenClient")
   private final WebClient tokenClient;
 
-  @Cacheable("token-cache")
+  private final AtomicReference<Token> currentToken = new AtomicReference<>();
+  private final AtomicReference<CompletableFuture<Token>> pendingRefresh = new AtomicReference<>();
+
+  /*
+  Returns the current token without locking. When the token is about to expire, a refresh is
+  started in the background and the current token is still returned. Only when there is no valid
+  token, the caller waits for the refresh. Concurrent callers share the same refresh, so only one
+  request is sent to keycloak.
+  */
   public String getToken() throws PidCreationException {
+    var token = currentToken.get();
+    var now = Instant.now();
+    if (token != null && now.isBefore(token.expiresAt())) {
+      if (!now.isBefore(token.refreshAt())) {
+        refreshToken(now);
+      }
+      return token.accessToken();
+    }
+    try {
+      return refreshToken(now).get().accessToken();
+    } catch (InterruptedException | ExecutionException e) {
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      } else if (e.getCause() instanceof PidCreationException pidCreationException) {
+        throw pidCreationException;
+      }
+      log.error("Unable to authenticate processing service with Keycloak. Verify client secret is up to-date", e);
+      throw new PidCreationException("Unable to authenticate processing service with Keycloak");
+    }
+  }
+
+  private CompletableFuture<Token> refreshToken(Instant requestedAt) {
+    var refresh = new CompletableFuture<Token>();
+    var pending = pendingRefresh.compareAndExchange(null, refresh);
+    if (pending != null) {
+      return pending;
+    }
     log.info("Requesting new token from keycloak");
-    var response = tokenClient
+    requestToken().toFuture().whenComplete((tokenNode, throwable) -> {
+      var failure = throwable;
+      Token token = null;
+      if (failure == null) {
+        try {
+          token = parseToken(tokenNode, requestedAt);
+          currentToken.set(token);
+        } catch (PidCreationException e) {
+          failure = e;
+        }
+      }
+      pendingRefresh.set(null);
+      if (failure == null) {
+        refresh.complete(token);
+      } else {
+        log.warn("Unable to refresh token from keycloak", failure);
+        refresh.completeExceptionally(failure);
+      }
+    });
+    return refresh;
+  }
+
+  private Mono<JsonNode> requestToken() {
+    return tokenClient
         .post()
         .body(BodyInserters.fromFormData(properties.getFromFormData()))
         .acceptCharset(StandardCharsets.UTF_8)
@@ -44,25 +107,32 @@ public class TokenAuthenticator {
                 new PidCreationException(
                     "Token authentication failed to process after max retries")
             ));
-    try {
-      var tokenNode = response.toFuture().get();
-      return getToken(tokenNode);
-    } catch (InterruptedException | ExecutionException e) {
-      if (e instanceof InterruptedException){
-        Thread.currentThread().interrupt();
-      }
-      log.error("Unable to authenticate processing service with Keycloak. Verify client secret is up to-date", e);
-      throw new PidCreationException("Unable to authenticate processing service with Keycloak");
-    }
   }
 
-  private String getToken(JsonNode tokenNode) throws PidCreationException {
+  /*
+  The lifetime of the token is counted from the moment we requested it, so we never use a token
+  longer than keycloak allows. We refresh ahead of the expiry, but for short-lived tokens at most
+  halfway through the lifetime.
+  */
+  private Token parseToken(JsonNode tokenNode, Instant requestedAt) throws PidCreationException {
     if (tokenNode != null && tokenNode.get("access_token") != null) {
-      return tokenNode.get("access_token").asText();
+      var expiresIn = tokenNode.hasNonNull("expires_in")
+          ? Duration.ofSeconds(tokenNode.get("expires_in").asLong()) : DEFAULT_EXPIRES_IN;
+      var refreshBeforeExpiry = properties.getRefreshBeforeExpiry();
+      if (refreshBeforeExpiry.compareTo(expiresIn.dividedBy(2)) > 0) {
+        refreshBeforeExpiry = expiresIn.dividedBy(2);
+      }
+      var expiresAt = requestedAt.plus(expiresIn);
+      return new Token(tokenNode.get("access_token").asText(),
+          expiresAt.minus(refreshBeforeExpiry), expiresAt);
     }
     log.error("Unexpected response from keycloak server. Unable to parse access_token");
     throw new PidCreationException(
         "Unable to authenticate processing service with Keycloak. An error has occurred parsing keycloak response");
   }
 
+  private record Token(String accessToken, Instant refreshAt, Instant expiresAt) {
+
+  }
+
 }
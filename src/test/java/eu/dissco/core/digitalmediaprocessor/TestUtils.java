@@ -314,7 +314,7 @@ public class TestUtils {
         .withOaHasBody(new AnnotationBody()
             .withType("oa:TextualBody")
             .withOaValue(List.of(MAPPER.writeValueAsString(
-                DigitalMediaUtils.flattenToDigitalMedia(givenDigitalMediaRecord()))))
+                DigitalMediaUtils.flattenToDigitalMedia(MAPPER, givenDigitalMediaRecord()))))
             .withDctermsReferences(SOURCE_SYSTEM_ID))
         .withDctermsCreated(Date.from(CREATED))
         .withDctermsCreator(createMachineAgent(SOURCE_SYSTEM_NAME, SOURCE_SYSTEM_ID, SOURCE_SYSTEM,
@@ -0,0 +1,118 @@
+package eu.dissco.core.digitalmediaprocessor.configuration;
+
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.DIGITAL_SPECIMEN_ID;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAPPER;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import eu.dissco.core.digitalmediaprocessor.properties.ApplicationProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.KafkaPublisherProperties;
+import eu.dissco.core.digitalmediaprocessor.service.ProvenanceService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.springframework.util.unit.DataSize;
+
+/*
+Publishes representative provenance events to an embedded broker under different producer
+settings, and logs the throughput and the number of bytes sent over the wire. Only runs when
+the benchmark system property is set: mvn verify -Dbenchmark=true
+*/
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class KafkaPublisherBenchmarkIT {
+
+  private static final String TOPIC = "createUpdateDeleteTopic";
+  private static final int EVENTS = 10_000;
+
+  private static EmbeddedKafkaBroker broker;
+  private static List<String> events;
+
+  @BeforeAll
+  static void setup() throws JsonProcessingException {
+    broker = new EmbeddedKafkaKraftBroker(1, 1, TOPIC);
+    broker.afterPropertiesSet();
+    events = givenProvenanceEvents();
+  }
+
+  @AfterAll
+  static void destroy() {
+    broker.destroy();
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+      "none, 0, 16",
+      "none, 20, 64",
+      "lz4, 20, 64",
+      "zstd, 20, 64",
+      "gzip, 20, 64",
+      "zstd, 50, 256"
+  })
+  void benchmarkPublish(String compressionType, long lingerMs, long batchSizeKb)
+      throws Exception {
+    // Given
+    var properties = new KafkaPublisherProperties();
+    properties.setHost(broker.getBrokersAsString());
+    properties.setCompressionType(compressionType);
+    properties.setLinger(Duration.ofMillis(lingerMs));
+    properties.setBatchSize(DataSize.ofKilobytes(batchSizeKb));
+    var producerFactory = new KafkaPublisherConfiguration(properties).producerFactory();
+    var kafkaTemplate = new KafkaTemplate<>(producerFactory);
+
+    // When
+    var start = System.nanoTime();
+    var futures = new ArrayList<CompletableFuture<?>>();
+    for (var event : events) {
+      futures.add(kafkaTemplate.send(TOPIC, event));
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(2, TimeUnit.MINUTES);
+    var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    // Then
+    var payloadBytes = events.stream().mapToLong(String::length).sum();
+    var bytesOnWire = producerMetric(kafkaTemplate, "outgoing-byte-total");
+    log.info("compression={} linger={}ms batchSize={}KB: {} events/s, {} payload bytes, "
+            + "{} bytes on wire ({}%), compression rate {}", compressionType, lingerMs,
+        batchSizeKb, Math.round(EVENTS / (elapsed.toNanos() / 1e9)), payloadBytes,
+        Math.round(bytesOnWire), Math.round(bytesOnWire * 100 / payloadBytes),
+        producerMetric(kafkaTemplate, "compression-rate-avg"));
+    assertThat(futures).noneMatch(CompletableFuture::isCompletedExceptionally);
+    kafkaTemplate.destroy();
+    producerFactory.reset();
+  }
+
+  private static double producerMetric(KafkaTemplate<String, String> kafkaTemplate,
+      String name) {
+    return kafkaTemplate.metrics().entrySet().stream()
+        .filter(entry -> entry.getKey().group().equals("producer-metrics"))
+        .filter(entry -> entry.getKey().name().equals(name))
+        .mapToDouble(entry -> (double) entry.getValue().metricValue())
+        .sum();
+  }
+
+  private static List<String> givenProvenanceEvents() throws JsonProcessingException {
+    var provenanceService = new ProvenanceService(MAPPER, new ApplicationProperties());
+    var provenanceEvents = new ArrayList<String>();
+    for (int i = 0; i < EVENTS; i++) {
+      var digitalMediaRecord = givenDigitalMediaRecord("20.5000.1025/BEN-" + i,
+          DIGITAL_SPECIMEN_ID, "https://media.example.org/" + i);
+      provenanceEvents.add(
+          MAPPER.writeValueAsString(provenanceService.generateCreateEvent(digitalMediaRecord)));
+    }
+    return provenanceEvents;
+  }
+
+}
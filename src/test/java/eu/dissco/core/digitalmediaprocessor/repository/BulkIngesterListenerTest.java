@@ -0,0 +1,72 @@
+package eu.dissco.core.digitalmediaprocessor.repository;
+
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.DOI_PREFIX;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE_2;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+class BulkIngesterListenerTest {
+
+  private static final String INDEX = "digital-media-object";
+
+  private final BulkIngesterListener listener = new BulkIngesterListener();
+
+  @Test
+  void testAfterBulk() {
+    // Given
+    var contexts = givenContexts();
+    var item = givenItem(HANDLE);
+    var item2 = givenItem(HANDLE_2);
+    var response = BulkResponse.of(r -> r.errors(false).took(1).items(item, item2));
+
+    // When
+    listener.afterBulk(1L, givenBulkRequest(), contexts, response);
+
+    // Then
+    assertThat(contexts.get(0)).isCompletedWithValue(item);
+    assertThat(contexts.get(1)).isCompletedWithValue(item2);
+  }
+
+  @Test
+  void testAfterBulkFailure() {
+    // Given
+    var contexts = givenContexts();
+
+    // When
+    listener.afterBulk(1L, givenBulkRequest(), contexts, new IOException("Connection reset"));
+
+    // Then
+    assertThat(contexts).allSatisfy(context -> assertThat(context).isDone());
+    var item = contexts.get(1).join();
+    assertThat(item.id()).isEqualTo(DOI_PREFIX + HANDLE_2);
+    assertThat(item.status()).isEqualTo(503);
+    assertThat(item.error().type()).isEqualTo("IOException");
+    assertThat(item.error().reason()).isEqualTo("Connection reset");
+  }
+
+  private static List<CompletableFuture<BulkResponseItem>> givenContexts() {
+    return List.of(new CompletableFuture<>(), new CompletableFuture<>());
+  }
+
+  private static BulkRequest givenBulkRequest() {
+    return BulkRequest.of(b -> b
+        .operations(op -> op.index(idx -> idx.index(INDEX).id(DOI_PREFIX + HANDLE).document("{}")))
+        .operations(
+            op -> op.index(idx -> idx.index(INDEX).id(DOI_PREFIX + HANDLE_2).document("{}"))));
+  }
+
+  private static BulkResponseItem givenItem(String handle) {
+    return BulkResponseItem.of(i -> i.operationType(OperationType.Index).index(INDEX)
+        .id(DOI_PREFIX + handle).status(201));
+  }
+
+}
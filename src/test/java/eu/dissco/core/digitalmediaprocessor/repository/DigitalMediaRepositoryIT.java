@@ -11,13 +11,22 @@ import static eu.dissco.core.digitalmediaprocessor.TestUtils.MEDIA_URL_1;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.MEDIA_URL_2;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.MEDIA_URL_3;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.UPDATED_TIMESTAMP;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.VERSION;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaKey;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaRecord;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaRecordNoOriginalData;
 import static eu.dissco.core.digitalmediaprocessor.database.jooq.Tables.DIGITAL_MEDIA_OBJECT;
+import static eu.dissco.core.digitalmediaprocessor.database.jooq.Tables.OUTBOX_EVENT;
+import static eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaUtils.generateContentHash;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaContentHash;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaKey;
+import eu.dissco.core.digitalmediaprocessor.domain.OutboxEvent;
 import java.util.List;
+import java.util.Map;
 import org.jooq.Record1;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -41,12 +50,99 @@ class DigitalMediaRepositoryIT extends BaseRepositoryIT {
     var result = repository.createDigitalMediaRecord(List.of(digitalMedia));
 
     // Then
-    var actual = repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1));
+    var actual = repository.getDigitalMediaByKeys(
+        List.of(new DigitalMediaKey(DIGITAL_SPECIMEN_ID, MEDIA_URL_1)));
     assertThat(result).hasSize(1);
     assertThat(actual).contains(digitalMedia);
   }
 
+  @Test
+  void testCreateDigitalMediaRecordWithOutboxEvents() throws JsonProcessingException {
+    // Given
+    var digitalMedia = givenDigitalMediaRecord();
+    var event = new OutboxEvent(HANDLE, "createUpdateDeleteTopic", "{}");
+    context.insertInto(OUTBOX_EVENT)
+        .set(OUTBOX_EVENT.MEDIA_ID, HANDLE)
+        .set(OUTBOX_EVENT.TOPIC, "createUpdateDeleteTopic")
+        .set(OUTBOX_EVENT.PAYLOAD, "{\"stale\":true}")
+        .set(OUTBOX_EVENT.CREATED, UPDATED_TIMESTAMP)
+        .execute();
+
+    // When
+    repository.createDigitalMediaRecord(List.of(digitalMedia), List.of(event));
+
+    // Then
+    var actual = repository.getDigitalMediaByKeys(
+        List.of(new DigitalMediaKey(DIGITAL_SPECIMEN_ID, MEDIA_URL_1)));
+    var events = context.select(OUTBOX_EVENT.PAYLOAD, OUTBOX_EVENT.RELEASED)
+        .from(OUTBOX_EVENT).fetch();
+    context.truncate(OUTBOX_EVENT).execute();
+    assertThat(actual).contains(digitalMedia);
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0).value1()).isEqualTo("{}");
+    assertThat(events.get(0).value2()).isFalse();
+  }
+
+
+  @Test
+  void testGetDigitalMediaByKeys() throws JsonProcessingException {
+    // Given
+    var digitalMedia = givenDigitalMediaRecord(HANDLE, DIGITAL_SPECIMEN_ID, MEDIA_URL_1);
+    var digitalMedia2 = givenDigitalMediaRecord(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
+    repository.createDigitalMediaRecord(List.of(digitalMedia, digitalMedia2,
+        givenDigitalMediaRecord(HANDLE_3, DIGITAL_SPECIMEN_ID, MEDIA_URL_2)));
+    var keys = List.of(
+        new DigitalMediaKey(DIGITAL_SPECIMEN_ID, MEDIA_URL_1),
+        new DigitalMediaKey(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2),
+        new DigitalMediaKey(DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3));
+
+    // When
+    var result = repository.getDigitalMediaByKeys(keys);
+
+    // Then
+    assertThat(result).hasSize(2).containsExactlyInAnyOrder(digitalMedia, digitalMedia2);
+  }
+
+  @Test
+  void testGetDigitalMediaByIds() throws JsonProcessingException {
+    // Given
+    var digitalMedia = givenDigitalMediaRecord(HANDLE, DIGITAL_SPECIMEN_ID, MEDIA_URL_1);
+    repository.createDigitalMediaRecord(List.of(digitalMedia,
+        givenDigitalMediaRecord(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2)));
+
+    // When
+    var result = repository.getDigitalMediaByIds(List.of(HANDLE));
+
+    // Then
+    assertThat(result).containsExactly(digitalMedia);
+  }
+
+  @Test
+  void testGetDigitalMediaContentHashes() throws JsonProcessingException {
+    // Given
+    var digitalMedia = givenDigitalMediaRecord();
+    repository.createDigitalMediaRecord(List.of(digitalMedia,
+        givenDigitalMediaRecord(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2)));
+    var expected = new DigitalMediaContentHash(HANDLE, VERSION,
+        new DigitalMediaKey(DIGITAL_SPECIMEN_ID, MEDIA_URL_1),
+        generateContentHash(MAPPER, digitalMedia.digitalMediaWrapper()));
+
+    // When
+    var result = repository.getDigitalMediaContentHashes(
+        List.of(new DigitalMediaKey(DIGITAL_SPECIMEN_ID, MEDIA_URL_1)));
+
+    // Then
+    assertThat(result).containsExactly(expected);
+  }
+
+  @Test
+  void testGetDigitalMediaByKeysEmpty() {
+    // When
+    var result = repository.getDigitalMediaByKeys(List.of());
+
+    // Then
+    assertThat(result).isEmpty();
+  }
 
   @Test
   void testUpdateDigitalMediaRecord() throws JsonProcessingException {
@@ -59,8 +155,8 @@ class DigitalMediaRepositoryIT extends BaseRepositoryIT {
     repository.createDigitalMediaRecord(List.of(updatedMedia));
 
     // Then
-    var actual = repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1));
+    var actual = repository.getDigitalMediaByKeys(
+        List.of(new DigitalMediaKey(DIGITAL_SPECIMEN_ID, MEDIA_URL_1)));
     assertThat(actual).contains(updatedMedia);
   }
 
@@ -102,6 +198,27 @@ class DigitalMediaRepositoryIT extends BaseRepositoryIT {
     assertThat(result).isAfter(UPDATED_TIMESTAMP);
   }
 
+  @Test
+  void testUpdateContentHashes() throws JsonProcessingException {
+    // Given
+    repository.createDigitalMediaRecord(List.of(givenDigitalMediaRecord(),
+        givenDigitalMediaRecord(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2)));
+    context.update(DIGITAL_MEDIA_OBJECT)
+        .setNull(DIGITAL_MEDIA_OBJECT.CONTENT_HASH)
+        .execute();
+    var expected = generateContentHash(MAPPER, givenDigitalMediaRecord().digitalMediaWrapper());
+
+    // When
+    repository.updateContentHashes(Map.of(HANDLE, expected));
+
+    // Then
+    var result = repository.getDigitalMediaContentHashes(List.of(givenDigitalMediaKey(),
+        new DigitalMediaKey(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2)));
+    assertThat(result)
+        .extracting(DigitalMediaContentHash::id, DigitalMediaContentHash::contentHash)
+        .containsExactlyInAnyOrder(tuple(HANDLE, expected), tuple(HANDLE_2, null));
+  }
+
   @Test
   void testRollbackSpecimen() throws JsonProcessingException {
     // Given
@@ -114,8 +231,8 @@ class DigitalMediaRepositoryIT extends BaseRepositoryIT {
     repository.rollBackDigitalMedia(HANDLE_2);
 
     // Then
-    var result = repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID_2),
-        List.of(MEDIA_URL_2));
+    var result = repository.getDigitalMediaByKeys(
+        List.of(new DigitalMediaKey(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2)));
     assertThat(result).isEmpty();
   }
 
@@ -5,8 +5,10 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import java.time.Instant;
 import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 
 class DigitalSpecimenRepositoryIT extends BaseRepositoryIT {
 
@@ -14,7 +16,12 @@ class DigitalSpecimenRepositoryIT extends BaseRepositoryIT {
 
   @BeforeEach
   void setup() {
-    repository = new DigitalSpecimenRepository(context);
+    repository = new DigitalSpecimenRepository(context, new ConcurrentMapCacheManager());
+  }
+
+  @AfterEach
+  void destroy() {
+    context.truncate(DIGITAL_SPECIMEN).execute();
   }
 
   @Test
@@ -33,6 +40,21 @@ class DigitalSpecimenRepositoryIT extends BaseRepositoryIT {
             "20.5000.1025/460-A7R-QM3"));
   }
 
+  @Test
+  void testGetSpecimenIdFromCache() {
+    // Given
+    givenSpecimenInserted();
+    repository.getExistingSpecimen(Set.of("20.5000.1025/460-A7R-QM0"));
+    context.truncate(DIGITAL_SPECIMEN).execute();
+
+    // When
+    var result = repository.getExistingSpecimen(
+        Set.of("20.5000.1025/460-A7R-QM0", "20.5000.1025/460-A7R-QM1"));
+
+    // Then
+    assertThat(result).isEqualTo(Set.of("20.5000.1025/460-A7R-QM0"));
+  }
+
   private void givenSpecimenInserted() {
     for (int i = 0; i < 10; i++) {
 
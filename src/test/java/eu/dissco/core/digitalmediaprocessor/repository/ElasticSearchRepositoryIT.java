@@ -18,15 +18,22 @@ import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaRe
 import static org.assertj.core.api.Assertions.assertThat;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
 import co.elastic.clients.elasticsearch._types.Result;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.ElasticsearchTransport;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
+import eu.dissco.core.digitalmediaprocessor.properties.BulkIngesterProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.BulkRetryProperties;
 import eu.dissco.core.digitalmediaprocessor.properties.ElasticSearchProperties;
 import eu.dissco.core.digitalmediaprocessor.schema.DigitalMedia;
+import eu.dissco.core.digitalmediaprocessor.utils.ConcurrencyLimiter;
 import java.io.IOException;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -91,7 +98,9 @@ class ElasticSearchRepositoryIT {
 
   @BeforeEach
   void initRepository() {
-    repository = new ElasticSearchRepository(client, esProperties);
+    repository = new ElasticSearchRepository(client, MAPPER, esProperties,
+        new BulkRetryProperties(), new BulkIngesterProperties(), Optional.empty(),
+        new ConcurrencyLimiter(1));
   }
 
   @AfterEach
@@ -118,6 +127,34 @@ class ElasticSearchRepositoryIT {
     assertThat(result.items().get(0).result()).isEqualTo("created");
   }
 
+  @Test
+  void testIndexDigitalMediaBulkIngester() throws IOException {
+    // Given
+    esProperties.setIndexName(INDEX);
+    var ingester = BulkIngester.<CompletableFuture<BulkResponseItem>>of(builder -> builder
+        .client(client)
+        .maxOperations(2)
+        .listener(new BulkIngesterListener()));
+    repository = new ElasticSearchRepository(client, MAPPER, esProperties,
+        new BulkRetryProperties(), new BulkIngesterProperties(), Optional.of(ingester),
+        new ConcurrencyLimiter(1));
+
+    // When
+    var result = repository.indexDigitalMedia(List.of(
+        givenDigitalMediaRecord(),
+        givenDigitalMediaRecord(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2),
+        givenDigitalMediaRecord(HANDLE_3, DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3)));
+
+    // Then
+    ingester.close();
+    var document = client.get(g -> g.index(INDEX).id(DOI_PREFIX + HANDLE),
+        DigitalMedia.class);
+    assertThat(result.errors()).isFalse();
+    assertThat(result.items()).extracting(BulkResponseItem::id)
+        .containsExactly(DOI_PREFIX + HANDLE, DOI_PREFIX + HANDLE_2, DOI_PREFIX + HANDLE_3);
+    assertThat(document.source()).isEqualTo(givenDigitalmedia());
+  }
+
   private DigitalMedia givenDigitalmedia() {
     return generateAttributes(FORMAT, MEDIA_URL_1)
         .withId(DOI_PREFIX + HANDLE)
@@ -0,0 +1,254 @@
+package eu.dissco.core.digitalmediaprocessor.repository;
+
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.DIGITAL_SPECIMEN_ID_2;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.DOI_PREFIX;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE_2;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAPPER;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MEDIA_URL_2;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaRecord;
+import eu.dissco.core.digitalmediaprocessor.properties.BulkIngesterProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.BulkRetryProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.ElasticSearchProperties;
+import eu.dissco.core.digitalmediaprocessor.utils.ConcurrencyLimiter;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ElasticSearchRepositoryTest {
+
+  private static final String INDEX = "digital-media-object";
+
+  @Mock
+  private ElasticsearchClient client;
+
+  private final BulkRetryProperties retryProperties = new BulkRetryProperties();
+  private final BulkIngesterProperties ingesterProperties = new BulkIngesterProperties();
+
+  @Mock
+  private BulkIngester<CompletableFuture<BulkResponseItem>> bulkIngester;
+
+  private final ElasticSearchProperties properties = new ElasticSearchProperties();
+
+  private ElasticSearchRepository repository;
+
+  @BeforeEach
+  void setup() {
+    properties.setIndexName(INDEX);
+    retryProperties.setInitialBackoff(Duration.ofMillis(1));
+    repository = new ElasticSearchRepository(client, MAPPER, properties, retryProperties,
+        ingesterProperties, Optional.empty(), new ConcurrencyLimiter(1));
+  }
+
+  @Test
+  void testIndexDigitalMediaRetrySucceeds() throws IOException {
+    // Given
+    given(client.bulk(any(BulkRequest.class)))
+        .willReturn(givenBulkResponse(givenItem(HANDLE, 201, null),
+            givenItem(HANDLE_2, 429, "es_rejected_execution_exception")))
+        .willReturn(givenBulkResponse(givenItem(HANDLE_2, 201, null)));
+
+    // When
+    var result = repository.indexDigitalMedia(givenRecords());
+
+    // Then
+    then(client).should(times(2)).bulk(any(BulkRequest.class));
+    then(client).should().bulk(argThat((BulkRequest request) ->
+        request.operations().size() == 1
+            && request.operations().get(0).index().id().equals(DOI_PREFIX + HANDLE_2)));
+    assertThat(result.errors()).isFalse();
+    assertThat(result.items()).extracting(BulkResponseItem::id)
+        .containsExactly(DOI_PREFIX + HANDLE, DOI_PREFIX + HANDLE_2);
+  }
+
+  @Test
+  void testIndexDigitalMediaNonRetryable() throws IOException {
+    // Given
+    given(client.bulk(any(BulkRequest.class))).willReturn(
+        givenBulkResponse(givenItem(HANDLE, 201, null),
+            givenItem(HANDLE_2, 400, "mapper_parsing_exception")));
+
+    // When
+    var result = repository.indexDigitalMedia(givenRecords());
+
+    // Then
+    then(client).should(times(1)).bulk(any(BulkRequest.class));
+    assertThat(result.errors()).isTrue();
+    assertThat(result.items().get(1).error().type()).isEqualTo("mapper_parsing_exception");
+  }
+
+  @Test
+  void testIndexDigitalMediaRetriesExhausted() throws IOException {
+    // Given
+    retryProperties.setMaxRetries(2);
+    given(client.bulk(any(BulkRequest.class)))
+        .willReturn(givenBulkResponse(givenItem(HANDLE, 201, null),
+            givenItem(HANDLE_2, 503, "unavailable_shards_exception")))
+        .willReturn(givenBulkResponse(givenItem(HANDLE_2, 429, "circuit_breaking_exception")));
+
+    // When
+    var result = repository.indexDigitalMedia(givenRecords());
+
+    // Then
+    then(client).should(times(3)).bulk(any(BulkRequest.class));
+    assertThat(result.errors()).isTrue();
+    assertThat(result.items().get(0).error()).isNull();
+    assertThat(result.items().get(1).error().type()).isEqualTo("circuit_breaking_exception");
+  }
+
+  @Test
+  void testIndexDigitalMediaRetryIOException() throws IOException {
+    // Given
+    given(client.bulk(any(BulkRequest.class)))
+        .willReturn(givenBulkResponse(givenItem(HANDLE, 201, null),
+            givenItem(HANDLE_2, 429, "es_rejected_execution_exception")))
+        .willThrow(IOException.class);
+
+    // When
+    var result = repository.indexDigitalMedia(givenRecords());
+
+    // Then
+    then(client).should(times(2)).bulk(any(BulkRequest.class));
+    assertThat(result.errors()).isTrue();
+    assertThat(result.items().get(1).status()).isEqualTo(429);
+  }
+
+  @Test
+  void testIngestDigitalMediaTimeoutRetried() throws IOException {
+    // Given
+    ingesterProperties.setResponseTimeout(Duration.ofMillis(10));
+    repository = new ElasticSearchRepository(client, MAPPER, properties, retryProperties,
+        ingesterProperties, Optional.of(bulkIngester), new ConcurrencyLimiter(1));
+    var operationCount = new AtomicInteger();
+    willAnswer(invocation -> {
+      BulkOperation operation = invocation.getArgument(0);
+      CompletableFuture<BulkResponseItem> future = invocation.getArgument(1);
+      if (operationCount.incrementAndGet() != 2) {
+        future.complete(givenItem(operation.index().id().substring(DOI_PREFIX.length()), 201,
+            null));
+      }
+      return null;
+    }).given(bulkIngester).add(any(BulkOperation.class), any());
+
+    // When
+    var result = repository.indexDigitalMedia(givenRecords());
+
+    // Then
+    then(bulkIngester).should(times(3)).add(any(BulkOperation.class), any());
+    then(bulkIngester).should(times(2)).flush();
+    assertThat(result.errors()).isFalse();
+    assertThat(result.items()).extracting(BulkResponseItem::id)
+        .containsExactly(DOI_PREFIX + HANDLE, DOI_PREFIX + HANDLE_2);
+  }
+
+  @Test
+  void testRollbackRepeatedAfterLateWrite() throws Exception {
+    // Given
+    var pendingWrite = givenTimedOutWrite();
+    var digitalMediaRecord = givenDigitalMediaRecord(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
+
+    // When
+    repository.rollbackDigitalMedia(digitalMediaRecord);
+    pendingWrite.complete(givenItem(HANDLE_2, 201, null));
+
+    // Then
+    then(client).should(timeout(5000).times(2)).delete(any(Function.class));
+  }
+
+  @Test
+  void testRollbackWaitsForPendingWrite() throws Exception {
+    // Given
+    var pendingWrite = givenTimedOutWrite();
+    ingesterProperties.setResponseTimeout(Duration.ofSeconds(5));
+    var digitalMediaRecord = givenDigitalMediaRecord(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
+    willAnswer(invocation -> {
+      assertThat(pendingWrite).isDone();
+      return null;
+    }).given(client).delete(any(Function.class));
+
+    // When
+    CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS)
+        .execute(() -> pendingWrite.complete(givenItem(HANDLE_2, 201, null)));
+    repository.rollbackDigitalMedia(digitalMediaRecord);
+
+    // Then
+    then(client).should().delete(any(Function.class));
+  }
+
+  /*
+  Indexes two digital media through the bulk ingester, of which the second gets no response
+  within the response timeout. Returns the future of this write, which is still pending.
+  */
+  private CompletableFuture<BulkResponseItem> givenTimedOutWrite() throws IOException {
+    retryProperties.setMaxRetries(0);
+    ingesterProperties.setResponseTimeout(Duration.ofMillis(10));
+    repository = new ElasticSearchRepository(client, MAPPER, properties, retryProperties,
+        ingesterProperties, Optional.of(bulkIngester), new ConcurrencyLimiter(1));
+    var pendingWrite = new AtomicReference<CompletableFuture<BulkResponseItem>>();
+    willAnswer(invocation -> {
+      BulkOperation operation = invocation.getArgument(0);
+      CompletableFuture<BulkResponseItem> future = invocation.getArgument(1);
+      var handle = operation.index().id().substring(DOI_PREFIX.length());
+      if (handle.equals(HANDLE)) {
+        future.complete(givenItem(handle, 201, null));
+      } else {
+        pendingWrite.set(future);
+      }
+      return null;
+    }).given(bulkIngester).add(any(BulkOperation.class), any());
+    var result = repository.indexDigitalMedia(givenRecords());
+    assertThat(result.items().get(1).status()).isEqualTo(504);
+    return pendingWrite.get();
+  }
+
+  private static List<DigitalMediaRecord> givenRecords() throws JsonProcessingException {
+    return List.of(givenDigitalMediaRecord(),
+        givenDigitalMediaRecord(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2));
+  }
+
+  private static BulkResponse givenBulkResponse(BulkResponseItem... items) {
+    var errors = List.of(items).stream().anyMatch(item -> item.error() != null);
+    return BulkResponse.of(r -> r.errors(errors).took(1).items(List.of(items)));
+  }
+
+  private static BulkResponseItem givenItem(String handle, int status, String errorType) {
+    return BulkResponseItem.of(i -> {
+      i.operationType(OperationType.Index).index(INDEX).id(DOI_PREFIX + handle).status(status);
+      if (errorType != null) {
+        i.error(e -> e.type(errorType).reason("Failed"));
+      }
+      return i;
+    });
+  }
+
+}
@@ -0,0 +1,120 @@
+package eu.dissco.core.digitalmediaprocessor.repository;
+
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.CREATED;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE_2;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAS;
+import static eu.dissco.core.digitalmediaprocessor.database.jooq.Tables.OUTBOX_EVENT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import eu.dissco.core.digitalmediaprocessor.domain.OutboxEvent;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class OutboxRepositoryIT extends BaseRepositoryIT {
+
+  private static final String TOPIC = "createUpdateDeleteTopic";
+
+  private OutboxRepository repository;
+
+  @BeforeEach
+  void setup() {
+    repository = new OutboxRepository(context);
+  }
+
+  @AfterEach
+  void destroy() {
+    context.truncate(OUTBOX_EVENT).execute();
+  }
+
+  @Test
+  void testReleaseEvents() {
+    // Given
+    insertEvent(HANDLE, TOPIC, false);
+    insertEvent(HANDLE, MAS, false);
+    insertEvent(HANDLE_2, TOPIC, false);
+
+    // When
+    repository.releaseEvents(List.of(HANDLE));
+
+    // Then
+    var result = repository.getReleasedEvents(10);
+    assertThat(result.values()).containsExactly(
+        new OutboxEvent(HANDLE, TOPIC, "{}"),
+        new OutboxEvent(HANDLE, MAS, "{}"));
+  }
+
+  @Test
+  void testGetPendingMediaIds() {
+    // Given
+    insertEvent(HANDLE, TOPIC, false);
+    insertEvent(HANDLE, MAS, false);
+    insertEvent(HANDLE_2, TOPIC, true);
+
+    // When
+    var result = repository.getPendingMediaIds(List.of(HANDLE, HANDLE_2));
+
+    // Then
+    assertThat(result).containsExactly(HANDLE);
+  }
+
+  @Test
+  void testDeletePendingEvents() {
+    // Given
+    insertEvent(HANDLE, TOPIC, true);
+    insertEvent(HANDLE, MAS, false);
+    insertEvent(HANDLE_2, TOPIC, false);
+
+    // When
+    repository.deletePendingEvents(List.of(HANDLE));
+
+    // Then
+    var result = context.select(OUTBOX_EVENT.MEDIA_ID, OUTBOX_EVENT.RELEASED)
+        .from(OUTBOX_EVENT)
+        .fetch();
+    assertThat(result).hasSize(2);
+    assertThat(result.getValues(OUTBOX_EVENT.MEDIA_ID)).containsExactlyInAnyOrder(HANDLE,
+        HANDLE_2);
+  }
+
+  @Test
+  void testGetReleasedEventsLimit() {
+    // Given
+    insertEvent(HANDLE, TOPIC, true);
+    insertEvent(HANDLE_2, TOPIC, true);
+    insertEvent(HANDLE_2, MAS, false);
+
+    // When
+    var result = repository.getReleasedEvents(1);
+
+    // Then
+    assertThat(result.values()).containsExactly(new OutboxEvent(HANDLE, TOPIC, "{}"));
+  }
+
+  @Test
+  void testDeleteEvents() {
+    // Given
+    insertEvent(HANDLE, TOPIC, true);
+    insertEvent(HANDLE_2, TOPIC, true);
+    var events = repository.getReleasedEvents(10);
+
+    // When
+    repository.deleteEvents(events.keySet());
+
+    // Then
+    assertThat(repository.getReleasedEvents(10)).isEmpty();
+  }
+
+  private void insertEvent(String mediaId, String topic, boolean released) {
+    context.insertInto(OUTBOX_EVENT)
+        .set(OUTBOX_EVENT.MEDIA_ID, mediaId)
+        .set(OUTBOX_EVENT.TOPIC, topic)
+        .set(OUTBOX_EVENT.PAYLOAD, "{}")
+        .set(OUTBOX_EVENT.CREATED, CREATED)
+        .set(OUTBOX_EVENT.RELEASED, released)
+        .execute();
+  }
+
+}
@@ -15,6 +15,7 @@ import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenNewAcceptedAnn
 import static eu.dissco.core.digitalmediaprocessor.domain.AgentRoleType.SOURCE_SYSTEM;
 import static eu.dissco.core.digitalmediaprocessor.schema.Agent.Type.SCHEMA_SOFTWARE_APPLICATION;
 import static eu.dissco.core.digitalmediaprocessor.schema.Identifier.DctermsType.HANDLE;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
@@ -23,6 +24,7 @@ import static org.mockito.Mockito.mockStatic;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import eu.dissco.core.digitalmediaprocessor.TestUtils;
+import eu.dissco.core.digitalmediaprocessor.domain.OutboxEvent;
 import eu.dissco.core.digitalmediaprocessor.domain.UpdatedDigitalMediaRecord;
 import eu.dissco.core.digitalmediaprocessor.properties.ApplicationProperties;
 import eu.dissco.core.digitalmediaprocessor.schema.AnnotationBody;
@@ -53,7 +55,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 class AnnotationPublisherServiceTest {
 
   @Mock
-  private KafkaPublisherService kafkaPublisherService;
+  private OutboxEventService outboxEventService;
   @Mock
   private ApplicationProperties applicationProperties;
 
@@ -185,7 +187,7 @@ class AnnotationPublisherServiceTest {
 
   @BeforeEach
   void setup() {
-    service = new AnnotationPublisherService(kafkaPublisherService, applicationProperties, MAPPER);
+    service = new AnnotationPublisherService(outboxEventService, applicationProperties, MAPPER);
     Clock clock = Clock.fixed(CREATED, ZoneOffset.UTC);
     Instant instant = Instant.now(clock);
     mockedInstant = mockStatic(Instant.class);
@@ -203,37 +205,41 @@ class AnnotationPublisherServiceTest {
   }
 
   @Test
-  void testPublishAnnotationNewMedia() throws JsonProcessingException {
+  void testCreateAnnotationEventsNewMedia() throws JsonProcessingException {
     // Given
+    var expected = new OutboxEvent(TestUtils.HANDLE, "auto-accepted-annotation", "{}");
     given(applicationProperties.getPid()).willReturn(APP_HANDLE);
     given(applicationProperties.getName()).willReturn(APP_NAME);
+    given(outboxEventService.acceptedAnnotationEvent(TestUtils.HANDLE,
+        givenAutoAcceptedAnnotation(givenNewAcceptedAnnotation()))).willReturn(expected);
 
     // When
-    service.publishAnnotationNewMedia(Set.of(givenDigitalMediaRecord()));
+    var result = service.createAnnotationEventsNewMedia(Set.of(givenDigitalMediaRecord()));
 
     // Then
-    then(kafkaPublisherService).should()
-        .publishAcceptedAnnotation(givenAutoAcceptedAnnotation(givenNewAcceptedAnnotation()));
+    assertThat(result).isEqualTo(List.of(expected));
   }
 
   @ParameterizedTest
   @MethodSource("provideUpdateAnnotations")
-  void testPublishAnnotationUpdatedMedia(JsonNode jsonPatch,
+  void testCreateAnnotationEventsUpdatedMedia(JsonNode jsonPatch,
       List<AnnotationProcessingRequest> expectedAnnotations) throws JsonProcessingException {
     // Given
     given(applicationProperties.getPid()).willReturn(APP_HANDLE);
     given(applicationProperties.getName()).willReturn(APP_NAME);
 
     // When
-    service.publishAnnotationUpdatedMedia(
+    var result = service.createAnnotationEventsUpdatedMedia(
         Set.of(new UpdatedDigitalMediaRecord(givenDigitalMediaRecord(),
             List.of(), null, jsonPatch)));
 
     // Then
     for (var expectedAnnotation : expectedAnnotations) {
-      then(kafkaPublisherService).should()
-          .publishAcceptedAnnotation(givenAutoAcceptedAnnotation(expectedAnnotation));
+      then(outboxEventService).should()
+          .acceptedAnnotationEvent(TestUtils.HANDLE,
+              givenAutoAcceptedAnnotation(expectedAnnotation));
     }
+    assertThat(result).hasSize(expectedAnnotations.size());
   }
 
   @Test
@@ -249,11 +255,12 @@ class AnnotationPublisherServiceTest {
             """);
 
     // When
-    service.publishAnnotationUpdatedMedia(
+    var result = service.createAnnotationEventsUpdatedMedia(
         Set.of(new UpdatedDigitalMediaRecord(givenDigitalMediaRecord(),
             List.of(), null, jsonPatch)));
 
     // Then
-    then(kafkaPublisherService).shouldHaveNoInteractions();
+    then(outboxEventService).shouldHaveNoInteractions();
+    assertThat(result).isEmpty();
   }
 }
\ No newline at end of file
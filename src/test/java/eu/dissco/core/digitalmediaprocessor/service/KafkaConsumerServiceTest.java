@@ -2,16 +2,31 @@ package eu.dissco.core.digitalmediaprocessor.service;
 
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAPPER;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenMediaEvent;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaEvent;
 import eu.dissco.core.digitalmediaprocessor.exceptions.DigitalSpecimenNotFoundException;
+import eu.dissco.core.digitalmediaprocessor.properties.KafkaConsumerProperties;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.Executors;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.jooq.exception.DataAccessException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.support.Acknowledgment;
 
 
 @ExtendWith(MockitoExtension.class)
@@ -21,38 +36,220 @@ class KafkaConsumerServiceTest {
   private ProcessingService processingService;
   @Mock
   private KafkaPublisherService publisherService;
+  @Mock
+  private Acknowledgment acknowledgment;
+
+  private final KafkaConsumerProperties properties = new KafkaConsumerProperties();
 
   private KafkaConsumerService service;
 
   @BeforeEach
   void setup() {
-    service = new KafkaConsumerService(MAPPER, processingService, publisherService);
+    service = new KafkaConsumerService(MAPPER.readerFor(DigitalMediaEvent.class), processingService,
+        publisherService, properties, Runnable::run);
   }
 
   @Test
   void testGetMessages() throws JsonProcessingException, DigitalSpecimenNotFoundException {
     // Given
-    var message = givenMessage();
+    var message = givenMessage().getBytes(StandardCharsets.UTF_8);
 
     // When
-    service.getMessages(List.of(message));
+    service.getMessages(List.of(givenRecord(0, null, message)), acknowledgment);
 
     // Then
     then(processingService).should().handleMessage(List.of(givenMediaEvent()));
     then(publisherService).shouldHaveNoInteractions();
+    then(acknowledgment).should().acknowledge();
   }
 
   @Test
   void testGetInvalidMessages() {
     // Given
-    var message = givenInvalidMessage();
+    var message = givenInvalidMessage().getBytes(StandardCharsets.UTF_8);
 
     // When
-    service.getMessages(List.of(message));
+    service.getMessages(List.of(givenRecord(0, null, message)), acknowledgment);
 
     // Then
     then(processingService).shouldHaveNoInteractions();
-    then(publisherService).should().deadLetterRaw(message);
+    then(publisherService).should().deadLetterRaw(null, message);
+    then(acknowledgment).should().acknowledge();
+  }
+
+  @Test
+  void testGetMessagesProcessingFailed()
+      throws JsonProcessingException, DigitalSpecimenNotFoundException {
+    // Given
+    var message = MAPPER.writeValueAsBytes(givenMediaEvent());
+    given(processingService.handleMessage(anyList())).willThrow(
+        new DataAccessException("Database unavailable"));
+
+    // When
+    service.getMessages(List.of(givenRecord(0, null, message)), acknowledgment);
+
+    // Then
+    then(acknowledgment).should().nack(0, properties.getRedeliveryPause());
+    then(acknowledgment).shouldHaveNoMoreInteractions();
+  }
+
+  @Test
+  void testGetMessagesDeadLetteredAfterMaxAttempts() throws Exception {
+    // Given
+    properties.setMaxDeliveryAttempts(2);
+    var event = givenMediaEvent();
+    var poisonEvent = new DigitalMediaEvent(List.of(), event.digitalMediaWrapper());
+    var poisonMessage = MAPPER.writeValueAsBytes(poisonEvent);
+    var consumerRecords = List.of(givenRecord(0, "key-1", MAPPER.writeValueAsBytes(event)),
+        givenRecord(1, "key-2", poisonMessage));
+    given(processingService.handleMessage(List.of(event, poisonEvent))).willThrow(
+        new IllegalStateException("Poison record"));
+    given(processingService.handleMessage(List.of(poisonEvent))).willThrow(
+        new IllegalStateException("Poison record"));
+    service.getMessages(consumerRecords, acknowledgment);
+
+    // When
+    service.getMessages(consumerRecords, acknowledgment);
+
+    // Then
+    then(acknowledgment).should().nack(0, properties.getRedeliveryPause());
+    then(processingService).should().handleMessage(List.of(event));
+    then(publisherService).should().deadLetterRaw("key-2", poisonMessage);
+    then(acknowledgment).should().acknowledge();
+  }
+
+  @Test
+  void testInvalidMessageDeadLetteredOnceProcessed() throws Exception {
+    // Given
+    var event = givenMediaEvent();
+    var invalidMessage = givenInvalidMessage().getBytes(StandardCharsets.UTF_8);
+    var consumerRecords = List.of(givenRecord(0, "key-1", MAPPER.writeValueAsBytes(event)),
+        givenRecord(1, "key-2", invalidMessage));
+    given(processingService.handleMessage(List.of(event)))
+        .willThrow(new DataAccessException("Database unavailable"))
+        .willReturn(List.of());
+    service.getMessages(consumerRecords, acknowledgment);
+    then(publisherService).shouldHaveNoInteractions();
+
+    // When
+    service.getMessages(consumerRecords, acknowledgment);
+
+    // Then
+    then(publisherService).should().deadLetterRaw("key-2", invalidMessage);
+    then(acknowledgment).should().nack(0, properties.getRedeliveryPause());
+    then(acknowledgment).should().acknowledge();
+  }
+
+  @Test
+  void testRevokedPartitionAttemptsForgotten() throws Exception {
+    // Given
+    properties.setMaxDeliveryAttempts(2);
+    var event = givenMediaEvent();
+    var consumerRecords = List.of(givenRecord(0, "key-1", MAPPER.writeValueAsBytes(event)));
+    given(processingService.handleMessage(List.of(event))).willThrow(
+        new DataAccessException("Database unavailable"));
+    service.getMessages(consumerRecords, acknowledgment);
+
+    // When
+    service.onPartitionsRevoked(List.of(new TopicPartition("digital-media", 0)));
+    service.getMessages(consumerRecords, acknowledgment);
+
+    // Then
+    then(processingService).should(times(2)).handleMessage(List.of(event));
+    then(publisherService).shouldHaveNoInteractions();
+    then(acknowledgment).should(times(2)).nack(0, properties.getRedeliveryPause());
+    then(acknowledgment).shouldHaveNoMoreInteractions();
+  }
+
+  @Test
+  void testAttemptsCountedPerStartOffset() throws Exception {
+    // Given
+    properties.setMaxDeliveryAttempts(2);
+    var event = givenMediaEvent();
+    var message = MAPPER.writeValueAsBytes(event);
+    given(processingService.handleMessage(anyList())).willThrow(
+        new DataAccessException("Database unavailable"));
+    service.getMessages(List.of(givenRecord(0, "key-1", message)), acknowledgment);
+
+    // When
+    service.getMessages(List.of(givenRecord(1, "key-2", message)), acknowledgment);
+
+    // Then
+    then(publisherService).shouldHaveNoInteractions();
+    then(acknowledgment).should(times(2)).nack(0, properties.getRedeliveryPause());
+    then(acknowledgment).shouldHaveNoMoreInteractions();
+  }
+
+  @Test
+  void testGetMessagesParsedInParallel() throws Exception {
+    // Given
+    properties.setParallelParseMinBatchSize(0);
+    var executor = Executors.newFixedThreadPool(2);
+    service = new KafkaConsumerService(MAPPER.readerFor(DigitalMediaEvent.class), processingService,
+        publisherService, properties, executor);
+    var invalidMessage = givenInvalidMessage().getBytes(StandardCharsets.UTF_8);
+    var event = givenMediaEvent();
+    var secondEvent = new DigitalMediaEvent(List.of(), event.digitalMediaWrapper());
+
+    // When
+    service.getMessages(List.of(givenRecord(0, "key-1", MAPPER.writeValueAsBytes(event)),
+        givenRecord(1, "key-2", invalidMessage),
+        givenRecord(2, "key-3", MAPPER.writeValueAsBytes(secondEvent))), acknowledgment);
+
+    // Then
+    then(processingService).should().handleMessage(List.of(event, secondEvent));
+    then(publisherService).should().deadLetterRaw("key-2", invalidMessage);
+    then(acknowledgment).should().acknowledge();
+    executor.shutdown();
+  }
+
+  @Test
+  void testGetRetryMessages() throws Exception {
+    // Given
+    var event = givenMediaEvent();
+    var dueRecord = givenRetryRecord(0, "key-1", MAPPER.writeValueAsBytes(event),
+        Instant.now().minusSeconds(1));
+    var notDueRecord = givenRetryRecord(1, "key-2", MAPPER.writeValueAsBytes(event),
+        Instant.now().plusSeconds(60));
+
+    // When
+    service.getRetryMessages(List.of(dueRecord, notDueRecord), acknowledgment);
+
+    // Then
+    then(processingService).should().handleMessage(List.of(event));
+    then(acknowledgment).should().nack(eq(1), any(Duration.class));
+    then(acknowledgment).shouldHaveNoMoreInteractions();
+  }
+
+  @Test
+  void testGetRetryMessagesAllDue() throws Exception {
+    // Given
+    var event = givenMediaEvent();
+    var dueRecord = givenRetryRecord(0, "key-1", MAPPER.writeValueAsBytes(event),
+        Instant.now().minusSeconds(1));
+    var recordWithoutHeader = new ConsumerRecord<>(KafkaPublisherService.RETRY_TOPIC, 0, 1,
+        "key-2", MAPPER.writeValueAsBytes(event));
+
+    // When
+    service.getRetryMessages(List.of(dueRecord, recordWithoutHeader), acknowledgment);
+
+    // Then
+    then(processingService).should().handleMessage(List.of(event, event));
+    then(acknowledgment).should().acknowledge();
+  }
+
+  private static ConsumerRecord<String, byte[]> givenRecord(long offset, String key,
+      byte[] value) {
+    return new ConsumerRecord<>("digital-media", 0, offset, key, value);
+  }
+
+  private static ConsumerRecord<String, byte[]> givenRetryRecord(long offset, String key,
+      byte[] value, Instant notBefore) {
+    var consumerRecord = new ConsumerRecord<>(KafkaPublisherService.RETRY_TOPIC, 0, offset, key,
+        value);
+    consumerRecord.headers().add(KafkaPublisherService.NOT_BEFORE_HEADER,
+        Long.toString(notBefore.toEpochMilli()).getBytes(StandardCharsets.UTF_8));
+    return consumerRecord;
   }
 
   private String givenInvalidMessage() {
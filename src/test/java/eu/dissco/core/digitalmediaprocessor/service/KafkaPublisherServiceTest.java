@@ -1,109 +1,228 @@
 package eu.dissco.core.digitalmediaprocessor.service;
 
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.DIGITAL_SPECIMEN_ID;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAPPER;
-import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAS;
-import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaRecord;
-import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenJsonPatch;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MEDIA_URL_1;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenMediaEvent;
-import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.ArgumentMatchers.eq;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import eu.dissco.core.digitalmediaprocessor.TestUtils;
+import eu.dissco.core.digitalmediaprocessor.properties.KafkaPublisherProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.core.KafkaTemplate;
 
 @ExtendWith(MockitoExtension.class)
 class KafkaPublisherServiceTest {
 
+  private static final String KEY = "message-key";
+
   @Mock
   private KafkaTemplate<String, String> kafkaTemplate;
-
   @Mock
-  private ProvenanceService provenanceService;
+  private KafkaTemplate<String, byte[]> rawKafkaTemplate;
+
+  @Captor
+  private ArgumentCaptor<ProducerRecord<String, String>> recordCaptor;
 
+  private MeterRegistry meterRegistry;
   private KafkaPublisherService service;
 
   @BeforeEach
   void setup() {
-    service = new KafkaPublisherService(MAPPER, kafkaTemplate, provenanceService);
+    meterRegistry = new SimpleMeterRegistry();
+    service = new KafkaPublisherService(MAPPER, kafkaTemplate, rawKafkaTemplate,
+        new KafkaPublisherProperties(), meterRegistry,
+        new ConcurrentMapCacheManager(KafkaPublisherService.REPUBLISHED_CACHE));
   }
 
   @Test
-  void testPublishCreateEvent() throws JsonProcessingException {
+  void testRepublishEvent() throws JsonProcessingException {
     // Given
+    var earliest = Instant.now().plus(Duration.ofSeconds(30)).toEpochMilli();
 
     // When
-    service.publishCreateEvent(givenDigitalMediaRecord());
+    service.republishDigitalMedia(givenMediaEvent());
 
     // Then
-    then(kafkaTemplate).should().send(eq("createUpdateDeleteTopic"), anyString());
+    then(kafkaTemplate).should().send(recordCaptor.capture());
+    var producerRecord = recordCaptor.getValue();
+    assertThat(producerRecord.topic()).isEqualTo("digital-media-object-retry");
+    assertThat(producerRecord.key()).isEqualTo(DIGITAL_SPECIMEN_ID + " " + MEDIA_URL_1);
+    assertThat(producerRecord.value()).isEqualTo(MAPPER.writeValueAsString(givenMediaEvent()));
+    var notBefore = Long.parseLong(new String(
+        producerRecord.headers().lastHeader("not-before").value(), StandardCharsets.UTF_8));
+    assertThat(notBefore).isGreaterThanOrEqualTo(earliest);
+    assertThat(meterRegistry.counter("digital.media.republished").count()).isEqualTo(1);
+    assertThat(meterRegistry.counter("digital.media.republish.loops").count()).isZero();
   }
 
   @Test
-  void testPublishAnnotationRequestEvent() throws JsonProcessingException {
+  void testRepublishEventLoop() throws JsonProcessingException {
     // Given
-    var digitalMediaRecord = givenDigitalMediaRecord();
+    service.republishDigitalMedia(givenMediaEvent());
 
     // When
-    service.publishAnnotationRequestEvent(MAS, digitalMediaRecord);
+    service.republishDigitalMedia(givenMediaEvent());
 
     // Then
-    then(kafkaTemplate).should().send(eq(MAS), anyString());
+    assertThat(meterRegistry.counter("digital.media.republished").count()).isEqualTo(2);
+    assertThat(meterRegistry.counter("digital.media.republish.loops").count()).isEqualTo(1);
   }
 
   @Test
-  void testPublishUpdateEvent() throws JsonProcessingException {
+  void testRepublishEventAfterProcessed() throws JsonProcessingException {
     // Given
+    service.republishDigitalMedia(givenMediaEvent());
+    service.forgetRepublished(List.of(givenMediaEvent()));
 
     // When
-    service.publishUpdateEvent(givenDigitalMediaRecord(), givenJsonPatch());
+    service.republishDigitalMedia(givenMediaEvent());
 
     // Then
-    then(kafkaTemplate).should().send(eq("createUpdateDeleteTopic"), anyString());
+    assertThat(meterRegistry.counter("digital.media.republished").count()).isEqualTo(2);
+    assertThat(meterRegistry.counter("digital.media.republish.loops").count()).isZero();
   }
 
   @Test
-  void testRepublishEvent() throws JsonProcessingException {
+  void testDeadLetterRaw() {
     // Given
+    var message = "Given String Event".getBytes(StandardCharsets.UTF_8);
 
     // When
-    service.republishDigitalMedia(givenMediaEvent());
+    service.deadLetterRaw(KEY, message);
 
     // Then
-    then(kafkaTemplate).should()
-        .send("digital-media-object", MAPPER.writeValueAsString(givenMediaEvent()));
+    then(rawKafkaTemplate).should()
+        .send("digital-media-object-dlq", KEY, message);
   }
 
   @Test
-  void testDeadLetterRaw() {
+  void testDeadLetterEvent() throws JsonProcessingException {
     // Given
-    var messageString = "Given String Event";
+    var event = TestUtils.givenDigitalMediaEvent();
 
     // When
-    service.deadLetterRaw(messageString);
+    service.deadLetterEvent(event);
 
     // Then
     then(kafkaTemplate).should()
-        .send("digital-media-object-dlq", messageString);
+        .send("digital-media-object-dlq", DIGITAL_SPECIMEN_ID + " " + MEDIA_URL_1,
+            MAPPER.writeValueAsString(event));
   }
 
   @Test
-  void testDeadLetterEvent() throws JsonProcessingException {
+  void testAwaitBatch() {
     // Given
-    var event = TestUtils.givenDigitalMediaEvent();
+    var message = "Given String Event".getBytes(StandardCharsets.UTF_8);
+    given(rawKafkaTemplate.send("digital-media-object-dlq", KEY, message))
+        .willReturn(CompletableFuture.completedFuture(null));
+    var publishBatch = new PublishBatch();
+    publishBatch.callInBatch(() -> {
+      service.deadLetterRaw(KEY, message);
+      return null;
+    });
 
     // When
-    service.deadLetterEvent(event);
+    var result = service.awaitBatch(publishBatch);
+
+    // Then
+    assertThat(result).isEmpty();
+  }
+
+  @Test
+  void testAwaitBatchDeadLetterSentAgain() {
+    // Given
+    var message = "Given String Event".getBytes(StandardCharsets.UTF_8);
+    given(rawKafkaTemplate.send("digital-media-object-dlq", KEY, message))
+        .willReturn(CompletableFuture.failedFuture(new KafkaException("Broker unavailable")),
+            CompletableFuture.completedFuture(null));
+    var publishBatch = new PublishBatch();
+    publishBatch.callInBatch(() -> {
+      service.deadLetterRaw(KEY, message);
+      return null;
+    });
+
+    // When
+    var result = service.awaitBatch(publishBatch);
+
+    // Then
+    then(rawKafkaTemplate).should(times(2)).send("digital-media-object-dlq", KEY, message);
+    assertThat(result).isEmpty();
+  }
+
+  @Test
+  void testAwaitBatchRepublishFailedDeadLettered() throws JsonProcessingException {
+    // Given
+    var event = givenMediaEvent();
+    var key = DIGITAL_SPECIMEN_ID + " " + MEDIA_URL_1;
+    given(kafkaTemplate.send(any(ProducerRecord.class)))
+        .willReturn(CompletableFuture.failedFuture(new KafkaException("Broker unavailable")));
+    given(kafkaTemplate.send("digital-media-object-dlq", key, MAPPER.writeValueAsString(event)))
+        .willReturn(CompletableFuture.completedFuture(null));
+    var publishBatch = new PublishBatch();
+    publishBatch.callInBatch(() -> {
+      try {
+        service.republishDigitalMedia(event);
+      } catch (JsonProcessingException e) {
+        throw new IllegalStateException(e);
+      }
+      return null;
+    });
+
+    // When
+    var result = service.awaitBatch(publishBatch);
 
     // Then
     then(kafkaTemplate).should()
-        .send("digital-media-object-dlq", MAPPER.writeValueAsString(event));
+        .send("digital-media-object-dlq", key, MAPPER.writeValueAsString(event));
+    assertThat(result).isEmpty();
+  }
+
+  @Test
+  void testAwaitBatchFailed() {
+    // Given
+    var message = "Given String Event".getBytes(StandardCharsets.UTF_8);
+    var failingMessage = "Given failing String Event".getBytes(StandardCharsets.UTF_8);
+    given(rawKafkaTemplate.send("digital-media-object-dlq", KEY, message))
+        .willReturn(CompletableFuture.completedFuture(null));
+    given(rawKafkaTemplate.send("digital-media-object-dlq", KEY, failingMessage))
+        .willReturn(CompletableFuture.failedFuture(new KafkaException("Broker unavailable")));
+    var publishBatch = new PublishBatch();
+    publishBatch.callInBatch(() -> {
+      service.deadLetterRaw(KEY, message);
+      service.deadLetterRaw(KEY, failingMessage);
+      return null;
+    });
+
+    // When
+    var result = service.awaitBatch(publishBatch);
+
+    // Then
+    then(rawKafkaTemplate).should().send("digital-media-object-dlq", KEY, message);
+    then(rawKafkaTemplate).should(times(2))
+        .send("digital-media-object-dlq", KEY, failingMessage);
+    assertThat(result).containsExactly("raw dead letter message");
   }
 
 }
@@ -0,0 +1,87 @@
+package eu.dissco.core.digitalmediaprocessor.service;
+
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAPPER;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAS;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenAutoAcceptedAnnotation;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaRecord;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenJsonPatch;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenNewAcceptedAnnotation;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.then;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import eu.dissco.core.digitalmediaprocessor.domain.OutboxEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxEventServiceTest {
+
+  @Mock
+  private ProvenanceService provenanceService;
+
+  private OutboxEventService service;
+
+  @BeforeEach
+  void setup() {
+    service = new OutboxEventService(MAPPER, provenanceService);
+  }
+
+  @Test
+  void testCreateEvent() throws JsonProcessingException {
+    // Given
+
+    // When
+    var result = service.createEvent(givenDigitalMediaRecord());
+
+    // Then
+    then(provenanceService).should().generateCreateEvent(givenDigitalMediaRecord());
+    assertThat(result.mediaId()).isEqualTo(HANDLE);
+    assertThat(result.topic()).isEqualTo("createUpdateDeleteTopic");
+  }
+
+  @Test
+  void testAnnotationRequestEvent() throws JsonProcessingException {
+    // Given
+    var digitalMediaRecord = givenDigitalMediaRecord();
+
+    // When
+    var result = service.annotationRequestEvent(MAS, digitalMediaRecord);
+
+    // Then
+    assertThat(result).isEqualTo(
+        new OutboxEvent(HANDLE, MAS, MAPPER.writeValueAsString(digitalMediaRecord)));
+  }
+
+  @Test
+  void testUpdateEvent() throws JsonProcessingException {
+    // Given
+
+    // When
+    var result = service.updateEvent(givenDigitalMediaRecord(), givenJsonPatch());
+
+    // Then
+    then(provenanceService).should()
+        .generateUpdateEvent(givenDigitalMediaRecord(), givenJsonPatch());
+    assertThat(result.mediaId()).isEqualTo(HANDLE);
+    assertThat(result.topic()).isEqualTo("createUpdateDeleteTopic");
+  }
+
+  @Test
+  void testAcceptedAnnotationEvent() throws JsonProcessingException {
+    // Given
+    var annotation = givenAutoAcceptedAnnotation(givenNewAcceptedAnnotation());
+
+    // When
+    var result = service.acceptedAnnotationEvent(HANDLE, annotation);
+
+    // Then
+    assertThat(result).isEqualTo(new OutboxEvent(HANDLE, "auto-accepted-annotation",
+        MAPPER.writeValueAsString(annotation)));
+  }
+
+}
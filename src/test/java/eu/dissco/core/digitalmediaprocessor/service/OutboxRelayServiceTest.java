@@ -0,0 +1,123 @@
+package eu.dissco.core.digitalmediaprocessor.service;
+
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE_2;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+import eu.dissco.core.digitalmediaprocessor.domain.OutboxEvent;
+import eu.dissco.core.digitalmediaprocessor.properties.OutboxProperties;
+import eu.dissco.core.digitalmediaprocessor.repository.OutboxRepository;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayServiceTest {
+
+  private static final String TOPIC = "createUpdateDeleteTopic";
+
+  @Mock
+  private OutboxRepository repository;
+  @Mock
+  private KafkaTemplate<String, String> kafkaTemplate;
+  @Mock
+  private TransactionTemplate transactionTemplate;
+
+  private final OutboxProperties properties = new OutboxProperties();
+
+  private OutboxRelayService service;
+
+  @BeforeEach
+  void setup() {
+    service = new OutboxRelayService(repository, kafkaTemplate, transactionTemplate, properties);
+    given(transactionTemplate.execute(any())).willAnswer(
+        invocation -> invocation.<TransactionCallback<Integer>>getArgument(0)
+            .doInTransaction(mock(TransactionStatus.class)));
+  }
+
+  @Test
+  void testRelayEvents() {
+    // Given
+    given(repository.getReleasedEvents(properties.getBatchSize())).willReturn(givenEvents());
+    given(kafkaTemplate.send(any(), any(), any())).willReturn(
+        CompletableFuture.completedFuture(new SendResult<>(null, null)));
+
+    // When
+    service.relayEvents();
+
+    // Then
+    then(kafkaTemplate).should().send(TOPIC, HANDLE, "{\"id\":1}");
+    then(kafkaTemplate).should().send(MAS, HANDLE_2, "{\"id\":2}");
+    then(repository).should().deleteEvents(Set.of(1L, 2L));
+  }
+
+  @Test
+  void testRelayEventsNoEvents() {
+    // Given
+    given(repository.getReleasedEvents(properties.getBatchSize())).willReturn(Map.of());
+
+    // When
+    service.relayEvents();
+
+    // Then
+    then(kafkaTemplate).shouldHaveNoInteractions();
+    then(repository).should(never()).deleteEvents(anyCollection());
+  }
+
+  @Test
+  void testRelayEventsFullBatch() {
+    // Given
+    properties.setBatchSize(2);
+    given(repository.getReleasedEvents(2)).willReturn(givenEvents()).willReturn(Map.of());
+    given(kafkaTemplate.send(any(), any(), any())).willReturn(
+        CompletableFuture.completedFuture(new SendResult<>(null, null)));
+
+    // When
+    service.relayEvents();
+
+    // Then
+    then(repository).should().deleteEvents(Set.of(1L, 2L));
+    then(transactionTemplate).should(times(2)).execute(any());
+  }
+
+  @Test
+  void testRelayEventsSendFailed() {
+    // Given
+    given(repository.getReleasedEvents(properties.getBatchSize())).willReturn(givenEvents());
+    given(kafkaTemplate.send(any(), any(), any())).willReturn(
+        CompletableFuture.completedFuture(new SendResult<>(null, null)))
+        .willReturn(CompletableFuture.failedFuture(new IllegalArgumentException()));
+
+    // When
+    service.relayEvents();
+
+    // Then
+    then(repository).should(never()).deleteEvents(anyCollection());
+  }
+
+  private static Map<Long, OutboxEvent> givenEvents() {
+    var events = new LinkedHashMap<Long, OutboxEvent>();
+    events.put(1L, new OutboxEvent(HANDLE, TOPIC, "{\"id\":1}"));
+    events.put(2L, new OutboxEvent(HANDLE_2, MAS, "{\"id\":2}"));
+    return events;
+  }
+
+}
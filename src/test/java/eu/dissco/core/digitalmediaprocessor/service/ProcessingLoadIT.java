@@ -0,0 +1,439 @@
+package eu.dissco.core.digitalmediaprocessor.service;
+
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.DIGITAL_SPECIMEN_ID;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.FORMAT;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.FORMAT_2;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAS;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.TYPE;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaWrapper;
+import static eu.dissco.core.digitalmediaprocessor.database.jooq.Tables.DIGITAL_MEDIA_OBJECT;
+import static eu.dissco.core.digitalmediaprocessor.database.jooq.Tables.OUTBOX_EVENT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testcontainers.containers.PostgreSQLContainer.IMAGE;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import eu.dissco.core.digitalmediaprocessor.configuration.ApplicationConfiguration;
+import eu.dissco.core.digitalmediaprocessor.configuration.KafkaPublisherConfiguration;
+import eu.dissco.core.digitalmediaprocessor.configuration.ProcessingConfiguration;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaEvent;
+import eu.dissco.core.digitalmediaprocessor.properties.ApplicationProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.BulkIngesterProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.BulkRetryProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.ElasticSearchProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.FdoProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.HandleProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.KafkaConsumerProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.KafkaPublisherProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.ProcessingProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.TokenProperties;
+import eu.dissco.core.digitalmediaprocessor.repository.DigitalMediaRepository;
+import eu.dissco.core.digitalmediaprocessor.repository.DigitalSpecimenRepository;
+import eu.dissco.core.digitalmediaprocessor.repository.ElasticSearchRepository;
+import eu.dissco.core.digitalmediaprocessor.repository.OutboxRepository;
+import eu.dissco.core.digitalmediaprocessor.utils.ConcurrencyLimiter;
+import eu.dissco.core.digitalmediaprocessor.utils.JsonPatchGenerator;
+import eu.dissco.core.digitalmediaprocessor.utils.KeyLock;
+import eu.dissco.core.digitalmediaprocessor.web.HandleComponent;
+import eu.dissco.core.digitalmediaprocessor.web.TokenAuthenticator;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.client.RestClient;
+import org.flywaydb.core.Flyway;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DefaultDSLContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/*
+Drives the Kafka consumer through the complete processing flow with synthetic digital media and
+reports the throughput, the latency percentiles of the processing stages and the heap usage.
+Postgres and Elasticsearch run in containers, Kafka runs as an embedded broker and the Handle API
+and token endpoint are served by stand-ins with a configurable latency, so no external service is
+needed. Only runs when the benchmark system property is set:
+mvn verify -Dbenchmark=true -Dit.test=ProcessingLoadIT
+The load is configured through system properties, see the README. When load.min-records-per-second
+is set, the run fails when the throughput drops below it.
+*/
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProcessingLoadIT {
+
+  private static final DockerImageName POSTGRES_IMAGE =
+      DockerImageName.parse("postgres:15.5").asCompatibleSubstituteFor(IMAGE);
+  private static final DockerImageName ELASTIC_IMAGE = DockerImageName.parse(
+      "docker.elastic.co/elasticsearch/elasticsearch").withTag("8.6.1");
+  private static final String ELASTICSEARCH_PASSWORD = "s3cret";
+  private static final String INDEX = "digital-media-object";
+  private static final String TOPIC = "digital-media";
+  private static final String MEDIA_URL_PREFIX = "https://media.example.org/load/";
+
+  private static final int BATCHES = Integer.getInteger("load.batches", 50);
+  private static final int BATCH_SIZE = Integer.getInteger("load.batch-size", 100);
+  private static final double NEW_RATIO = doubleProperty("load.new-ratio", 0.5);
+  private static final double CHANGED_RATIO = doubleProperty("load.changed-ratio", 0.25);
+  private static final Duration HANDLE_LATENCY =
+      Duration.ofMillis(Long.getLong("load.handle-latency-ms", 50));
+  private static final Duration TOKEN_LATENCY =
+      Duration.ofMillis(Long.getLong("load.token-latency-ms", 100));
+  private static final double MIN_RECORDS_PER_SECOND =
+      doubleProperty("load.min-records-per-second", 0);
+
+  private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(POSTGRES_IMAGE);
+  private static final ElasticsearchContainer elastic = new ElasticsearchContainer(ELASTIC_IMAGE)
+      .withPassword(ELASTICSEARCH_PASSWORD);
+  private static final ObjectMapper mapper = new ApplicationConfiguration().objectMapper();
+  private static final AtomicInteger handleCounter = new AtomicInteger();
+
+  private static EmbeddedKafkaBroker broker;
+  private static MockWebServer handleServer;
+  private static MockWebServer tokenServer;
+  private static HikariDataSource dataSource;
+  private static RestClient restClient;
+  private static ExecutorService processingExecutor;
+  private static ExecutorService parseExecutor;
+  private static DSLContext context;
+  private static SimpleMeterRegistry meterRegistry;
+  private static KafkaConsumerService consumerService;
+
+  private final Random random = new Random(42);
+  private final Map<String, String> storedFormats = new HashMap<>();
+  private int mediaCounter;
+  private long offset;
+
+  @BeforeAll
+  static void setup() throws IOException {
+    postgres.start();
+    elastic.start();
+    broker = new EmbeddedKafkaKraftBroker(1, 1, "digital-media-object-dlq",
+        KafkaPublisherService.RETRY_TOPIC);
+    broker.afterPropertiesSet();
+    handleServer = new MockWebServer();
+    handleServer.setDispatcher(new HandleDispatcher());
+    handleServer.start();
+    tokenServer = new MockWebServer();
+    tokenServer.setDispatcher(new TokenDispatcher());
+    tokenServer.start();
+    meterRegistry = new SimpleMeterRegistry();
+    meterRegistry.config().meterFilter(new MeterFilter() {
+      @Override
+      public DistributionStatisticConfig configure(Meter.Id id,
+          DistributionStatisticConfig config) {
+        return DistributionStatisticConfig.builder().percentiles(0.5, 0.95, 0.99).build()
+            .merge(config);
+      }
+    });
+    consumerService = buildConsumerService();
+  }
+
+  @AfterAll
+  static void destroy() throws IOException {
+    processingExecutor.shutdown();
+    parseExecutor.shutdown();
+    restClient.close();
+    dataSource.close();
+    handleServer.shutdown();
+    tokenServer.shutdown();
+    broker.destroy();
+    elastic.stop();
+    postgres.stop();
+  }
+
+  @Test
+  void runLoad() throws JsonProcessingException {
+    // Given
+    var acknowledged = new AtomicInteger();
+    Acknowledgment acknowledgment = acknowledged::incrementAndGet;
+    var newCount = (int) Math.round(BATCH_SIZE * NEW_RATIO);
+    var changedCount = (int) Math.round(BATCH_SIZE * CHANGED_RATIO);
+    var equalCount = BATCH_SIZE - newCount - changedCount;
+    assertThat(equalCount).as("Ratios of new and changed media exceed 1").isNotNegative();
+    consumerService.getMessages(toRecords(givenNewMessages(changedCount + equalCount)),
+        acknowledgment);
+    meterRegistry.clear();
+    var memoryBean = ManagementFactory.getMemoryMXBean();
+    var gcCountBefore = gcCount();
+    var gcTimeBefore = gcTime();
+    var peakHeap = 0L;
+
+    // When
+    var start = System.nanoTime();
+    for (int i = 0; i < BATCHES; i++) {
+      var messages = toRecords(givenMixedMessages(newCount, changedCount, equalCount));
+      var batchStart = System.nanoTime();
+      consumerService.getMessages(messages, acknowledgment);
+      Timer.builder("load.batch").register(meterRegistry)
+          .record(System.nanoTime() - batchStart, TimeUnit.NANOSECONDS);
+      peakHeap = Math.max(peakHeap, memoryBean.getHeapMemoryUsage().getUsed());
+    }
+    var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    // Then
+    var records = (long) BATCHES * BATCH_SIZE;
+    var recordsPerSecond = records / (elapsed.toNanos() / 1e9);
+    log.info("Processed {} records in {} batches of {} ({} new, {} changed, {} equal) in {}",
+        records, BATCHES, BATCH_SIZE, newCount, changedCount, equalCount, elapsed);
+    log.info("Throughput: {} records/s, handle latency {}, token latency {}",
+        Math.round(recordsPerSecond), HANDLE_LATENCY, TOKEN_LATENCY);
+    logTimer("batch", meterRegistry.get("load.batch").timer());
+    meterRegistry.find(ProcessingService.STAGE_TIMER).timers()
+        .forEach(timer -> logTimer(timer.getId().getTag("stage"), timer));
+    log.info("Heap: peak used {} MB, max {} MB, {} collections taking {} ms",
+        peakHeap / (1024 * 1024), memoryBean.getHeapMemoryUsage().getMax() / (1024 * 1024),
+        gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+    log.info("Handle API requests: {}, outbox events: {}", handleServer.getRequestCount(),
+        context.fetchCount(OUTBOX_EVENT));
+    assertThat(acknowledged).hasValue(BATCHES + 1);
+    assertThat(context.fetchCount(DIGITAL_MEDIA_OBJECT)).isEqualTo(storedFormats.size());
+    if (MIN_RECORDS_PER_SECOND > 0) {
+      assertThat(recordsPerSecond).isGreaterThanOrEqualTo(MIN_RECORDS_PER_SECOND);
+    }
+  }
+
+  private List<byte[]> givenNewMessages(int count) throws JsonProcessingException {
+    var messages = new ArrayList<byte[]>();
+    for (int i = 0; i < count; i++) {
+      var mediaUrl = MEDIA_URL_PREFIX + mediaCounter++;
+      storedFormats.put(mediaUrl, FORMAT);
+      messages.add(givenMessage(mediaUrl, FORMAT));
+    }
+    return messages;
+  }
+
+  /*
+  Changed media alternate their format, so every change results in a new version. The changed
+  and equal media are picked from the stored media without overlap, so a batch has no duplicates.
+  */
+  private List<byte[]> givenMixedMessages(int newCount, int changedCount, int equalCount)
+      throws JsonProcessingException {
+    var storedMediaUrls = new ArrayList<>(storedFormats.keySet());
+    Collections.shuffle(storedMediaUrls, random);
+    var messages = new ArrayList<byte[]>();
+    for (var mediaUrl : storedMediaUrls.subList(0, changedCount)) {
+      var format = FORMAT.equals(storedFormats.get(mediaUrl)) ? FORMAT_2 : FORMAT;
+      storedFormats.put(mediaUrl, format);
+      messages.add(givenMessage(mediaUrl, format));
+    }
+    for (var mediaUrl : storedMediaUrls.subList(changedCount, changedCount + equalCount)) {
+      messages.add(givenMessage(mediaUrl, storedFormats.get(mediaUrl)));
+    }
+    messages.addAll(givenNewMessages(newCount));
+    Collections.shuffle(messages, random);
+    return messages;
+  }
+
+  private List<ConsumerRecord<String, byte[]>> toRecords(List<byte[]> messages) {
+    return messages.stream()
+        .map(message -> new ConsumerRecord<String, byte[]>(TOPIC, 0, offset++, null, message))
+        .toList();
+  }
+
+  private static byte[] givenMessage(String mediaUrl, String format)
+      throws JsonProcessingException {
+    return mapper.writeValueAsBytes(new DigitalMediaEvent(List.of(MAS),
+        givenDigitalMediaWrapper(DIGITAL_SPECIMEN_ID, format, mediaUrl, TYPE)));
+  }
+
+  private static void logTimer(String stage, Timer timer) {
+    var snapshot = timer.takeSnapshot();
+    var percentiles = new StringBuilder();
+    for (var percentile : snapshot.percentileValues()) {
+      percentiles.append(" p").append(Math.round(percentile.percentile() * 100)).append('=')
+          .append(Math.round(percentile.value(TimeUnit.MILLISECONDS))).append("ms");
+    }
+    log.info("Stage {}: count={} mean={}ms{}", stage, snapshot.count(),
+        Math.round(snapshot.mean(TimeUnit.MILLISECONDS)), percentiles);
+  }
+
+  private static long gcCount() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(bean -> Math.max(0, bean.getCollectionCount())).sum();
+  }
+
+  private static long gcTime() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(bean -> Math.max(0, bean.getCollectionTime())).sum();
+  }
+
+  private static double doubleProperty(String name, double defaultValue) {
+    var value = System.getProperty(name);
+    return value == null ? defaultValue : Double.parseDouble(value);
+  }
+
+  private static KafkaConsumerService buildConsumerService() {
+    dataSource = new HikariDataSource();
+    dataSource.setJdbcUrl(postgres.getJdbcUrl());
+    dataSource.setUsername(postgres.getUsername());
+    dataSource.setPassword(postgres.getPassword());
+    dataSource.setMaximumPoolSize(10);
+    Flyway.configure().mixed(true).dataSource(dataSource).load().migrate();
+    context = new DefaultDSLContext(dataSource, SQLDialect.POSTGRES);
+
+    var cacheManager = new ConcurrentMapCacheManager();
+    var applicationProperties = new ApplicationProperties();
+    var outboxEventService = new OutboxEventService(mapper,
+        new ProvenanceService(mapper, applicationProperties));
+    var processingProperties = new ProcessingProperties();
+    processingExecutor = new ProcessingConfiguration(processingProperties).processingExecutor();
+    var consumerProperties = new KafkaConsumerProperties();
+    parseExecutor = new ForkJoinPool(consumerProperties.getParseParallelism());
+    var publisherService = buildPublisherService(cacheManager);
+
+    var processingService = new ProcessingService(mapper, new JsonPatchGenerator(mapper),
+        new DigitalMediaRepository(context, mapper),
+        new FdoRecordService(mapper, new FdoProperties()),
+        buildHandleComponent(), buildElasticRepository(), publisherService,
+        new DigitalSpecimenRepository(context, cacheManager), new StandardEnvironment(),
+        new AnnotationPublisherService(outboxEventService, applicationProperties, mapper),
+        outboxEventService, new OutboxRepository(context), processingExecutor,
+        new KeyLock<>(), processingProperties,
+        meterRegistry);
+    return new KafkaConsumerService(mapper.readerFor(DigitalMediaEvent.class), processingService,
+        publisherService, consumerProperties, parseExecutor);
+  }
+
+  private static HandleComponent buildHandleComponent() {
+    var tokenProperties = new TokenProperties();
+    tokenProperties.setFromFormData(new LinkedMultiValueMap<>(Map.of(
+        "grant_type", List.of("client_credentials"), "client_id", List.of("load"),
+        "client_secret", List.of("load"))));
+    var tokenClient = WebClient.builder()
+        .baseUrl(tokenServer.url("/token").toString())
+        .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+        .build();
+    var handleClient = WebClient.builder()
+        .baseUrl(handleServer.url("/").toString())
+        .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .build();
+    var handleProperties = new HandleProperties();
+    return new HandleComponent(handleClient, new TokenAuthenticator(tokenProperties, tokenClient),
+        mapper, handleProperties, new ConcurrencyLimiter(handleProperties.getMaxConcurrentCalls()));
+  }
+
+  private static ElasticSearchRepository buildElasticRepository() {
+    var credentialsProvider = new BasicCredentialsProvider();
+    credentialsProvider.setCredentials(AuthScope.ANY,
+        new UsernamePasswordCredentials("elastic", ELASTICSEARCH_PASSWORD));
+    restClient = RestClient.builder(new HttpHost("localhost", elastic.getMappedPort(9200), "https"))
+        .setHttpClientConfigCallback(clientBuilder -> clientBuilder
+            .setSSLContext(elastic.createSslContextFromCa())
+            .setDefaultCredentialsProvider(credentialsProvider))
+        .build();
+    var client = new ElasticsearchClient(
+        new RestClientTransport(restClient, new JacksonJsonpMapper(mapper)));
+    var elasticProperties = new ElasticSearchProperties();
+    elasticProperties.setIndexName(INDEX);
+    return new ElasticSearchRepository(client, mapper, elasticProperties,
+        new BulkRetryProperties(), new BulkIngesterProperties(), Optional.empty(),
+        new ConcurrencyLimiter(elasticProperties.getMaxConcurrentBulkCalls()));
+  }
+
+  private static KafkaPublisherService buildPublisherService(
+      ConcurrentMapCacheManager cacheManager) {
+    var publisherProperties = new KafkaPublisherProperties();
+    publisherProperties.setHost(broker.getBrokersAsString());
+    var configuration = new KafkaPublisherConfiguration(publisherProperties);
+    return new KafkaPublisherService(mapper, configuration.kafkaTemplate(),
+        configuration.rawKafkaTemplate(), publisherProperties, meterRegistry, cacheManager);
+  }
+
+  /*
+  Creates a handle for every record in a create request and accepts all other requests, after
+  waiting for the configured latency.
+  */
+  private static class HandleDispatcher extends Dispatcher {
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+      var response = new MockResponse()
+          .setHeadersDelay(HANDLE_LATENCY.toMillis(), TimeUnit.MILLISECONDS)
+          .addHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+      try {
+        if ("POST".equals(request.getMethod()) && "/batch".equals(request.getPath())) {
+          return response.setResponseCode(HttpStatus.CREATED.value())
+              .setBody(mapper.writeValueAsString(createHandles(
+                  mapper.readTree(request.getBody().readUtf8()))));
+        }
+        return response.setResponseCode(HttpStatus.OK.value()).setBody("{\"data\":[]}");
+      } catch (JsonProcessingException e) {
+        return response.setResponseCode(HttpStatus.BAD_REQUEST.value());
+      }
+    }
+
+    private static JsonNode createHandles(JsonNode requests) {
+      var data = mapper.createArrayNode();
+      for (var handleRequest : requests) {
+        var attributes = handleRequest.get("data").get("attributes");
+        var handle = data.addObject()
+            .put("type", "mediaObject")
+            .put("id", "20.5000.1025/LOAD-" + handleCounter.incrementAndGet());
+        handle.putObject("attributes").putObject("digitalMediaKey")
+            .put("digitalSpecimenId", attributes.get("linkedDigitalObjectPid").asText())
+            .put("mediaUrl", attributes.get("primaryMediaId").asText());
+      }
+      return mapper.createObjectNode().set("data", data);
+    }
+  }
+
+  private static class TokenDispatcher extends Dispatcher {
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+      return new MockResponse()
+          .setHeadersDelay(TOKEN_LATENCY.toMillis(), TimeUnit.MILLISECONDS)
+          .setResponseCode(HttpStatus.OK.value())
+          .addHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+          .setBody("{\"access_token\":\"load-token\",\"expires_in\":300,"
+              + "\"token_type\":\"Bearer\"}");
+    }
+  }
+
+}
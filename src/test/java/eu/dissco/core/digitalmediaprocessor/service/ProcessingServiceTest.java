@@ -4,6 +4,7 @@ import static eu.dissco.core.digitalmediaprocessor.TestUtils.CREATED;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.DIGITAL_SPECIMEN_ID;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.DIGITAL_SPECIMEN_ID_2;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.DIGITAL_SPECIMEN_ID_3;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.DOI_PREFIX;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.FORMAT;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.FORMAT_2;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE;
@@ -15,8 +16,10 @@ import static eu.dissco.core.digitalmediaprocessor.TestUtils.MEDIA_URL_1;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.MEDIA_URL_2;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.MEDIA_URL_3;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.TYPE;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.UPDATED_TIMESTAMP;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaEvent;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaEventWithMediaId;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaKey;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaRecord;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaRecordNoOriginalData;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaRecordPhysical;
@@ -26,18 +29,20 @@ import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaWr
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenJsonPatch;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenPidMap;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenPostHandleRequest;
+import static eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaUtils.generateContentHash;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
-import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 
 import co.elastic.clients.elasticsearch._types.ErrorCause;
@@ -46,27 +51,41 @@ import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import eu.dissco.core.digitalmediaprocessor.Profiles;
 import eu.dissco.core.digitalmediaprocessor.TestUtils;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaContentHash;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaEvent;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaKey;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaRecord;
 import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaWrapper;
+import eu.dissco.core.digitalmediaprocessor.domain.DuplicateStrategy;
 import eu.dissco.core.digitalmediaprocessor.domain.UpdatedDigitalMediaRecord;
 import eu.dissco.core.digitalmediaprocessor.exceptions.DigitalSpecimenNotFoundException;
 import eu.dissco.core.digitalmediaprocessor.exceptions.PidCreationException;
+import eu.dissco.core.digitalmediaprocessor.properties.ApplicationProperties;
+import eu.dissco.core.digitalmediaprocessor.properties.ProcessingProperties;
 import eu.dissco.core.digitalmediaprocessor.repository.DigitalMediaRepository;
 import eu.dissco.core.digitalmediaprocessor.repository.DigitalSpecimenRepository;
 import eu.dissco.core.digitalmediaprocessor.repository.ElasticSearchRepository;
+import eu.dissco.core.digitalmediaprocessor.repository.OutboxRepository;
+import eu.dissco.core.digitalmediaprocessor.schema.EntityRelationship;
+import eu.dissco.core.digitalmediaprocessor.utils.JsonPatchGenerator;
+import eu.dissco.core.digitalmediaprocessor.utils.KeyLock;
 import eu.dissco.core.digitalmediaprocessor.web.HandleComponent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.IOException;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.jooq.exception.DataAccessException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -93,7 +112,12 @@ class ProcessingServiceTest {
   private Environment environment;
   @Mock
   private AnnotationPublisherService annotationPublisherService;
+  @Mock
+  private OutboxEventService outboxEventService;
+  @Mock
+  private OutboxRepository outboxRepository;
 
+  private final ProcessingProperties processingProperties = new ProcessingProperties();
   private MockedStatic<Instant> mockedInstant;
   private MockedStatic<Clock> mockedClock;
 
@@ -101,9 +125,11 @@ class ProcessingServiceTest {
 
   @BeforeEach
   void setup() {
-    service = new ProcessingService(MAPPER, repository, fdoRecordService, handleComponent,
-        elasticRepository, publisherService, digitalSpecimenRepository, environment,
-        annotationPublisherService);
+    service = new ProcessingService(MAPPER, new JsonPatchGenerator(MAPPER), repository,
+        fdoRecordService, handleComponent, elasticRepository, publisherService,
+        digitalSpecimenRepository, environment, annotationPublisherService, outboxEventService,
+        outboxRepository, Runnable::run, new KeyLock<>(), processingProperties,
+        new SimpleMeterRegistry());
     Clock clock = Clock.fixed(CREATED, ZoneOffset.UTC);
     Instant instant = Instant.now(clock);
     mockedInstant = mockStatic(Instant.class);
@@ -121,11 +147,54 @@ class ProcessingServiceTest {
     mockedClock.close();
   }
 
+  @Test
+  void testSetTimestampsEntityRelationships() {
+    // Given
+    var currentDate = Date.from(CREATED);
+    var receivedDate = Date.from(UPDATED_TIMESTAMP);
+    var currentEntityRelationships = List.of(
+        givenEntityRelationship(DOI_PREFIX + DIGITAL_SPECIMEN_ID, currentDate),
+        givenEntityRelationship(DOI_PREFIX + DIGITAL_SPECIMEN_ID_2, currentDate));
+    var equalEntityRelationship = givenEntityRelationship(DOI_PREFIX + DIGITAL_SPECIMEN_ID,
+        receivedDate);
+    var newEntityRelationship = givenEntityRelationship(DOI_PREFIX + DIGITAL_SPECIMEN_ID_3,
+        receivedDate);
+
+    // When
+    service.setTimestampsEntityRelationships(
+        List.of(equalEntityRelationship, newEntityRelationship), currentEntityRelationships);
+
+    // Then
+    assertThat(equalEntityRelationship.getDwcRelationshipEstablishedDate()).isEqualTo(currentDate);
+    assertThat(newEntityRelationship.getDwcRelationshipEstablishedDate()).isEqualTo(receivedDate);
+  }
+
+  @Test
+  void testIsEqualTakesOverEntityRelationshipTimestamps() throws JsonProcessingException {
+    // Given
+    var currentDigitalMediaWrapper = givenDigitalMediaWrapper();
+    var digitalMediaWrapper = givenDigitalMediaWrapper();
+    var entityRelationship = digitalMediaWrapper.attributes().getOdsHasEntityRelationships()
+        .get(0);
+    entityRelationship.setDwcRelationshipEstablishedDate(Date.from(UPDATED_TIMESTAMP));
+
+    // When
+    var result = service.isEqual(currentDigitalMediaWrapper, digitalMediaWrapper);
+
+    // Then
+    assertThat(result).isTrue();
+    assertThat(entityRelationship.getDwcRelationshipEstablishedDate())
+        .isEqualTo(Date.from(CREATED));
+  }
+
   @Test
   void testEqualDigitalMedia() throws JsonProcessingException, DigitalSpecimenNotFoundException {
     // Given
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(
+        givenOutdatedContentHashes(List.of(givenDigitalMediaRecord())));
+    given(repository.getDigitalMediaByKeys(
+        List.of(givenDigitalMediaKey()))).willReturn(
         List.of(givenDigitalMediaRecord()));
 
     // When
@@ -133,6 +202,92 @@ class ProcessingServiceTest {
 
     // Then
     then(repository).should().updateLastChecked(List.of(HANDLE));
+    then(repository).should().updateContentHashes(Map.of(HANDLE,
+        generateContentHash(MAPPER, givenDigitalMediaWrapper())));
+    assertThat(result).isEmpty();
+  }
+
+  @Test
+  void testEqualDigitalMediaRecoversPendingOutboxEvents() throws Exception {
+    // Given
+    var event = givenDigitalMediaEvent();
+    var digitalMediaRecord = givenDigitalMediaRecord();
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of(
+        new DigitalMediaContentHash(HANDLE, 1, givenDigitalMediaKey(),
+            generateContentHash(MAPPER, digitalMediaRecord.digitalMediaWrapper()))));
+    given(outboxRepository.getPendingMediaIds(List.of(HANDLE))).willReturn(Set.of(HANDLE));
+    given(repository.getDigitalMediaByIds(Set.of(HANDLE))).willReturn(
+        List.of(digitalMediaRecord));
+    given(elasticRepository.indexDigitalMedia(List.of(digitalMediaRecord)))
+        .willReturn(bulkResponse);
+
+    // When
+    var result = service.handleMessage(List.of(event));
+
+    // Then
+    then(repository).should().updateLastChecked(List.of(HANDLE));
+    then(elasticRepository).should().indexDigitalMedia(List.of(digitalMediaRecord));
+    then(outboxRepository).should().releaseEvents(List.of(HANDLE));
+    assertThat(result).isEmpty();
+  }
+
+  @Test
+  void testReleaseOutboxEventsFailed() throws Exception {
+    // Given
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
+    given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(1));
+    given(bulkResponse.errors()).willReturn(false);
+    given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
+        List.of(givenPostHandleRequest()));
+    given(elasticRepository.indexDigitalMedia(
+        Set.of(givenDigitalMediaRecord()))).willReturn(bulkResponse);
+    doThrow(new DataAccessException("Database unavailable"))
+        .when(outboxRepository).releaseEvents(List.of(HANDLE));
+    var events = List.of(givenDigitalMediaEvent());
+
+    // When
+    assertThrows(DataAccessException.class, () -> service.handleMessage(events));
+
+    // Then
+    then(repository).should(never()).rollBackDigitalMedia(any());
+    then(outboxRepository).should(never()).deletePendingEvents(any());
+  }
+
+  @Test
+  void testUnrecoverableFailedSends() throws Exception {
+    // Given
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of(
+        new DigitalMediaContentHash(HANDLE, 1, givenDigitalMediaKey(),
+            generateContentHash(MAPPER, givenDigitalMediaWrapper()))));
+    given(publisherService.awaitBatch(any())).willReturn(List.of("dead letter event"));
+    var events = List.of(givenDigitalMediaEvent());
+
+    // When
+    assertThrows(IllegalStateException.class, () -> service.handleMessage(events));
+
+    // Then
+    then(publisherService).should(never()).forgetRepublished(any());
+  }
+
+  @Test
+  void testEqualDigitalMediaContentHash()
+      throws JsonProcessingException, DigitalSpecimenNotFoundException {
+    // Given
+    var event = givenDigitalMediaEvent();
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of(
+        new DigitalMediaContentHash(HANDLE, 1, givenDigitalMediaKey(),
+            generateContentHash(MAPPER, givenDigitalMediaRecord().digitalMediaWrapper()))));
+
+    // When
+    var result = service.handleMessage(List.of(event));
+
+    // Then
+    then(repository).should().updateLastChecked(List.of(HANDLE));
+    then(repository).shouldHaveNoMoreInteractions();
     assertThat(result).isEmpty();
   }
 
@@ -140,8 +295,11 @@ class ProcessingServiceTest {
   void testEqualDigitalMediaDifferentOriginalData()
       throws JsonProcessingException, DigitalSpecimenNotFoundException {
     // Given
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(
+        givenOutdatedContentHashes(List.of(givenDigitalMediaRecordNoOriginalData())));
+    given(repository.getDigitalMediaByKeys(
+        List.of(givenDigitalMediaKey()))).willReturn(
         List.of(givenDigitalMediaRecordNoOriginalData()));
 
     // When
@@ -156,8 +314,11 @@ class ProcessingServiceTest {
   void testUnequalDigitalMediaNoHandleUpdate() throws Exception {
     // Given
     var expected = List.of(givenDigitalMediaRecordWithVersion(2));
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(
+        givenOutdatedContentHashes(List.of(givenDigitalMediaRecord(FORMAT_2))));
+    given(repository.getDigitalMediaByKeys(
+        List.of(givenDigitalMediaKey()))).willReturn(
         List.of(givenDigitalMediaRecord(FORMAT_2)));
     given(bulkResponse.errors()).willReturn(false);
     given(elasticRepository.indexDigitalMedia(expected)).willReturn(bulkResponse);
@@ -168,10 +329,11 @@ class ProcessingServiceTest {
 
     // Then
     then(handleComponent).shouldHaveNoInteractions();
-    then(repository).should().createDigitalMediaRecord(expected);
-    then(publisherService).should()
-        .publishUpdateEvent(givenDigitalMediaRecordWithVersion(2), givenJsonPatch());
-    then(annotationPublisherService).should().publishAnnotationUpdatedMedia(anySet());
+    then(repository).should().createDigitalMediaRecord(eq(expected), anyList());
+    then(outboxEventService).should()
+        .updateEvent(givenDigitalMediaRecordWithVersion(2), givenJsonPatch());
+    then(annotationPublisherService).should().createAnnotationEventsUpdatedMedia(anySet());
+    then(outboxRepository).should().releaseEvents(List.of(HANDLE));
     assertThat(result).isEqualTo(expected);
   }
 
@@ -179,8 +341,11 @@ class ProcessingServiceTest {
   void testUnequalDigitalMediaHandleUpdate() throws Exception {
     // Given
     var expected = List.of(givenDigitalMediaRecordWithVersion(2));
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(
+        givenOutdatedContentHashes(List.of(givenDigitalMediaRecord(FORMAT_2))));
+    given(repository.getDigitalMediaByKeys(
+        List.of(givenDigitalMediaKey()))).willReturn(
         List.of(givenDigitalMediaRecord(FORMAT_2)));
     given(bulkResponse.errors()).willReturn(false);
     given(elasticRepository.indexDigitalMedia(expected)).willReturn(bulkResponse);
@@ -193,18 +358,21 @@ class ProcessingServiceTest {
     then(fdoRecordService).should()
         .buildPatchDeleteRequest(List.of(givenDigitalMediaRecordWithVersion(2)));
     then(handleComponent).should().updateHandle(any());
-    then(repository).should().createDigitalMediaRecord(expected);
-    then(publisherService).should()
-        .publishUpdateEvent(givenDigitalMediaRecordWithVersion(2), givenJsonPatch());
-    then(annotationPublisherService).should().publishAnnotationUpdatedMedia(anySet());
+    then(repository).should().createDigitalMediaRecord(eq(expected), anyList());
+    then(outboxEventService).should()
+        .updateEvent(givenDigitalMediaRecordWithVersion(2), givenJsonPatch());
+    then(annotationPublisherService).should().createAnnotationEventsUpdatedMedia(anySet());
     assertThat(result).isEqualTo(expected);
   }
 
   @Test
   void testUnequalDigitalMediaHandleUpdateFailed() throws Exception {
     // Given
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(
+        givenOutdatedContentHashes(List.of(givenDigitalMediaRecord(FORMAT_2))));
+    given(repository.getDigitalMediaByKeys(
+        List.of(givenDigitalMediaKey()))).willReturn(
         List.of(givenDigitalMediaRecord(FORMAT_2)));
     given(fdoRecordService.handleNeedsUpdate(any(), any())).willReturn(true);
     doThrow(PidCreationException.class).when(handleComponent).updateHandle(any());
@@ -224,8 +392,11 @@ class ProcessingServiceTest {
   @Test
   void testUnequalDigitalMediaHandleUpdateFailedKafkaFailed() throws Exception {
     // Given
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(
+        givenOutdatedContentHashes(List.of(givenDigitalMediaRecord(FORMAT_2))));
+    given(repository.getDigitalMediaByKeys(
+        List.of(givenDigitalMediaKey()))).willReturn(
         List.of(givenDigitalMediaRecord(FORMAT_2)));
     given(fdoRecordService.handleNeedsUpdate(any(), any())).willReturn(true);
     doThrow(PidCreationException.class).when(handleComponent).updateHandle(any());
@@ -241,13 +412,58 @@ class ProcessingServiceTest {
     assertThat(result).isEmpty();
   }
 
+  @Test
+  void testUnequalDigitalMediaHandleUpdateChunkFailed() throws Exception {
+    // Given
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(
+        givenOutdatedContentHashes(List.of(givenDigitalMediaRecord(FORMAT_2))));
+    given(repository.getDigitalMediaByKeys(
+        List.of(givenDigitalMediaKey()))).willReturn(
+        List.of(givenDigitalMediaRecord(FORMAT_2)));
+    given(fdoRecordService.handleNeedsUpdate(any(), any())).willReturn(true);
+    given(handleComponent.updateHandle(any())).willReturn(Set.of(HANDLE));
+
+    // When
+    var result = service.handleMessage(List.of(givenDigitalMediaEvent()));
+
+    // Then
+    then(repository).shouldHaveNoMoreInteractions();
+    then(publisherService).should().deadLetterEvent(givenDlqTransferEventUpdate());
+    then(elasticRepository).shouldHaveNoInteractions();
+    assertThat(result).isEmpty();
+  }
+
+  @Test
+  void testNewDigitalMediaHandleChunkFailed() throws Exception {
+    // Given
+    var secondEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
+    var expected = List.of(givenDigitalMediaRecord());
+    given(repository.getDigitalMediaContentHashes(anyList())).willReturn(List.of());
+    given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
+        List.of(givenPostHandleRequest(), givenPostHandleRequest()));
+    given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(1));
+    given(bulkResponse.errors()).willReturn(false);
+    given(elasticRepository.indexDigitalMedia(Set.of(givenDigitalMediaRecord()))).willReturn(
+        bulkResponse);
+
+    // When
+    var result = service.handleMessage(List.of(givenDigitalMediaEvent(), secondEvent));
+
+    // Then
+    then(publisherService).should().deadLetterEvent(secondEvent);
+    then(repository).should().createDigitalMediaRecord(eq(Set.of(expected.get(0))), anyList());
+    then(outboxRepository).should().releaseEvents(List.of(HANDLE));
+    assertThat(result).isEqualTo(expected);
+  }
+
   @Test
   void testNewDigitalMedia()
       throws Exception {
     // Given
     var expected = List.of(givenDigitalMediaRecord());
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
     given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(1));
     given(bulkResponse.errors()).willReturn(false);
     given(elasticRepository.indexDigitalMedia(
@@ -262,19 +478,35 @@ class ProcessingServiceTest {
     then(fdoRecordService).should()
         .buildPostHandleRequest(List.of(TestUtils.givenDigitalMediaWrapper()));
     then(handleComponent).should().postHandle(any());
-    then(repository).should().createDigitalMediaRecord(Set.of(expected.get(0)));
-    then(publisherService).should().publishCreateEvent(expected.get(0));
-    then(publisherService).should().publishAnnotationRequestEvent(MAS, expected.get(0));
-    then(annotationPublisherService).should().publishAnnotationNewMedia(Set.of(expected.get(0)));
+    then(repository).should().createDigitalMediaRecord(eq(Set.of(expected.get(0))), anyList());
+    then(outboxEventService).should().createEvent(expected.get(0));
+    then(outboxEventService).should().annotationRequestEvent(MAS, expected.get(0));
+    then(annotationPublisherService).should().createAnnotationEventsNewMedia(Set.of(expected.get(0)));
+    then(outboxRepository).should().releaseEvents(List.of(HANDLE));
     assertThat(result).isEqualTo(expected);
   }
 
+  @Test
+  void testNewDigitalMediaUnexpectedException() throws Exception {
+    // Given
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
+    given(fdoRecordService.buildPostHandleRequest(List.of(givenDigitalMediaWrapper()))).willThrow(
+        IllegalStateException.class);
+    var events = List.of(givenDigitalMediaEvent());
+
+    // When / Then
+    assertThrows(IllegalStateException.class, () -> service.handleMessage(events));
+    then(handleComponent).shouldHaveNoInteractions();
+    then(elasticRepository).shouldHaveNoInteractions();
+  }
+
   @Test
   void testNewDigitalMediaWithMediaId()throws Exception {
     // Given
     var expected = List.of(givenDigitalMediaRecordWithVersion(1));
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
     given(bulkResponse.errors()).willReturn(false);
     given(elasticRepository.indexDigitalMedia(
         Set.of(givenDigitalMediaRecordWithVersion(1)))).willReturn(bulkResponse);
@@ -284,20 +516,52 @@ class ProcessingServiceTest {
 
     // Then
     then(handleComponent).should().activatePids(List.of(HANDLE));
-    then(repository).should().createDigitalMediaRecord(Set.of(expected.get(0)));
-    then(publisherService).should().publishCreateEvent(expected.get(0));
-    then(publisherService).should().publishAnnotationRequestEvent(MAS, expected.get(0));
-    then(annotationPublisherService).should().publishAnnotationNewMedia(Set.of(expected.get(0)));
+    then(repository).should().createDigitalMediaRecord(eq(Set.of(expected.get(0))), anyList());
+    then(outboxEventService).should().createEvent(expected.get(0));
+    then(outboxEventService).should().annotationRequestEvent(MAS, expected.get(0));
+    then(annotationPublisherService).should().createAnnotationEventsNewMedia(Set.of(expected.get(0)));
     assertThat(result).isEqualTo(expected);
   }
 
+  @Test
+  void testNewDigitalMediaPersistsReceivedAttributes() throws Exception {
+    // Given
+    var applicationProperties = new ApplicationProperties();
+    var eventService = new OutboxEventService(MAPPER,
+        new ProvenanceService(MAPPER, applicationProperties));
+    service = new ProcessingService(MAPPER, new JsonPatchGenerator(MAPPER), repository,
+        fdoRecordService, handleComponent, elasticRepository, publisherService,
+        digitalSpecimenRepository, environment,
+        new AnnotationPublisherService(eventService, applicationProperties, MAPPER), eventService,
+        outboxRepository, Runnable::run, new KeyLock<>(), processingProperties,
+        new SimpleMeterRegistry());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
+    given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(1));
+    given(bulkResponse.errors()).willReturn(false);
+    given(elasticRepository.indexDigitalMedia(anySet())).willReturn(bulkResponse);
+    given(fdoRecordService.buildPostHandleRequest(List.of(givenDigitalMediaWrapper()))).willReturn(
+        List.of(givenPostHandleRequest()));
+    var captor = ArgumentCaptor.forClass(Collection.class);
+
+    // When
+    service.handleMessage(List.of(givenDigitalMediaEvent()));
+
+    // Then
+    then(repository).should().createDigitalMediaRecord(captor.capture(), anyList());
+    var persisted = (DigitalMediaRecord) captor.getValue().iterator().next();
+    assertThat(persisted.digitalMediaWrapper()).isEqualTo(givenDigitalMediaWrapper());
+    assertThat(persisted.digitalMediaWrapper().attributes().getId()).isNull();
+    assertThat(persisted.digitalMediaWrapper().attributes().getOdsVersion()).isNull();
+  }
+
   @Test
   void testDuplicateNewDigitalMedia()
       throws Exception {
     // Given
     var expected = List.of(givenDigitalMediaRecord());
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
     given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(1));
     given(bulkResponse.errors()).willReturn(false);
     given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
@@ -313,12 +577,87 @@ class ProcessingServiceTest {
     then(fdoRecordService).should()
         .buildPostHandleRequest(List.of(TestUtils.givenDigitalMediaWrapper()));
     then(handleComponent).should().postHandle(any());
-    then(repository).should().createDigitalMediaRecord(Set.of(expected.get(0)));
-    then(publisherService).should().publishCreateEvent(expected.get(0));
-    then(publisherService).should().publishAnnotationRequestEvent(MAS, expected.get(0));
+    then(repository).should().createDigitalMediaRecord(eq(Set.of(expected.get(0))), anyList());
+    then(outboxEventService).should().createEvent(expected.get(0));
+    then(outboxEventService).should().annotationRequestEvent(MAS, expected.get(0));
     then(publisherService).should()
         .republishDigitalMedia(givenDigitalMediaEvent());
-    then(annotationPublisherService).should().publishAnnotationNewMedia(Set.of(expected.get(0)));
+    then(publisherService).should().forgetRepublished(List.of());
+    then(annotationPublisherService).should().createAnnotationEventsNewMedia(Set.of(expected.get(0)));
+    assertThat(result).isEqualTo(expected);
+  }
+
+  @Test
+  void testSameMediaUrlForOtherSpecimenNotDuplicate() throws Exception {
+    // Given
+    var event = givenDigitalMediaEvent();
+    var otherSpecimenEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_1);
+    given(repository.getDigitalMediaContentHashes(anyList())).willReturn(List.of());
+    given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
+        List.of(givenPostHandleRequest(), givenPostHandleRequest()));
+    given(handleComponent.postHandle(anyList())).willThrow(PidCreationException.class);
+
+    // When
+    service.handleMessage(List.of(event, otherSpecimenEvent));
+
+    // Then
+    then(publisherService).should(never()).republishDigitalMedia(any());
+    then(publisherService).should().deadLetterEvent(event);
+    then(publisherService).should().deadLetterEvent(otherSpecimenEvent);
+    then(publisherService).should().forgetRepublished(List.of(event, otherSpecimenEvent));
+  }
+
+  @Test
+  void testDuplicateNewDigitalMediaCoalesced() throws Exception {
+    // Given
+    processingProperties.setDuplicateStrategy(DuplicateStrategy.COALESCE);
+    var expected = List.of(givenDigitalMediaRecord());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
+    given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(1));
+    given(bulkResponse.errors()).willReturn(false);
+    given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
+        List.of(givenPostHandleRequest()));
+    given(elasticRepository.indexDigitalMedia(
+        Set.of(givenDigitalMediaRecord()))).willReturn(bulkResponse);
+
+    // When
+    var result = service.handleMessage(
+        List.of(givenDigitalMediaEvent(), givenDigitalMediaEvent()));
+
+    // Then
+    then(repository).should().createDigitalMediaRecord(eq(Set.of(expected.get(0))), anyList());
+    then(outboxEventService).should().createEvent(expected.get(0));
+    then(publisherService).should(never()).republishDigitalMedia(any());
+    then(publisherService).should()
+        .forgetRepublished(List.of(givenDigitalMediaEvent(), givenDigitalMediaEvent()));
+    assertThat(result).isEqualTo(expected);
+  }
+
+  @Test
+  void testDuplicateNewDigitalMediaSequential() throws Exception {
+    // Given
+    processingProperties.setDuplicateStrategy(DuplicateStrategy.SEQUENTIAL);
+    var expected = List.of(givenDigitalMediaRecord());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of(), List.of(
+        new DigitalMediaContentHash(HANDLE, 1, givenDigitalMediaKey(),
+            generateContentHash(MAPPER, givenDigitalMediaRecord().digitalMediaWrapper()))));
+    given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(1));
+    given(bulkResponse.errors()).willReturn(false);
+    given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
+        List.of(givenPostHandleRequest()));
+    given(elasticRepository.indexDigitalMedia(
+        Set.of(givenDigitalMediaRecord()))).willReturn(bulkResponse);
+
+    // When
+    var result = service.handleMessage(
+        List.of(givenDigitalMediaEvent(), givenDigitalMediaEvent()));
+
+    // Then
+    then(repository).should().createDigitalMediaRecord(eq(Set.of(expected.get(0))), anyList());
+    then(repository).should().updateLastChecked(List.of(HANDLE));
+    then(publisherService).should(never()).republishDigitalMedia(any());
     assertThat(result).isEqualTo(expected);
   }
 
@@ -326,8 +665,8 @@ class ProcessingServiceTest {
   void testNewDigitalMediaIOException()
       throws Exception {
     // Given
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
     given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
         List.of(givenPostHandleRequest()));
     given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(1));
@@ -344,10 +683,12 @@ class ProcessingServiceTest {
         .buildRollbackCreationRequest(List.of(givenDigitalMediaRecord()));
     then(handleComponent).should().postHandle(any());
     then(handleComponent).should().rollbackHandleCreation(any());
-    then(repository).should().createDigitalMediaRecord(Set.of(givenDigitalMediaRecord()));
+    then(repository).should()
+        .createDigitalMediaRecord(eq(Set.of(givenDigitalMediaRecord())), anyList());
     then(repository).should().rollBackDigitalMedia(HANDLE);
     then(publisherService).should().deadLetterEvent(givenDigitalMediaEvent());
-    then(annotationPublisherService).shouldHaveNoInteractions();
+    then(outboxRepository).should().deletePendingEvents(List.of(HANDLE));
+    then(outboxRepository).shouldHaveNoMoreInteractions();
     assertThat(result).isEmpty();
   }
 
@@ -355,8 +696,8 @@ class ProcessingServiceTest {
   void testNewDigitalMediaIOExceptionHandleRollbackFailed()
       throws Exception {
     // Given
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
     given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(1));
     given(elasticRepository.indexDigitalMedia(
         Set.of(givenDigitalMediaRecord()))).willThrow(IOException.class);
@@ -371,10 +712,12 @@ class ProcessingServiceTest {
     then(fdoRecordService).should()
         .buildPostHandleRequest(List.of(TestUtils.givenDigitalMediaWrapper()));
     then(handleComponent).should().postHandle(any());
-    then(repository).should().createDigitalMediaRecord(Set.of(givenDigitalMediaRecord()));
+    then(repository).should()
+        .createDigitalMediaRecord(eq(Set.of(givenDigitalMediaRecord())), anyList());
     then(repository).should().rollBackDigitalMedia(HANDLE);
     then(publisherService).should().deadLetterEvent(givenDigitalMediaEvent());
-    then(annotationPublisherService).shouldHaveNoInteractions();
+    then(outboxRepository).should().deletePendingEvents(List.of(HANDLE));
+    then(outboxRepository).shouldHaveNoMoreInteractions();
     assertThat(result).isEmpty();
   }
 
@@ -384,7 +727,7 @@ class ProcessingServiceTest {
     // Given
     var secondEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
     var thirdEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3);
-    given(repository.getDigitalMedia(anyList(), anyList())).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(anyList())).willReturn(List.of());
     given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
         List.of(givenPostHandleRequest()));
     given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(3));
@@ -397,21 +740,21 @@ class ProcessingServiceTest {
 
     // Then
     then(fdoRecordService).should().buildPostHandleRequest(List.of(
+        TestUtils.givenDigitalMediaWrapper(),
         givenDigitalMediaWrapper(DIGITAL_SPECIMEN_ID_2, FORMAT, MEDIA_URL_2,
             TYPE),
         givenDigitalMediaWrapper(DIGITAL_SPECIMEN_ID_3, FORMAT, MEDIA_URL_3,
-            TYPE),
-        TestUtils.givenDigitalMediaWrapper()
+            TYPE)
     ));
     then(fdoRecordService).should().buildRollbackCreationRequest(List.of(
         givenDigitalMediaRecordPhysical(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2, TYPE)));
     then(handleComponent).should().rollbackHandleCreation(any());
-    then(repository).should().createDigitalMediaRecord(anySet());
+    then(repository).should().createDigitalMediaRecord(anySet(), anyList());
     then(repository).should().rollBackDigitalMedia(HANDLE_2);
     then(publisherService).should().deadLetterEvent(secondEvent);
-    then(annotationPublisherService).should().publishAnnotationNewMedia(Set.of(
-        givenDigitalMediaRecordPhysical(HANDLE_3, DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3, TYPE),
-        givenDigitalMediaRecord()));
+    then(annotationPublisherService).should().createAnnotationEventsNewMedia(anySet());
+    then(outboxRepository).should().deletePendingEvents(List.of(HANDLE_2));
+    then(outboxRepository).should().releaseEvents(anyList());
     assertThat(result).hasSameElementsAs(List.of(
         givenDigitalMediaRecordPhysical(HANDLE_3, DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3, TYPE),
         givenDigitalMediaRecord()
@@ -419,7 +762,7 @@ class ProcessingServiceTest {
   }
 
   @Test
-  void testNewDigitalMediaPartialElasticFailedKafkaDlqFailed()
+  void testNewDigitalMediaPartialElasticFailedCreateEventFailed()
       throws Exception {
     // Given
     var secondEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
@@ -429,13 +772,12 @@ class ProcessingServiceTest {
     var thirdRecord = givenDigitalMediaRecordPhysical(HANDLE_3, DIGITAL_SPECIMEN_ID_3,
         MEDIA_URL_3, TYPE);
 
-    given(repository.getDigitalMedia(anyList(), anyList())).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(anyList())).willReturn(List.of());
     given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(3));
     givenBulkResponse();
     given(elasticRepository.indexDigitalMedia(anySet())).willReturn(bulkResponse);
-    doNothing().doThrow(JsonProcessingException.class).when(publisherService)
-        .publishCreateEvent(givenDigitalMediaRecord());
-    doThrow(JsonProcessingException.class).when(publisherService).publishCreateEvent(thirdRecord);
+    given(outboxEventService.createEvent(any(DigitalMediaRecord.class))).willReturn(null);
+    given(outboxEventService.createEvent(thirdRecord)).willThrow(JsonProcessingException.class);
     given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
         List.of(givenPostHandleRequest()));
 
@@ -445,21 +787,20 @@ class ProcessingServiceTest {
 
     // Then
     then(fdoRecordService).should().buildPostHandleRequest(List.of(
+        TestUtils.givenDigitalMediaWrapper(),
         secondRecord.digitalMediaWrapper(),
-        thirdRecord.digitalMediaWrapper(),
-        TestUtils.givenDigitalMediaWrapper()
+        thirdRecord.digitalMediaWrapper()
     ));
-    then(fdoRecordService).should()
-        .buildRollbackCreationRequest(List.of(secondRecord, thirdRecord));
-    then(handleComponent).should().rollbackHandleCreation(any());
-    then(repository).should().createDigitalMediaRecord(anySet());
+    then(fdoRecordService).should().buildRollbackCreationRequest(List.of(thirdRecord));
+    then(fdoRecordService).should().buildRollbackCreationRequest(List.of(secondRecord));
+    then(handleComponent).should(times(2)).rollbackHandleCreation(any());
+    then(repository).should().createDigitalMediaRecord(anySet(), anyList());
     then(repository).should().rollBackDigitalMedia(HANDLE_2);
-    then(repository).should().rollBackDigitalMedia(HANDLE_3);
-    then(elasticRepository).should().rollbackDigitalMedia(thirdRecord);
+    then(repository).should(never()).rollBackDigitalMedia(HANDLE_3);
+    then(elasticRepository).should(never()).rollbackDigitalMedia(any());
     then(publisherService).should().deadLetterEvent(secondEvent);
     then(publisherService).should().deadLetterEvent(thirdEvent);
-    then(annotationPublisherService).should()
-        .publishAnnotationNewMedia(Set.of(givenDigitalMediaRecord()));
+    then(outboxRepository).should().releaseEvents(List.of(HANDLE));
     assertThat(result).isEqualTo(List.of(givenDigitalMediaRecord()));
   }
 
@@ -469,7 +810,7 @@ class ProcessingServiceTest {
     // Given
     var secondEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
     var thirdEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3);
-    given(repository.getDigitalMedia(anyList(), anyList())).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(anyList())).willReturn(List.of());
     given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(3));
     givenBulkResponse();
     given(elasticRepository.indexDigitalMedia(anySet())).willReturn(bulkResponse);
@@ -482,16 +823,15 @@ class ProcessingServiceTest {
         List.of(givenDigitalMediaEvent(), secondEvent, thirdEvent));
 
     // Then
-    then(repository).should().createDigitalMediaRecord(anySet());
+    then(repository).should().createDigitalMediaRecord(anySet(), anyList());
     then(repository).should().rollBackDigitalMedia(HANDLE_2);
     then(fdoRecordService).should().buildRollbackCreationRequest(List.of(
         givenDigitalMediaRecordPhysical(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2, TYPE)));
     then(handleComponent).should().rollbackHandleCreation(any());
     then(publisherService).should().deadLetterEvent(secondEvent);
-    then(annotationPublisherService).should().publishAnnotationNewMedia(Set.of(
-        givenDigitalMediaRecordPhysical(HANDLE_3, DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3, TYPE),
-        givenDigitalMediaRecord()
-    ));
+    then(annotationPublisherService).should().createAnnotationEventsNewMedia(anySet());
+    then(outboxRepository).should().deletePendingEvents(List.of(HANDLE_2));
+    then(outboxRepository).should().releaseEvents(anyList());
     assertThat(result).hasSameElementsAs(List.of(
         givenDigitalMediaRecordPhysical(HANDLE_3, DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3, TYPE),
         givenDigitalMediaRecord()
@@ -504,7 +844,7 @@ class ProcessingServiceTest {
     // Given
     var secondEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
     var thirdEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3);
-    given(repository.getDigitalMedia(anyList(), anyList())).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(anyList())).willReturn(List.of());
     given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(3));
     givenBulkResponse();
     given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
@@ -518,12 +858,11 @@ class ProcessingServiceTest {
         List.of(givenDigitalMediaEvent(), secondEvent, thirdEvent));
 
     // Then
-    then(repository).should().createDigitalMediaRecord(anySet());
+    then(repository).should().createDigitalMediaRecord(anySet(), anyList());
     then(repository).should().rollBackDigitalMedia(HANDLE_2);
-    then(annotationPublisherService).should().publishAnnotationNewMedia(Set.of(
-        givenDigitalMediaRecordPhysical(HANDLE_3, DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3, TYPE),
-        givenDigitalMediaRecord()
-    ));
+    then(annotationPublisherService).should().createAnnotationEventsNewMedia(anySet());
+    then(outboxRepository).should().deletePendingEvents(List.of(HANDLE_2));
+    then(outboxRepository).should().releaseEvents(anyList());
     then(fdoRecordService).should().buildRollbackCreationRequest(List.of(
         givenDigitalMediaRecordPhysical(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2, TYPE)));
     assertThat(result).hasSameElementsAs(
@@ -534,20 +873,14 @@ class ProcessingServiceTest {
   }
 
   @Test
-  void testNewDigitalMediaKafkaFailed()
+  void testNewDigitalMediaCreateEventFailed()
       throws Exception {
     // Given
-    var expected = List.of(givenDigitalMediaRecord());
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
     given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(1));
-    given(bulkResponse.errors()).willReturn(false);
-    given(elasticRepository.indexDigitalMedia(
-        Set.of(givenDigitalMediaRecord()))).willReturn(bulkResponse);
-    doThrow(JsonProcessingException.class).when(publisherService).publishCreateEvent(any(
-        DigitalMediaRecord.class));
-    given(fdoRecordService.buildPostHandleRequest(List.of(givenDigitalMediaWrapper()))).willReturn(
-        List.of(givenPostHandleRequest()));
+    given(outboxEventService.createEvent(any(DigitalMediaRecord.class))).willThrow(
+        JsonProcessingException.class);
     given(fdoRecordService.buildPostHandleRequest(List.of(givenDigitalMediaWrapper()))).willReturn(
         List.of(givenPostHandleRequest()));
 
@@ -560,11 +893,11 @@ class ProcessingServiceTest {
     then(fdoRecordService).should()
         .buildRollbackCreationRequest(List.of(givenDigitalMediaRecord()));
     then(handleComponent).should().rollbackHandleCreation(any());
-    then(repository).should().createDigitalMediaRecord(anySet());
-    then(repository).should().rollBackDigitalMedia(HANDLE);
-    then(elasticRepository).should().rollbackDigitalMedia(expected.get(0));
+    then(repository).should().getDigitalMediaContentHashes(List.of(givenDigitalMediaKey()));
+    then(repository).shouldHaveNoMoreInteractions();
+    then(elasticRepository).shouldHaveNoInteractions();
+    then(outboxRepository).shouldHaveNoInteractions();
     then(publisherService).should().deadLetterEvent(givenDigitalMediaEvent());
-    then(annotationPublisherService).should().publishAnnotationNewMedia(Set.of());
     assertThat(result).isEmpty();
   }
 
@@ -573,7 +906,16 @@ class ProcessingServiceTest {
     // Given
     var secondEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
     var thirdEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3);
-    given(repository.getDigitalMedia(anyList(), anyList())).willReturn(List.of(
+    given(repository.getDigitalMediaContentHashes(anyList())).willReturn(
+        givenOutdatedContentHashes(List.of(
+            givenDigitalMediaRecordPhysical(HANDLE, DIGITAL_SPECIMEN_ID, MEDIA_URL_1,
+                "Another Type"),
+            givenDigitalMediaRecordPhysical(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2,
+                "Another Type"),
+            givenDigitalMediaRecordPhysical(HANDLE_3, DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3,
+                "Another Type")
+        )));
+    given(repository.getDigitalMediaByKeys(anyList())).willReturn(List.of(
         givenDigitalMediaRecordPhysical(HANDLE, DIGITAL_SPECIMEN_ID, MEDIA_URL_1,
             "Another Type"),
         givenDigitalMediaRecordPhysical(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2,
@@ -591,9 +933,10 @@ class ProcessingServiceTest {
 
     // Then
     then(fdoRecordService).shouldHaveNoMoreInteractions();
-    then(repository).should(times(2)).createDigitalMediaRecord(anyList());
+    then(repository).should().createDigitalMediaRecord(anyList(), anyList());
+    then(repository).should().createDigitalMediaRecord(anyList());
     then(publisherService).should().deadLetterEvent(secondEvent);
-    then(annotationPublisherService).should().publishAnnotationUpdatedMedia(anySet());
+    then(annotationPublisherService).should().createAnnotationEventsUpdatedMedia(anySet());
     assertThat(result).hasSize(2);
   }
 
@@ -603,7 +946,16 @@ class ProcessingServiceTest {
     // Given
     var secondEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
     var thirdEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3);
-    given(repository.getDigitalMedia(anyList(), anyList())).willReturn(List.of(
+    given(repository.getDigitalMediaContentHashes(anyList())).willReturn(
+        givenOutdatedContentHashes(List.of(
+            givenDigitalMediaRecordPhysical(HANDLE, DIGITAL_SPECIMEN_ID, MEDIA_URL_1,
+                "Another Type"),
+            givenDigitalMediaRecordPhysical(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2,
+                "Another Type"),
+            givenDigitalMediaRecordPhysical(HANDLE_3, DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3,
+                "Another Type")
+        )));
+    given(repository.getDigitalMediaByKeys(anyList())).willReturn(List.of(
         givenDigitalMediaRecordPhysical(HANDLE, DIGITAL_SPECIMEN_ID, MEDIA_URL_1,
             "Another Type"),
         givenDigitalMediaRecordPhysical(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2,
@@ -625,14 +977,15 @@ class ProcessingServiceTest {
         givenDigitalMediaRecordPhysical(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2,
             "Another Type")));
     then(handleComponent).should().rollbackHandleUpdate(any());
-    then(repository).should(times(2)).createDigitalMediaRecord(anyList());
+    then(repository).should().createDigitalMediaRecord(anyList(), anyList());
+    then(repository).should().createDigitalMediaRecord(anyList());
     then(publisherService).should().deadLetterEvent(secondEvent);
-    then(annotationPublisherService).should().publishAnnotationUpdatedMedia(anySet());
+    then(annotationPublisherService).should().createAnnotationEventsUpdatedMedia(anySet());
     assertThat(result).hasSize(2);
   }
 
   @Test
-  void testUpdateDigitalMediaPartialElasticFailedFailedKafkaDlqFailed()
+  void testUpdateDigitalMediaPartialElasticFailedUpdateEventFailed()
       throws Exception {
     // Given
     var secondEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
@@ -643,7 +996,14 @@ class ProcessingServiceTest {
     var thirdRecord = givenDigitalMediaRecordPhysical(HANDLE_3, DIGITAL_SPECIMEN_ID_3,
         MEDIA_URL_3, "Another Type");
 
-    given(repository.getDigitalMedia(anyList(), anyList())).willReturn(List.of(
+    given(repository.getDigitalMediaContentHashes(anyList())).willReturn(
+        givenOutdatedContentHashes(List.of(
+            givenDigitalMediaRecordPhysical(HANDLE, DIGITAL_SPECIMEN_ID, MEDIA_URL_1,
+                "Another Type"),
+            secondRecord,
+            thirdRecord
+        )));
+    given(repository.getDigitalMediaByKeys(anyList())).willReturn(List.of(
         givenDigitalMediaRecordPhysical(HANDLE, DIGITAL_SPECIMEN_ID, MEDIA_URL_1,
             "Another Type"),
         secondRecord,
@@ -652,8 +1012,9 @@ class ProcessingServiceTest {
     given(fdoRecordService.handleNeedsUpdate(any(), any())).willReturn(true);
     givenBulkResponse();
     given(elasticRepository.indexDigitalMedia(anyList())).willReturn(bulkResponse);
-    doNothing().doThrow(JsonProcessingException.class).when(publisherService)
-        .publishUpdateEvent(any(), any());
+    given(outboxEventService.updateEvent(any(DigitalMediaRecord.class), any())).willReturn(null);
+    given(outboxEventService.updateEvent(argThat(media -> HANDLE_3.equals(media.id())), any()))
+        .willThrow(JsonProcessingException.class);
 
     // When
     var result = service.handleMessage(
@@ -661,13 +1022,16 @@ class ProcessingServiceTest {
 
     // Then
     then(handleComponent).should().updateHandle(any());
-    then(fdoRecordService).should().buildPatchDeleteRequest(List.of(secondRecord, thirdRecord));
-    then(handleComponent).should().rollbackHandleUpdate(any());
-    then(repository).should(times(3)).createDigitalMediaRecord(anyList());
+    then(fdoRecordService).should().buildPatchDeleteRequest(List.of(thirdRecord));
+    then(fdoRecordService).should().buildPatchDeleteRequest(List.of(secondRecord));
+    then(handleComponent).should(times(2)).rollbackHandleUpdate(any());
+    then(repository).should().createDigitalMediaRecord(anyList(), anyList());
+    then(repository).should().createDigitalMediaRecord(List.of(secondRecord));
     then(publisherService).should().deadLetterEvent(secondEvent);
     then(publisherService).should().deadLetterEvent(thirdEvent);
-    then(elasticRepository).should().rollbackVersion(thirdRecord);
-    then(annotationPublisherService).should().publishAnnotationUpdatedMedia(anySet());
+    then(elasticRepository).should(never()).rollbackVersion(any());
+    then(outboxRepository).should().deletePendingEvents(List.of(HANDLE_2));
+    then(outboxRepository).should().releaseEvents(List.of(HANDLE));
     assertThat(result).isEqualTo(List.of(givenDigitalMediaRecordWithVersion(2)));
   }
 
@@ -676,7 +1040,16 @@ class ProcessingServiceTest {
     // Given
     var secondEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2);
     var thirdEvent = givenDigitalMediaEvent(DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3);
-    given(repository.getDigitalMedia(anyList(), anyList())).willReturn(List.of(
+    given(repository.getDigitalMediaContentHashes(anyList())).willReturn(
+        givenOutdatedContentHashes(List.of(
+            givenDigitalMediaRecordPhysical(HANDLE, DIGITAL_SPECIMEN_ID, MEDIA_URL_1,
+                "Another Type"),
+            givenDigitalMediaRecordPhysical(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2,
+                "Another Type"),
+            givenDigitalMediaRecordPhysical(HANDLE_3, DIGITAL_SPECIMEN_ID_3, MEDIA_URL_3,
+                "Another Type")
+        )));
+    given(repository.getDigitalMediaByKeys(anyList())).willReturn(List.of(
         givenDigitalMediaRecordPhysical(HANDLE, DIGITAL_SPECIMEN_ID, MEDIA_URL_1,
             "Another Type"),
         givenDigitalMediaRecordPhysical(HANDLE_2, DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2,
@@ -695,23 +1068,24 @@ class ProcessingServiceTest {
 
     // Then
     then(handleComponent).should().rollbackHandleUpdate(any());
-    then(repository).should(times(2)).createDigitalMediaRecord(anyList());
+    then(repository).should().createDigitalMediaRecord(anyList(), anyList());
+    then(repository).should().createDigitalMediaRecord(anyList());
     then(publisherService).should().deadLetterEvent(secondEvent);
-    then(annotationPublisherService).should().publishAnnotationUpdatedMedia(anySet());
+    then(annotationPublisherService).should().createAnnotationEventsUpdatedMedia(anySet());
     assertThat(result).hasSize(2);
   }
 
   @Test
-  void testUpdateDigitalMediaKafkaFailed() throws Exception {
+  void testUpdateDigitalMediaUpdateEventFailed() throws Exception {
     // Given
-    var expected = List.of(givenDigitalMediaRecordWithVersion(2));
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(
+        givenOutdatedContentHashes(List.of(givenDigitalMediaRecord(FORMAT_2))));
+    given(repository.getDigitalMediaByKeys(
+        List.of(givenDigitalMediaKey()))).willReturn(
         List.of(givenDigitalMediaRecord(FORMAT_2)));
-    given(bulkResponse.errors()).willReturn(false);
-    given(elasticRepository.indexDigitalMedia(expected)).willReturn(bulkResponse);
-    doThrow(JsonProcessingException.class).when(publisherService)
-        .publishUpdateEvent(givenDigitalMediaRecordWithVersion(2), givenJsonPatch());
+    given(outboxEventService.updateEvent(givenDigitalMediaRecordWithVersion(2), givenJsonPatch()))
+        .willThrow(JsonProcessingException.class);
     given(fdoRecordService.handleNeedsUpdate(any(), any())).willReturn(true);
 
     // When
@@ -721,10 +1095,10 @@ class ProcessingServiceTest {
     then(fdoRecordService).should()
         .buildPatchDeleteRequest(List.of(givenDigitalMediaRecord(FORMAT_2)));
     then(handleComponent).should().rollbackHandleUpdate(any());
-    then(repository).should(times(2)).createDigitalMediaRecord(anyList());
-    then(elasticRepository).should().rollbackVersion(givenDigitalMediaRecord(FORMAT_2));
+    then(repository).should(never()).createDigitalMediaRecord(anyList(), anyList());
+    then(elasticRepository).shouldHaveNoInteractions();
+    then(outboxRepository).shouldHaveNoInteractions();
     then(publisherService).should().deadLetterEvent(givenDigitalMediaEvent());
-    then(annotationPublisherService).should().publishAnnotationUpdatedMedia(Set.of());
     assertThat(result).isEmpty();
   }
 
@@ -732,8 +1106,11 @@ class ProcessingServiceTest {
   void testUpdateDigitalMediaIOException() throws Exception {
     // Given
     var expected = List.of(givenDigitalMediaRecordWithVersion(2));
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(
+        givenOutdatedContentHashes(List.of(givenDigitalMediaRecord(FORMAT_2))));
+    given(repository.getDigitalMediaByKeys(
+        List.of(givenDigitalMediaKey()))).willReturn(
         List.of(givenDigitalMediaRecord(FORMAT_2)));
     given(elasticRepository.indexDigitalMedia(expected)).willThrow(IOException.class);
     given(fdoRecordService.handleNeedsUpdate(any(), any())).willReturn(true);
@@ -744,9 +1121,11 @@ class ProcessingServiceTest {
     // Then
     then(fdoRecordService).should().buildPatchDeleteRequest(List.of(
         givenDigitalMediaRecord(FORMAT_2)));
-    then(repository).should(times(2)).createDigitalMediaRecord(anyList());
+    then(repository).should().createDigitalMediaRecord(anyList(), anyList());
+    then(repository).should().createDigitalMediaRecord(anyList());
     then(publisherService).should().deadLetterEvent(givenDigitalMediaEvent());
-    then(annotationPublisherService).shouldHaveNoInteractions();
+    then(outboxRepository).should().deletePendingEvents(List.of(HANDLE));
+    then(outboxRepository).shouldHaveNoMoreInteractions();
     assertThat(result).isEmpty();
   }
 
@@ -754,8 +1133,8 @@ class ProcessingServiceTest {
   void testNewDigitalMediaHandleException()
       throws Exception {
     // Given
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
     given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
         List.of(givenPostHandleRequest()));
     given(handleComponent.postHandle(anyList())).willThrow(PidCreationException.class);
@@ -774,8 +1153,8 @@ class ProcessingServiceTest {
   @Test
   void testNewDigitalMediaHandleExceptionKafkaFailed() throws Exception {
     // Given
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
     given(fdoRecordService.buildPostHandleRequest(anyList())).willReturn(
         List.of(givenPostHandleRequest()));
     given(handleComponent.postHandle(anyList())).willThrow(PidCreationException.class);
@@ -841,21 +1220,21 @@ class ProcessingServiceTest {
     // Then
     then(fdoRecordService).should().buildPostHandleRequest(anyList());
     then(handleComponent).should().postHandle(any());
-    then(repository).should().createDigitalMediaRecord(Set.copyOf(expected));
-    then(publisherService).should(times(3)).publishCreateEvent(any(DigitalMediaRecord.class));
-    then(publisherService).should(times(3))
-        .publishAnnotationRequestEvent(eq(MAS), any(DigitalMediaRecord.class));
+    then(repository).should().createDigitalMediaRecord(eq(Set.copyOf(expected)), anyList());
+    then(outboxEventService).should(times(3)).createEvent(any(DigitalMediaRecord.class));
+    then(outboxEventService).should(times(3))
+        .annotationRequestEvent(eq(MAS), any(DigitalMediaRecord.class));
     assertThat(result).hasSameElementsAs(expected);
   }
 
   @Test
   void testCreateMediaDataAccessException() throws Exception {
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(List.of());
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(List.of());
     given(handleComponent.postHandle(anyList())).willReturn(givenPidMap(1));
     given(fdoRecordService.buildPostHandleRequest(List.of(givenDigitalMediaWrapper()))).willReturn(
         List.of(givenPostHandleRequest()));
-    doThrow(DataAccessException.class).when(repository).createDigitalMediaRecord(any());
+    doThrow(DataAccessException.class).when(repository).createDigitalMediaRecord(any(), any());
 
     // When
     var result = service.handleMessage(List.of(givenDigitalMediaEvent()));
@@ -863,17 +1242,20 @@ class ProcessingServiceTest {
     // Then
     assertThat(result).isEmpty();
     then(handleComponent).should().rollbackHandleCreation(any());
-    then(annotationPublisherService).shouldHaveNoInteractions();
+    then(outboxRepository).shouldHaveNoInteractions();
     then(publisherService).should().deadLetterEvent(any());
   }
 
   @Test
   void testUpdateMediaDataAccessException() throws Exception {
-    given(repository.getDigitalMedia(List.of(DIGITAL_SPECIMEN_ID),
-        List.of(MEDIA_URL_1))).willReturn(
+    given(repository.getDigitalMediaContentHashes(
+        List.of(givenDigitalMediaKey()))).willReturn(
+        givenOutdatedContentHashes(List.of(givenDigitalMediaRecord(FORMAT_2))));
+    given(repository.getDigitalMediaByKeys(
+        List.of(givenDigitalMediaKey()))).willReturn(
         List.of(givenDigitalMediaRecord(FORMAT_2)));
     given(fdoRecordService.handleNeedsUpdate(any(), any())).willReturn(true);
-    doThrow(DataAccessException.class).when(repository).createDigitalMediaRecord(any());
+    doThrow(DataAccessException.class).when(repository).createDigitalMediaRecord(any(), any());
 
     // When
     var result = service.handleMessage(List.of(givenDigitalMediaEvent()));
@@ -881,10 +1263,20 @@ class ProcessingServiceTest {
     // Then
     assertThat(result).isEmpty();
     then(handleComponent).should().rollbackHandleUpdate(any());
-    then(annotationPublisherService).shouldHaveNoInteractions();
+    then(outboxRepository).shouldHaveNoInteractions();
     then(publisherService).should().deadLetterEvent(any());
   }
 
+  private static List<DigitalMediaContentHash> givenOutdatedContentHashes(
+      List<DigitalMediaRecord> digitalMediaRecords) {
+    return digitalMediaRecords.stream().map(digitalMediaRecord -> new DigitalMediaContentHash(
+        digitalMediaRecord.id(),
+        digitalMediaRecord.version(),
+        new DigitalMediaKey(digitalMediaRecord.digitalMediaWrapper().digitalSpecimenID(),
+            digitalMediaRecord.digitalMediaWrapper().attributes().getAcAccessURI()),
+        null)).toList();
+  }
+
   private void givenBulkResponse() {
     var positiveResponse = mock(BulkResponseItem.class);
     given(positiveResponse.error()).willReturn(null);
@@ -913,4 +1305,13 @@ class ProcessingServiceTest {
         ));
   }
 
+  private static EntityRelationship givenEntityRelationship(String relatedResourceId,
+      Date establishedDate) {
+    return new EntityRelationship()
+        .withType("ods:EntityRelationship")
+        .withDwcRelationshipOfResource("hasDigitalSpecimen")
+        .withDwcRelatedResourceID(relatedResourceId)
+        .withDwcRelationshipEstablishedDate(establishedDate);
+  }
+
 }
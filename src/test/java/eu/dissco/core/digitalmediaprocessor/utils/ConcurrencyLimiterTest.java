@@ -0,0 +1,69 @@
+package eu.dissco.core.digitalmediaprocessor.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+class ConcurrencyLimiterTest {
+
+  @Test
+  void testCallHoldsPermit() throws Exception {
+    // Given
+    var limiter = new ConcurrencyLimiter(2);
+
+    // When
+    var result = limiter.call(limiter::availablePermits);
+
+    // Then
+    assertThat(result).isEqualTo(1);
+    assertThat(limiter.availablePermits()).isEqualTo(2);
+  }
+
+  @Test
+  void testPermitReleasedOnException() {
+    // Given
+    var limiter = new ConcurrencyLimiter(1);
+
+    // When
+    assertThrows(IOException.class, () -> limiter.call(() -> {
+      throw new IOException("Downstream failed");
+    }));
+
+    // Then
+    assertThat(limiter.availablePermits()).isEqualTo(1);
+  }
+
+  @Test
+  void testCallAsyncHoldsPermitUntilComplete() {
+    // Given
+    var limiter = new ConcurrencyLimiter(2);
+    var response = new CompletableFuture<String>();
+
+    // When
+    var result = limiter.callAsync(() -> response);
+
+    // Then
+    assertThat(limiter.availablePermits()).isEqualTo(1);
+    response.complete("response");
+    assertThat(result.join()).isEqualTo("response");
+    assertThat(limiter.availablePermits()).isEqualTo(2);
+  }
+
+  @Test
+  void testCallAsyncPermitReleasedOnFailure() {
+    // Given
+    var limiter = new ConcurrencyLimiter(1);
+
+    // When
+    var result = limiter.callAsync(
+        () -> CompletableFuture.failedFuture(new IOException("Downstream failed")));
+
+    // Then
+    assertThat(result).isCompletedExceptionally();
+    assertThat(limiter.availablePermits()).isEqualTo(1);
+  }
+
+}
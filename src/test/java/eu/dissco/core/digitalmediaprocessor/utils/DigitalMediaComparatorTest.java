@@ -0,0 +1,149 @@
+package eu.dissco.core.digitalmediaprocessor.utils;
+
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.FORMAT_2;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaWrapper;
+import static eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaComparator.isEqualIgnoringTimestamps;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import eu.dissco.core.digitalmediaprocessor.schema.DigitalMedia;
+import eu.dissco.core.digitalmediaprocessor.schema.EntityRelationship;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class DigitalMediaComparatorTest {
+
+  private static final List<String> IGNORED_FIELDS = List.of("dctermsModified", "dctermsCreated");
+
+  @Test
+  void testEqualIgnoringTimestamps() throws Exception {
+    // Given
+    var current = givenDigitalMediaWrapper().attributes();
+    var received = givenDigitalMediaWrapper().attributes();
+    received.setDctermsModified("2024-01-01T00:00:00.000Z");
+    received.setDctermsCreated(new Date());
+    var expectedModified = current.getDctermsModified();
+    var expectedCreated = current.getDctermsCreated();
+
+    // When
+    var result = isEqualIgnoringTimestamps(current, received);
+
+    // Then
+    assertThat(result).isTrue();
+    assertThat(current.getDctermsModified()).isEqualTo(expectedModified);
+    assertThat(current.getDctermsCreated()).isEqualTo(expectedCreated);
+    assertThat(received.getDctermsModified()).isEqualTo("2024-01-01T00:00:00.000Z");
+  }
+
+  @Test
+  void testNotEqualScalar() throws Exception {
+    // Given
+    var current = givenDigitalMediaWrapper().attributes();
+    var received = givenDigitalMediaWrapper().attributes();
+    received.setDctermsFormat(FORMAT_2);
+
+    // When
+    var result = isEqualIgnoringTimestamps(current, received);
+
+    // Then
+    assertThat(result).isFalse();
+  }
+
+  @Test
+  void testNotEqualEntityRelationships() throws Exception {
+    // Given
+    var current = givenDigitalMediaWrapper().attributes();
+    var received = givenDigitalMediaWrapper().attributes();
+    received.setOdsHasEntityRelationships(List.of(new EntityRelationship()
+        .withDwcRelationshipOfResource("hasDigitalSpecimen")));
+
+    // When
+    var result = isEqualIgnoringTimestamps(current, received);
+
+    // Then
+    assertThat(result).isFalse();
+  }
+
+  @Test
+  void testEqualIgnoringEntityRelationshipTimestamps() throws Exception {
+    // Given
+    var current = givenDigitalMediaWrapper().attributes();
+    var received = givenDigitalMediaWrapper().attributes();
+    received.getOdsHasEntityRelationships().get(0)
+        .setDwcRelationshipEstablishedDate(new Date(0));
+
+    // When
+    var result = isEqualIgnoringTimestamps(current, received);
+
+    // Then
+    assertThat(result).isTrue();
+  }
+
+  @Test
+  void testNotEqualEntityRelationshipRemarks() throws Exception {
+    // Given
+    var current = givenDigitalMediaWrapper().attributes();
+    var received = givenDigitalMediaWrapper().attributes();
+    received.getOdsHasEntityRelationships().get(0).setDwcRelationshipRemarks("Changed remark");
+
+    // When
+    var result = isEqualIgnoringTimestamps(current, received);
+
+    // Then
+    assertThat(result).isFalse();
+  }
+
+  @ParameterizedTest
+  @MethodSource("comparedFields")
+  void testComparesField(Field field) throws Exception {
+    // Given
+    var current = givenDigitalMediaWrapper().attributes();
+    var received = givenDigitalMediaWrapper().attributes();
+    field.setAccessible(true);
+    field.set(received, givenChangedValue(field, field.get(received)));
+
+    // When
+    var result = isEqualIgnoringTimestamps(current, received);
+
+    // Then
+    assertThat(result).isFalse();
+  }
+
+  private static Stream<Field> comparedFields() {
+    return Arrays.stream(DigitalMedia.class.getDeclaredFields())
+        .filter(field -> !Modifier.isStatic(field.getModifiers()))
+        .filter(field -> !IGNORED_FIELDS.contains(field.getName()));
+  }
+
+  private static Object givenChangedValue(Field field, Object value) throws Exception {
+    var type = field.getType();
+    if (type == String.class) {
+      return "changed";
+    } else if (type == Integer.class) {
+      return -1;
+    } else if (type == Double.class) {
+      return -1.0;
+    } else if (type == Date.class) {
+      return new Date(0);
+    } else if (type.isEnum()) {
+      return Arrays.stream(type.getEnumConstants()).filter(constant -> constant != value)
+          .findFirst().orElseThrow();
+    } else if (type == List.class) {
+      return Collections.singletonList(null);
+    } else if (type == Map.class) {
+      return Map.of("changed", "changed");
+    } else if (value == null) {
+      return type.getDeclaredConstructor().newInstance();
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,65 @@
+package eu.dissco.core.digitalmediaprocessor.utils;
+
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.DOI_PREFIX;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.FORMAT_2;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAPPER;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.VERSION;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaRecord;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaWrapper;
+import static eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaUtils.flattenToDigitalMedia;
+import static eu.dissco.core.digitalmediaprocessor.utils.DigitalMediaUtils.generateContentHash;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.util.Date;
+import org.junit.jupiter.api.Test;
+
+class DigitalMediaUtilsTest {
+
+  @Test
+  void testContentHashIgnoresTimestamps() throws JsonProcessingException {
+    // Given
+    var digitalMediaWrapper = givenDigitalMediaWrapper();
+    var expected = generateContentHash(MAPPER, digitalMediaWrapper);
+    digitalMediaWrapper.attributes().setDctermsModified("2024-01-01T00:00:00.000Z");
+    digitalMediaWrapper.attributes().setDctermsCreated(new Date());
+    digitalMediaWrapper.attributes().getOdsHasEntityRelationships().get(0)
+        .setDwcRelationshipEstablishedDate(new Date());
+
+    // When
+    var result = generateContentHash(MAPPER, digitalMediaWrapper);
+
+    // Then
+    assertThat(result).isEqualTo(expected);
+  }
+
+  @Test
+  void testContentHashChanged() throws JsonProcessingException {
+    // Given
+    var digitalMediaWrapper = givenDigitalMediaWrapper();
+    var expected = generateContentHash(MAPPER, digitalMediaWrapper);
+    digitalMediaWrapper.attributes().setDctermsFormat(FORMAT_2);
+
+    // When
+    var result = generateContentHash(MAPPER, digitalMediaWrapper);
+
+    // Then
+    assertThat(result).isNotEqualTo(expected);
+  }
+
+  @Test
+  void testFlattenToDigitalMediaLeavesRecordUntouched() throws JsonProcessingException {
+    // Given
+    var digitalMediaRecord = givenDigitalMediaRecord();
+
+    // When
+    var result = flattenToDigitalMedia(MAPPER, digitalMediaRecord);
+
+    // Then
+    assertThat(result.getId()).isEqualTo(DOI_PREFIX + HANDLE);
+    assertThat(result.getOdsVersion()).isEqualTo(VERSION);
+    assertThat(digitalMediaRecord).isEqualTo(givenDigitalMediaRecord());
+  }
+
+}
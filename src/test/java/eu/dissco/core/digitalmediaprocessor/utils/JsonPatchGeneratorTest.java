@@ -0,0 +1,171 @@
+package eu.dissco.core.digitalmediaprocessor.utils;
+
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.FORMAT_2;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAPPER;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenDigitalMediaWrapper;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenJsonPatch;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.fge.jsonpatch.JsonPatch;
+import eu.dissco.core.digitalmediaprocessor.schema.DigitalMedia;
+import eu.dissco.core.digitalmediaprocessor.schema.EntityRelationship;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class JsonPatchGeneratorTest {
+
+  private JsonPatchGenerator jsonPatchGenerator;
+
+  @BeforeEach
+  void setup() {
+    jsonPatchGenerator = new JsonPatchGenerator(MAPPER);
+  }
+
+  @Test
+  void testReplaceField() throws Exception {
+    // Given
+    var currentDigitalMedia = givenDigitalMediaWrapper().attributes().withDctermsFormat(FORMAT_2);
+    var digitalMedia = givenDigitalMediaWrapper().attributes();
+
+    // When
+    var result = jsonPatchGenerator.createJsonPatch(currentDigitalMedia, digitalMedia);
+
+    // Then
+    assertThat(result).isEqualTo(givenJsonPatch());
+  }
+
+  @Test
+  void testIgnoresModified() throws Exception {
+    // Given
+    var currentDigitalMedia = givenDigitalMediaWrapper().attributes();
+    var digitalMedia = givenDigitalMediaWrapper().attributes()
+        .withDctermsModified("2024-01-01T00:00:00.000Z");
+
+    // When
+    var result = jsonPatchGenerator.createJsonPatch(currentDigitalMedia, digitalMedia);
+
+    // Then
+    assertThat(result).isEmpty();
+  }
+
+  @Test
+  void testAddAndRemoveFields() throws Exception {
+    // Given
+    var currentDigitalMedia = givenDigitalMediaWrapper().attributes()
+        .withDctermsRights(null)
+        .withAdditionalProperty("ods:custom", "value");
+    var digitalMedia = givenDigitalMediaWrapper().attributes()
+        .withDctermsRights("CC0")
+        .withDctermsFormat(null);
+
+    // When
+    var result = jsonPatchGenerator.createJsonPatch(currentDigitalMedia, digitalMedia);
+
+    // Then
+    assertThat(result).hasSize(3);
+    assertThat(applyPatch(currentDigitalMedia, result)).isEqualTo(toJson(digitalMedia));
+  }
+
+  @Test
+  void testEntityRelationshipsByIdentity() throws Exception {
+    // Given
+    var currentDigitalMedia = givenDigitalMediaWrapper().attributes()
+        .withOdsHasEntityRelationships(givenEntityRelationships("a", "b", "c"));
+    var entityRelationships = givenEntityRelationships("b", "c", "d");
+    entityRelationships.get(0).setDwcRelationshipRemarks("Changed remark");
+    var digitalMedia = givenDigitalMediaWrapper().attributes()
+        .withOdsHasEntityRelationships(entityRelationships);
+
+    // When
+    var result = jsonPatchGenerator.createJsonPatch(currentDigitalMedia, digitalMedia);
+
+    // Then
+    assertThat(result).extracting(operation -> operation.get("op").asText())
+        .containsExactly("remove", "add", "add");
+    assertThat(result.get(0).get("path").asText()).isEqualTo("/ods:hasEntityRelationships/0");
+    assertThat(result.get(1).get("path").asText())
+        .isEqualTo("/ods:hasEntityRelationships/0/dwc:relationshipRemarks");
+    assertThat(result.get(2).get("path").asText()).isEqualTo("/ods:hasEntityRelationships/-");
+    assertThat(applyPatch(currentDigitalMedia, result)).isEqualTo(toJson(digitalMedia));
+  }
+
+  @Test
+  void testReorderedEntityRelationships() throws Exception {
+    // Given
+    var currentDigitalMedia = givenDigitalMediaWrapper().attributes()
+        .withOdsHasEntityRelationships(givenEntityRelationships("a", "b", "c"));
+    var digitalMedia = givenDigitalMediaWrapper().attributes()
+        .withOdsHasEntityRelationships(givenEntityRelationships("c", "a"));
+
+    // When
+    var result = jsonPatchGenerator.createJsonPatch(currentDigitalMedia, digitalMedia);
+
+    // Then
+    assertThat(applyPatch(currentDigitalMedia, result)).isEqualTo(toJson(digitalMedia));
+  }
+
+  @Test
+  void testEntityRelationshipsByPosition() throws Exception {
+    // Given
+    var currentDigitalMedia = givenDigitalMediaWrapper().attributes();
+    var entityRelationships = new ArrayList<>(
+        currentDigitalMedia.getOdsHasEntityRelationships());
+    entityRelationships.add(new EntityRelationship()
+        .withType("ods:EntityRelationship")
+        .withDwcRelationshipOfResource("hasDigitalSpecimen"));
+    var digitalMedia = givenDigitalMediaWrapper().attributes()
+        .withOdsHasEntityRelationships(entityRelationships);
+
+    // When
+    var result = jsonPatchGenerator.createJsonPatch(currentDigitalMedia, digitalMedia);
+
+    // Then
+    assertThat(result).hasSize(1);
+    assertThat(result.get(0).get("op").asText()).isEqualTo("add");
+    assertThat(result.get(0).get("path").asText()).isEqualTo("/ods:hasEntityRelationships/-");
+    assertThat(applyPatch(currentDigitalMedia, result)).isEqualTo(toJson(digitalMedia));
+  }
+
+  @Test
+  void testTagsByValue() throws Exception {
+    // Given
+    var currentDigitalMedia = givenDigitalMediaWrapper().attributes()
+        .withAcTag(List.of("leaf", "flower", "stem"));
+    var digitalMedia = givenDigitalMediaWrapper().attributes()
+        .withAcTag(List.of("root", "leaf", "stem"));
+
+    // When
+    var result = jsonPatchGenerator.createJsonPatch(currentDigitalMedia, digitalMedia);
+
+    // Then
+    assertThat(result).hasSize(2);
+    assertThat(result.get(1).get("path").asText()).isEqualTo("/ac:tag/0");
+    assertThat(applyPatch(currentDigitalMedia, result)).isEqualTo(toJson(digitalMedia));
+  }
+
+  private static List<EntityRelationship> givenEntityRelationships(String... ids) {
+    return Arrays.stream(ids).map(id -> new EntityRelationship()
+            .withId(id)
+            .withType("ods:EntityRelationship")
+            .withDwcRelationshipOfResource("hasDigitalSpecimen")
+            .withDwcRelatedResourceID("https://doi.org/20.5000.1025/" + id))
+        .toList();
+  }
+
+  private static JsonNode applyPatch(DigitalMedia digitalMedia, JsonNode patch)
+      throws Exception {
+    return JsonPatch.fromJson(patch).apply(toJson(digitalMedia));
+  }
+
+  private static JsonNode toJson(DigitalMedia digitalMedia) {
+    var json = (ObjectNode) MAPPER.valueToTree(digitalMedia);
+    json.remove("dcterms:modified");
+    return json;
+  }
+
+}
@@ -0,0 +1,114 @@
+package eu.dissco.core.digitalmediaprocessor.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaKey;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class KeyLockTest {
+
+  @Test
+  void testSameKeyWaitsForUnlock() throws Exception {
+    // Given
+    var keyLock = new KeyLock<String>();
+    var unlocker = keyLock.lockAll(List.of("key-1", "key-2"));
+
+    // When
+    var future = CompletableFuture.runAsync(() -> {
+      try (var ignored = keyLock.lockAll(List.of("key-2"))) {
+        // Only acquires the lock
+      }
+    });
+
+    // Then
+    assertThat(isCompletedWithin(future)).isFalse();
+    unlocker.close();
+    future.get(5, TimeUnit.SECONDS);
+    assertThat(future).isCompleted();
+    assertThat(keyLock.lockedKeys()).isZero();
+  }
+
+  @Test
+  void testBatchesWithoutSharedKeysRunConcurrently() throws Exception {
+    // Given
+    var keyLock = new KeyLock<DigitalMediaKey>();
+    var firstBatch = givenBatch(0);
+    var secondBatch = givenBatch(500);
+    var bothLocked = new CountDownLatch(2);
+    var executor = Executors.newFixedThreadPool(2);
+
+    // When
+    var first = CompletableFuture.runAsync(() -> holdUntilBothLocked(keyLock, firstBatch,
+        bothLocked), executor);
+    var second = CompletableFuture.runAsync(() -> holdUntilBothLocked(keyLock, secondBatch,
+        bothLocked), executor);
+
+    // Then
+    CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+    assertThat(keyLock.lockedKeys()).isZero();
+    executor.shutdown();
+  }
+
+  @Test
+  void testOverlappingKeysInReverseOrder() throws Exception {
+    // Given
+    var keyLock = new KeyLock<Integer>();
+
+    // When
+    var first = CompletableFuture.runAsync(() -> lockRepeatedly(keyLock, List.of(0, 1)));
+    var second = CompletableFuture.runAsync(() -> lockRepeatedly(keyLock, List.of(1, 0)));
+
+    // Then
+    CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+    assertThat(keyLock.lockedKeys()).isZero();
+  }
+
+  private static List<DigitalMediaKey> givenBatch(int offset) {
+    return IntStream.range(offset, offset + 500)
+        .mapToObj(i -> new DigitalMediaKey("20.5000.1025/SPE-" + i,
+            "https://media.example.org/images/" + i + ".jpg"))
+        .toList();
+  }
+
+  /*
+  Both batches only count down once they hold all their locks, so neither can finish when one
+  batch waits for a lock held by the other.
+  */
+  private static void holdUntilBothLocked(KeyLock<DigitalMediaKey> keyLock,
+      List<DigitalMediaKey> batch, CountDownLatch bothLocked) {
+    try (var ignored = keyLock.lockAll(batch)) {
+      bothLocked.countDown();
+      if (!bothLocked.await(5, TimeUnit.SECONDS)) {
+        throw new IllegalStateException("Batches were not locked at the same time");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void lockRepeatedly(KeyLock<Integer> keyLock, List<Integer> keys) {
+    for (int i = 0; i < 1000; i++) {
+      try (var ignored = keyLock.lockAll(keys)) {
+        Thread.yield();
+      }
+    }
+  }
+
+  private static boolean isCompletedWithin(CompletableFuture<Void> future) throws Exception {
+    try {
+      future.get(200, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    }
+  }
+
+}
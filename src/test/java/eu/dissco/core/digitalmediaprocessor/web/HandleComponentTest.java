@@ -1,9 +1,11 @@
 package eu.dissco.core.digitalmediaprocessor.web;
 
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.CREATED;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.DIGITAL_SPECIMEN_ID_2;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.HANDLE_2;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAPPER;
+import static eu.dissco.core.digitalmediaprocessor.TestUtils.MEDIA_URL_2;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenPidMap;
 import static eu.dissco.core.digitalmediaprocessor.TestUtils.givenPostHandleRequest;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -13,12 +15,16 @@ import static org.mockito.Mockito.mockStatic;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import eu.dissco.core.digitalmediaprocessor.domain.DigitalMediaKey;
 import eu.dissco.core.digitalmediaprocessor.exceptions.PidCreationException;
+import eu.dissco.core.digitalmediaprocessor.properties.HandleProperties;
+import eu.dissco.core.digitalmediaprocessor.utils.ConcurrencyLimiter;
 import java.io.IOException;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Map;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.AfterAll;
@@ -42,7 +48,9 @@ class HandleComponentTest {
   private final Instant instant = Instant.now(Clock.fixed(CREATED, ZoneOffset.UTC));
   @Mock
   private TokenAuthenticator tokenAuthenticator;
+  private final HandleProperties handleProperties = new HandleProperties();
   private HandleComponent handleComponent;
+  private ConcurrencyLimiter handleLimiter;
   private MockedStatic<Clock> mockedClock;
   private MockedStatic<Instant> mockedStatic;
 
@@ -61,7 +69,9 @@ class HandleComponentTest {
   void setup() {
     WebClient webClient = WebClient.create(
         String.format("http://%s:%s", mockHandleServer.getHostName(), mockHandleServer.getPort()));
-    handleComponent = new HandleComponent(webClient, tokenAuthenticator, MAPPER);
+    handleLimiter = new ConcurrencyLimiter(1);
+    handleComponent = new HandleComponent(webClient, tokenAuthenticator, MAPPER,
+        handleProperties, handleLimiter);
 
     Clock clock = Clock.fixed(CREATED, ZoneOffset.UTC);
     mockedStatic = mockStatic(Instant.class);
@@ -93,6 +103,74 @@ class HandleComponentTest {
     assertThat(response).isEqualTo(expected);
   }
 
+  @Test
+  void testPostHandleChunked() throws Exception {
+    // Given
+    handleProperties.setChunkSize(1);
+    handleProperties.setMaxConcurrentRequests(1);
+    var requestBody = List.of(givenPostHandleRequest(), givenPostHandleRequest());
+    int requestCount = mockHandleServer.getRequestCount();
+    mockHandleServer.enqueue(new MockResponse().setResponseCode(HttpStatus.CREATED.value())
+        .setBody(MAPPER.writeValueAsString(givenHandleResponse()))
+        .addHeader("Content-Type", "application/json"));
+    mockHandleServer.enqueue(new MockResponse().setResponseCode(HttpStatus.CREATED.value())
+        .setBody(MAPPER.writeValueAsString(givenHandleResponse(HANDLE_2, DIGITAL_SPECIMEN_ID_2,
+            MEDIA_URL_2)))
+        .addHeader("Content-Type", "application/json"));
+
+    // When
+    var response = handleComponent.postHandle(requestBody);
+
+    // Then
+    assertThat(response).isEqualTo(givenPidMap(2));
+    assertThat(mockHandleServer.getRequestCount() - requestCount).isEqualTo(2);
+  }
+
+  @Test
+  void testPostHandleChunkedLimitedPerRequest() throws Exception {
+    // Given
+    handleProperties.setChunkSize(1);
+    handleProperties.setMaxConcurrentRequests(4);
+    var requestBody = List.of(givenPostHandleRequest(), givenPostHandleRequest());
+    int requestCount = mockHandleServer.getRequestCount();
+    mockHandleServer.enqueue(new MockResponse().setResponseCode(HttpStatus.CREATED.value())
+        .setBody(MAPPER.writeValueAsString(givenHandleResponse()))
+        .addHeader("Content-Type", "application/json"));
+    mockHandleServer.enqueue(new MockResponse().setResponseCode(HttpStatus.CREATED.value())
+        .setBody(MAPPER.writeValueAsString(givenHandleResponse(HANDLE_2, DIGITAL_SPECIMEN_ID_2,
+            MEDIA_URL_2)))
+        .addHeader("Content-Type", "application/json"));
+
+    // When
+    var response = handleComponent.postHandle(requestBody);
+
+    // Then
+    assertThat(response).isEqualTo(givenPidMap(2));
+    assertThat(mockHandleServer.getRequestCount() - requestCount).isEqualTo(2);
+    assertThat(handleLimiter.availablePermits()).isEqualTo(1);
+  }
+
+  @Test
+  void testPostHandleChunkFailed() throws Exception {
+    // Given
+    handleProperties.setChunkSize(1);
+    handleProperties.setMaxConcurrentRequests(1);
+    var requestBody = List.of(givenPostHandleRequest(), givenPostHandleRequest());
+    mockHandleServer.enqueue(new MockResponse().setResponseCode(HttpStatus.BAD_REQUEST.value())
+        .addHeader("Content-Type", "application/json"));
+    mockHandleServer.enqueue(new MockResponse().setResponseCode(HttpStatus.CREATED.value())
+        .setBody(MAPPER.writeValueAsString(givenHandleResponse(HANDLE_2, DIGITAL_SPECIMEN_ID_2,
+            MEDIA_URL_2)))
+        .addHeader("Content-Type", "application/json"));
+
+    // When
+    var response = handleComponent.postHandle(requestBody);
+
+    // Then
+    assertThat(response).isEqualTo(
+        Map.of(new DigitalMediaKey(DIGITAL_SPECIMEN_ID_2, MEDIA_URL_2), HANDLE_2));
+  }
+
   @Test
   void testUnauthorized() {
     // Given
@@ -171,6 +249,35 @@ class HandleComponentTest {
     assertDoesNotThrow(() -> handleComponent.updateHandle(List.of(requestBody)));
   }
 
+  @Test
+  void testUpdateHandleChunkFailed() throws Exception {
+    // Given
+    handleProperties.setChunkSize(1);
+    handleProperties.setMaxConcurrentRequests(1);
+    mockHandleServer.enqueue(new MockResponse().setResponseCode(HttpStatus.OK.value())
+        .addHeader("Content-Type", "application/json"));
+    mockHandleServer.enqueue(new MockResponse().setResponseCode(HttpStatus.BAD_REQUEST.value())
+        .addHeader("Content-Type", "application/json"));
+
+    // When
+    var result = handleComponent.updateHandle(
+        List.of(givenPatchHandleRequest(HANDLE), givenPatchHandleRequest(HANDLE_2)));
+
+    // Then
+    assertThat(result).containsExactly(HANDLE_2);
+  }
+
+  @Test
+  void testUpdateHandleAllChunksFailed() {
+    // Given
+    mockHandleServer.enqueue(new MockResponse().setResponseCode(HttpStatus.BAD_REQUEST.value())
+        .addHeader("Content-Type", "application/json"));
+
+    // Then
+    assertThrows(PidCreationException.class,
+        () -> handleComponent.updateHandle(List.of(givenPatchHandleRequest(HANDLE))));
+  }
+
   @Test
   void testInterruptedException() throws Exception {
     // Given
@@ -190,6 +297,7 @@ class HandleComponentTest {
     // Then
     assertThat(response).hasMessage(
         "Interrupted execution: A connection error has occurred in creating a handle.");
+    assertThat(Thread.interrupted()).isTrue();
   }
 
   @Test
@@ -296,4 +404,29 @@ class HandleComponentTest {
         """);
   }
 
+  private static JsonNode givenHandleResponse(String handle, String digitalSpecimenId,
+      String mediaUrl) throws Exception {
+    return MAPPER.readTree("""
+        {
+        "data": [{
+            "type": "mediaObject",
+            "id":"%s",
+            "attributes": {
+              "digitalMediaKey":{
+                "mediaUrl":"%s",
+                "digitalSpecimenId":"%s"
+                }
+              }
+           }]
+        }
+        """.formatted(handle, mediaUrl, digitalSpecimenId));
+  }
+
+  private static JsonNode givenPatchHandleRequest(String handle) {
+    return MAPPER.createObjectNode()
+        .set("data", MAPPER.createObjectNode()
+            .put("type", "https://doi.org/21.T11148/bbad8c4e101e8af01115")
+            .put("id", handle));
+  }
+
 }
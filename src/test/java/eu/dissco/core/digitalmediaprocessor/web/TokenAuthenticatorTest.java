@@ -4,11 +4,20 @@ import static eu.dissco.core.digitalmediaprocessor.TestUtils.MAPPER;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mockStatic;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import eu.dissco.core.digitalmediaprocessor.exceptions.PidCreationException;
 import eu.dissco.core.digitalmediaprocessor.properties.TokenProperties;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.AfterAll;
@@ -26,6 +35,10 @@ import org.springframework.web.reactive.function.client.WebClient;
 @ExtendWith(MockitoExtension.class)
 class TokenAuthenticatorTest {
 
+  private static final Duration REFRESH_BEFORE_EXPIRY = Duration.ofSeconds(60);
+  private static final Instant NOW = Instant.parse("2024-01-01T10:00:00Z");
+  private static final Instant BEFORE_EXPIRY = Instant.parse("2024-01-01T10:04:10Z");
+  private static final Instant EXPIRED = Instant.parse("2024-01-01T10:05:00Z");
   private static MockWebServer mockTokenServer;
   private final MultiValueMap<String, String> testFromFormData = new LinkedMultiValueMap<>() {{
     add("grant_type", "grantType");
@@ -47,6 +60,20 @@ class TokenAuthenticatorTest {
     mockTokenServer.shutdown();
   }
 
+  private static JsonNode givenTokenResponse(String accessToken) {
+    return MAPPER.createObjectNode()
+        .put("access_token", accessToken)
+        .put("expires_in", 300)
+        .put("token_type", "Bearer");
+  }
+
+  private static MockResponse givenTokenMockResponse(String accessToken) throws Exception {
+    return new MockResponse()
+        .setResponseCode(HttpStatus.OK.value())
+        .setBody(MAPPER.writeValueAsString(givenTokenResponse(accessToken)))
+        .addHeader("Content-Type", "application/json");
+  }
+
   private static JsonNode givenTokenResponse() throws Exception {
     return MAPPER.readTree("""
         {
@@ -76,6 +103,7 @@ class TokenAuthenticatorTest {
     var expectedJson = givenTokenResponse();
     var expected = expectedJson.get("access_token").asText();
     given(properties.getFromFormData()).willReturn(testFromFormData);
+    given(properties.getRefreshBeforeExpiry()).willReturn(REFRESH_BEFORE_EXPIRY);
 
     mockTokenServer.enqueue(new MockResponse()
         .setResponseCode(HttpStatus.OK.value())
@@ -108,6 +136,7 @@ class TokenAuthenticatorTest {
     var expectedJson = givenTokenResponse();
     var expected = expectedJson.get("access_token").asText();
     given(properties.getFromFormData()).willReturn(testFromFormData);
+    given(properties.getRefreshBeforeExpiry()).willReturn(REFRESH_BEFORE_EXPIRY);
     mockTokenServer.enqueue(new MockResponse().setResponseCode(501));
     mockTokenServer.enqueue(new MockResponse()
         .setResponseCode(HttpStatus.OK.value())
@@ -160,4 +189,106 @@ class TokenAuthenticatorTest {
     assertThrows(PidCreationException.class, () -> authenticator.getToken());
   }
 
+  @Test
+  void testGetTokenCached() throws Exception {
+    // Given
+    int requestCount = mockTokenServer.getRequestCount();
+    given(properties.getFromFormData()).willReturn(testFromFormData);
+    given(properties.getRefreshBeforeExpiry()).willReturn(REFRESH_BEFORE_EXPIRY);
+    mockTokenServer.enqueue(givenTokenMockResponse("token-1"));
+
+    // When
+    var first = authenticator.getToken();
+    var second = authenticator.getToken();
+
+    // Then
+    assertThat(first).isEqualTo("token-1");
+    assertThat(second).isEqualTo("token-1");
+    assertThat(mockTokenServer.getRequestCount() - requestCount).isEqualTo(1);
+  }
+
+  @Test
+  void testGetTokenRefreshAhead() throws Exception {
+    // Given
+    given(properties.getFromFormData()).willReturn(testFromFormData);
+    given(properties.getRefreshBeforeExpiry()).willReturn(REFRESH_BEFORE_EXPIRY);
+    mockTokenServer.enqueue(givenTokenMockResponse("token-1"));
+    mockTokenServer.enqueue(givenTokenMockResponse("token-2"));
+
+    try (var mockedInstant = mockStatic(Instant.class, CALLS_REAL_METHODS)) {
+      mockedInstant.when(Instant::now).thenReturn(NOW);
+      var first = authenticator.getToken();
+      mockedInstant.when(Instant::now).thenReturn(BEFORE_EXPIRY);
+
+      // When
+      var second = authenticator.getToken();
+
+      // Then
+      assertThat(first).isEqualTo("token-1");
+      assertThat(second).isEqualTo("token-1");
+      assertThat(awaitToken("token-2")).isEqualTo("token-2");
+    }
+  }
+
+  @Test
+  void testGetTokenExpired() throws Exception {
+    // Given
+    given(properties.getFromFormData()).willReturn(testFromFormData);
+    given(properties.getRefreshBeforeExpiry()).willReturn(REFRESH_BEFORE_EXPIRY);
+    mockTokenServer.enqueue(givenTokenMockResponse("token-1"));
+    mockTokenServer.enqueue(givenTokenMockResponse("token-2"));
+
+    try (var mockedInstant = mockStatic(Instant.class, CALLS_REAL_METHODS)) {
+      mockedInstant.when(Instant::now).thenReturn(NOW);
+      authenticator.getToken();
+      mockedInstant.when(Instant::now).thenReturn(EXPIRED);
+
+      // When
+      var result = authenticator.getToken();
+
+      // Then
+      assertThat(result).isEqualTo("token-2");
+    }
+  }
+
+  @Test
+  void testGetTokenConcurrent() throws Exception {
+    // Given
+    int requestCount = mockTokenServer.getRequestCount();
+    given(properties.getFromFormData()).willReturn(testFromFormData);
+    given(properties.getRefreshBeforeExpiry()).willReturn(REFRESH_BEFORE_EXPIRY);
+    mockTokenServer.enqueue(givenTokenMockResponse("token-1")
+        .setBodyDelay(200, TimeUnit.MILLISECONDS));
+    var executor = Executors.newFixedThreadPool(4);
+    var start = new CountDownLatch(1);
+    var futures = new ArrayList<Future<String>>();
+    for (int i = 0; i < 4; i++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        return authenticator.getToken();
+      }));
+    }
+
+    // When
+    start.countDown();
+    var results = new ArrayList<String>();
+    for (var future : futures) {
+      results.add(future.get(10, TimeUnit.SECONDS));
+    }
+    executor.shutdown();
+
+    // Then
+    assertThat(results).containsOnly("token-1");
+    assertThat(mockTokenServer.getRequestCount() - requestCount).isEqualTo(1);
+  }
+
+  private String awaitToken(String expected) throws Exception {
+    var token = authenticator.getToken();
+    for (int i = 0; i < 100 && !expected.equals(token); i++) {
+      Thread.sleep(50);
+      token = authenticator.getToken();
+    }
+    return token;
+  }
+
 }
@@ -0,0 +1,5 @@
+alter table digital_media_object
+    add column content_hash text;
+
+create index digital_media_object_content_hash_idx
+    on digital_media_object (digital_specimen_id, media_url) include (id, version, content_hash);
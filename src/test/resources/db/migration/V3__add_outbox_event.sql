@@ -0,0 +1,18 @@
+create table outbox_event
+(
+    id bigint generated always as identity
+        constraint outbox_event_pkey
+            primary key,
+    media_id text not null,
+    topic text not null,
+    payload text not null,
+    created timestamp with time zone not null,
+    released boolean default false not null
+);
+
+create index outbox_event_media_id_idx
+    on outbox_event (media_id);
+
+create index outbox_event_released_idx
+    on outbox_event (id)
+    where released;